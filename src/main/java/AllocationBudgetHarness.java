@@ -0,0 +1,391 @@
+// [file name]: AllocationBudgetHarness.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 热路径分配预算检查：用合成的 tick 记录流、经伪造的 Hadoop Context 直接驱动各 Mapper / Reducer，
+ * 通过 ThreadMXBean 统计每条记录分配的字节数，超出预算时非零退出。
+ * 通过公开的 run(context) 完整走 setup / map|reduce / cleanup，预热之后才开始计量 (JIT 稳定后的稳态)，
+ * setup / cleanup 不计入。Reducer 的每条记录成本里摊入了每个 key 一次的输出格式化 (与 values-per-key 成反比)。
+ *
+ * 用法: AllocationBudgetHarness [--records=N] [--warmup=N] [--stocks=N] [--depth=N] [--rolling=spec]
+ *                              [--threads=N] [--values-per-key=N] [--encoding=text|compact]
+ *                              [--mapper-budget=B] [--reducer-budget=B]   (字节/记录)
+ */
+public class AllocationBudgetHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        int records = Integer.parseInt(options.getOrDefault("records", "2000000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "500000"));
+        int stocks = Integer.parseInt(options.getOrDefault("stocks", "500"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "2"));
+        int valuesPerKey = Integer.parseInt(options.getOrDefault("values-per-key", "500"));
+        double mapperBudget = Double.parseDouble(options.getOrDefault("mapper-budget", "4"));
+        double reducerBudget = Double.parseDouble(options.getOrDefault("reducer-budget", "64"));
+
+        Configuration conf = new Configuration(false);
+        if (options.containsKey("depth")) conf.setInt(ColumnLayout.CONF_DEPTH, Integer.parseInt(options.get("depth")));
+        if (options.containsKey("rolling")) conf.set(RollingFactors.CONF_SPECS, options.get("rolling"));
+        if (options.containsKey("encoding")) conf.set(CompactFactorWritable.CONF_ENCODING, options.get("encoding"));
+        conf.setInt(MultithreadedFactorMapper.CONF_THREADS, threads);
+
+        ColumnLayout layout = ColumnLayout.fromConf(conf);
+        Text[] lines = syntheticLines(layout, stocks, 8192);
+        System.out.printf(">>> %d records (+%d warm-up), %d stocks, depth %d, %d factors%n",
+                records, warmup, stocks, layout.depth, FactorSchema.width(conf));
+
+        List<String> failures = new ArrayList<>();
+        check("SimplifiedFactorMapper", runMapper(new SimplifiedFactorMapper(), conf, lines, warmup, records, false),
+                mapperBudget, failures);
+        check("MultithreadedFactorMapper(" + threads + ")",
+                runMapper(new MultithreadedFactorMapper(), conf, lines, warmup, records, true), mapperBudget, failures);
+        if (CompactFactorWritable.enabled(conf)) {
+            check("CompactFactorReducer", runReducer(new CompactFactorReducer(), CompactFactorWritable.class,
+                    conf, warmup, records, valuesPerKey), reducerBudget, failures);
+        } else {
+            check("SingleDateReducer", runReducer(new SingleDateReducer(), Text.class,
+                    conf, warmup, records, valuesPerKey), reducerBudget, failures);
+        }
+
+        if (!failures.isEmpty()) {
+            System.err.println("ALLOCATION BUDGET EXCEEDED: " + failures);
+            System.exit(1);
+        }
+        System.out.println("=== All allocation budgets met ===");
+    }
+
+    private static void check(String name, double bytesPerRecord, double budget, List<String> failures) {
+        boolean ok = bytesPerRecord <= budget;
+        System.out.printf("%-32s %10.2f bytes/record  (budget %.1f)  %s%n", name, bytesPerRecord, budget, ok ? "OK" : "FAIL");
+        if (!ok) failures.add(name);
+    }
+
+    // ========== Mapper ==========
+
+    // 通过公开的 run(context) 驱动：setup → map × N → cleanup，计量区间由 RecordReader 在预热结束和输入耗尽时打点
+    private static double runMapper(Mapper<LongWritable, Text, Text, Writable> mapper, Configuration conf, Text[] lines,
+                                    int warmup, int records, boolean allThreads) throws Exception {
+        AllocationMeter meter = new AllocationMeter(allThreads);
+        SyntheticLineReader reader = new SyntheticLineReader(lines, warmup, records, meter);
+        Mapper<LongWritable, Text, Text, Writable>.Context context = new WrappedMapper<LongWritable, Text, Text, Writable>()
+                .getMapContext(new MapContextImpl<>(conf, taskAttempt(TaskType.MAP), reader, new NullWriter<>(),
+                        null, new NullReporter(), null));
+        mapper.run(context);
+        return meter.bytesPer(records);
+    }
+
+    private static final class SyntheticLineReader extends RecordReader<LongWritable, Text> {
+        private final Text[] lines;
+        private final int warmup;
+        private final int total;
+        private final AllocationMeter meter;
+        private final LongWritable key = new LongWritable();
+        private final Text value = new Text();
+        private int index = -1;
+
+        SyntheticLineReader(Text[] lines, int warmup, int records, AllocationMeter meter) {
+            this.lines = lines;
+            this.warmup = warmup;
+            this.total = warmup + records;
+            this.meter = meter;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            index++;
+            if (index == warmup) meter.start();
+            if (index >= total) {
+                meter.stop();
+                return false;
+            }
+            key.set(index);
+            value.set(lines[index & (lines.length - 1)]);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return index / (float) total;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // ========== Reducer ==========
+
+    // 输入是序列化好的 (key, value) 字节，经 ReduceContextImpl 反序列化、分组后交给 reduce，与真实 shuffle 后的路径一致
+    private static <V extends Writable> double runReducer(Reducer<Text, V, Text, Text> reducer, Class<V> valueClass,
+                                                          Configuration conf, int warmup, int records,
+                                                          int valuesPerKey) throws Exception {
+        // Mapper 格式的单笔记录："1|f1,...,fN" 或 CompactFactorWritable
+        int width = FactorSchema.width(conf);
+        Random random = new Random(42);
+        byte[][] values = new byte[1024][];
+        double[] f = new double[width + 1];
+        byte[] buf = new byte[FastDecimal.MAX_FIXED6_LENGTH + width * 24];
+        CompactFactorWritable compact = new CompactFactorWritable();
+        for (int v = 0; v < values.length; v++) {
+            for (int i = 1; i <= width; i++) f[i] = random.nextGaussian() * Math.pow(10, random.nextInt(6));
+            if (valueClass == CompactFactorWritable.class) {
+                compact.setValues(f, width);
+                values[v] = serialize(compact);
+                continue;
+            }
+            int len = 0;
+            buf[len++] = '1';
+            buf[len++] = '|';
+            for (int i = 1; i <= width; i++) {
+                len = FastDecimal.formatFixed6(f[i], buf, len);
+                if (i < width) buf[len++] = ',';
+            }
+            values[v] = serialize(new Text(Arrays.copyOf(buf, len)));
+        }
+        // 两个 key 交替成组，每组 valuesPerKey 条
+        byte[][] keys = {serialize(new Text("20240102_093000")), serialize(new Text("20240102_093001"))};
+
+        AllocationMeter meter = new AllocationMeter(false);
+        SyntheticKeyValues input = new SyntheticKeyValues(keys, values, valuesPerKey, warmup, records, meter);
+        Reducer<Text, V, Text, Text>.Context context = new WrappedReducer<Text, V, Text, Text>()
+                .getReducerContext(new ReduceContextImpl<Text, V, Text, Text>(conf, taskAttempt(TaskType.REDUCE), input,
+                        new GenericCounter(), new GenericCounter(), new NullWriter<>(), null, new NullReporter(),
+                        textComparator(), Text.class, valueClass));
+        reducer.run(context);
+        return meter.bytesPer(records);
+    }
+
+    // Text.Comparator 继承的 WritableComparator 实现的是原始类型 RawComparator，转成 RawComparator<Text> 只能不受检
+    @SuppressWarnings("unchecked")
+    private static RawComparator<Text> textComparator() {
+        return new Text.Comparator();
+    }
+
+    private static byte[] serialize(Writable writable) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        writable.write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static final class SyntheticKeyValues implements RawKeyValueIterator {
+        private final byte[][] keys;
+        private final byte[][] values;
+        private final int valuesPerKey;
+        private final int warmup;
+        private final int total;
+        private final AllocationMeter meter;
+        private final DataInputBuffer key = new DataInputBuffer();
+        private final DataInputBuffer value = new DataInputBuffer();
+        private int index = -1;
+
+        SyntheticKeyValues(byte[][] keys, byte[][] values, int valuesPerKey, int warmup, int records, AllocationMeter meter) {
+            this.keys = keys;
+            this.values = values;
+            this.valuesPerKey = Math.max(1, valuesPerKey);
+            this.warmup = warmup;
+            this.total = warmup + records;
+            this.meter = meter;
+        }
+
+        @Override
+        public DataInputBuffer getKey() {
+            return key;
+        }
+
+        @Override
+        public DataInputBuffer getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean next() {
+            index++;
+            if (index == warmup) meter.start();
+            if (index >= total) {
+                meter.stop();
+                return false;
+            }
+            byte[] k = keys[(index / valuesPerKey) & 1];
+            byte[] v = values[index & (values.length - 1)];
+            key.reset(k, k.length);
+            value.reset(v, v.length);
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Progress getProgress() {
+            return null;
+        }
+    }
+
+    // ========== 合成数据 ==========
+
+    // count 必须是 2 的幂；股票轮流出现，时间每轮前进一秒，价格随机游走
+    private static Text[] syntheticLines(ColumnLayout layout, int stocks, int count) {
+        int columns = layout.maxColumn + 1;
+        Random random = new Random(7);
+        long[] mids = new long[stocks];
+        for (int s = 0; s < stocks; s++) mids[s] = 50000 + random.nextInt(200000);
+
+        Text[] lines = new Text[count];
+        String[] fields = new String[columns];
+        int second = SessionCalendar.secondsOfDay(93000);
+        for (int n = 0; n < count; n++) {
+            int s = n % stocks;
+            if (s == 0 && n > 0) second++;
+            mids[s] = Math.max(1000, mids[s] + random.nextInt(201) - 100);
+            Arrays.fill(fields, "0");
+            fields[layout.tradingDay] = "20240102";
+            fields[layout.tradeTime] = Integer.toString(SessionCalendar.toHhmmss(second));
+            fields[layout.mic] = (s & 1) == 0 ? "XSHG" : "XSHE";
+            fields[layout.code] = Integer.toString(600000 + s);
+            fields[layout.last] = Long.toString(mids[s]);
+            fields[layout.tBidVol] = Integer.toString(random.nextInt(1000000));
+            fields[layout.tAskVol] = Integer.toString(random.nextInt(1000000));
+            for (int i = 1; i <= layout.depth; i++) {
+                fields[layout.bp[i]] = Long.toString(mids[s] - 10L * i);
+                fields[layout.ap[i]] = Long.toString(mids[s] + 10L * i);
+                fields[layout.bv[i]] = Integer.toString(100 * (1 + random.nextInt(500)));
+                fields[layout.av[i]] = Integer.toString(100 * (1 + random.nextInt(500)));
+            }
+            lines[n] = new Text(String.join(",", fields).getBytes(StandardCharsets.US_ASCII));
+        }
+        return lines;
+    }
+
+    // ========== 计量 ==========
+
+    private static final class AllocationMeter {
+        private final com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final boolean allThreads;
+        private long before;
+        private long after;
+
+        AllocationMeter(boolean allThreads) {
+            this.allThreads = allThreads;
+        }
+
+        void start() {
+            before = allocatedBytes();
+        }
+
+        void stop() {
+            after = allocatedBytes();
+        }
+
+        double bytesPer(long records) {
+            return (after - before) / (double) records;
+        }
+
+        // allThreads：所有存活线程之和 (多线程 Mapper 的工作线程在 cleanup 之前一直存活)
+        private long allocatedBytes() {
+            if (!allThreads) return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long total = 0;
+            for (long bytes : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+                if (bytes > 0) total += bytes;
+            }
+            return total;
+        }
+    }
+
+    // ========== 伪造的 Context 组件 ==========
+
+    private static TaskAttemptID taskAttempt(TaskType type) {
+        return new TaskAttemptID("harness", 1, type, 0, 0);
+    }
+
+    private static final class NullWriter<K, V> extends RecordWriter<K, V> {
+        @Override
+        public void write(K key, V value) {
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+    private static final class NullReporter extends StatusReporter {
+        private final Counter counter = new GenericCounter();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counter;
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counter;
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+// [file name]: AsOfAligner.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 对齐模式 (factor.align=G 秒，Driver --align=G)：把截面均值放到固定网格 T_k = 首个交易秒 + k·G 上，
+ * 每个网格点的截面是"当天已出现过的所有股票在 T_k 时刻 (含) 的最新因子向量" (as-of，前向填充)，
+ * 而不是恰好在这一秒报价的那部分股票。
+ *
+ * 不展开逐笔：每只股票 (股票, 交易日) 只保留最后一个因子向量和它生效的起始网格点，
+ * 新的一笔落到更晚的网格点时，把旧向量在 [起点, 新起点) 上的贡献记进该交易日的差分数组 (起点 +v，终点 -v)；
+ * 输出时把各股票的最后一个向量延续到当天最后一个网格点，再对每天做一次前缀和扫描，得到每个网格点的 (股票数, 和)。
+ * 内存为 股票数 × width + 交易日数 × 网格点数 × width，与逐笔数量无关。
+ *
+ * 输出与 SlotAggregator 相同 (Sink 接口，按 (交易日, 秒) 升序)，Mapper 照常作为局部和发给 SingleDateReducer，
+ * 多个 Mapper 的结果直接相加。要求同一只股票同一天的行由同一个 map 任务处理 (否则两个任务都把它延续到收盘，重复计数)，
+ * Driver 在对齐模式下使用 DailyInputFormat：文件不切分，同一天目录下的文件在同一个分片。
+ * 同一网格区间内的多笔只保留最后一笔；任何市场都不交易的网格点 (如午休) 不输出。
+ */
+public class AsOfAligner {
+
+    public static final String CONF_ALIGN = "factor.align";
+
+    private final int width;
+    private final int grid;
+    private final int firstSecond;
+    private final int points;          // 每天的网格点数
+    private final boolean squares;
+    private final SessionCalendar calendar;
+
+    // 按 (股票, 交易日) 的状态，槽位号来自 StockStateStore，用满时整体扩容 (槽位号不变)
+    private StockStateStore store;
+    private long[] keys;
+    private Day[] stockDay;
+    private int[] from;                // 当前向量生效的起始网格点
+    private double[] last;             // 槽位 × width
+
+    private final Map<Integer, Day> days = new TreeMap<>();
+    private Day lastDay;
+
+    public AsOfAligner(int width, SessionCalendar calendar, int grid, boolean squares, int capacity) {
+        this.width = width;
+        this.grid = grid;
+        this.firstSecond = calendar.firstAcceptedSecond();
+        this.points = (calendar.lastAcceptedSecond() - firstSecond) / grid + 1;
+        this.squares = squares;
+        this.calendar = calendar;
+        this.store = new StockStateStore(capacity);
+        this.keys = new long[capacity];
+        this.stockDay = new Day[capacity];
+        this.from = new int[capacity];
+        this.last = new double[capacity * width];
+    }
+
+    /**
+     * 网格秒数，未配置返回 0 (关闭)
+     */
+    public static int gridSeconds(Configuration conf) {
+        int grid = conf.getInt(CONF_ALIGN, 0);
+        if (grid < 0 || grid > 3600) {
+            throw new IllegalArgumentException("factor.align must be within 1-3600 seconds: " + grid);
+        }
+        return grid;
+    }
+
+    public static AsOfAligner fromConf(Configuration conf, int width, SessionCalendar calendar, boolean squares) {
+        int grid = gridSeconds(conf);
+        if (grid == 0) return null;
+        return new AsOfAligner(width, calendar, grid, squares, conf.getInt(FactorEngine.CONF_STATE_CAPACITY, 8192));
+    }
+
+    private final class Day {
+        final int tradingDay;
+        // 差分数组，多一个网格点放 "延续到最后" 的终点
+        final long[] counts = new long[points + 1];
+        final double[] sums = new double[(points + 1) * width];
+        final double[] sumSqs = squares ? new double[(points + 1) * width] : null;
+
+        Day(int tradingDay) {
+            this.tradingDay = tradingDay;
+        }
+    }
+
+    private Day day(int tradingDay) {
+        Day d = lastDay;
+        if (d == null || d.tradingDay != tradingDay) {
+            d = days.get(tradingDay);
+            if (d == null) {
+                d = new Day(tradingDay);
+                days.put(tradingDay, d);
+            }
+            lastDay = d;
+        }
+        return d;
+    }
+
+    /**
+     * 一笔行情的因子 f[1..width]：落到不早于它的第一个网格点 (as-of，不看未来)
+     */
+    public void add(long stockKey, int tradingDay, int secondOfDay, double[] f) {
+        int offset = secondOfDay - firstSecond;
+        int point = offset <= 0 ? 0 : (offset + grid - 1) / grid;
+        if (point >= points) return;   // 晚于最后一个网格点，不影响任何截面
+
+        int slot = store.find(stockKey);
+        if (slot < 0) {
+            if (store.size() == store.capacity()) grow();
+            slot = store.slotOf(stockKey);
+            keys[slot] = stockKey;
+            stockDay[slot] = day(tradingDay);
+            from[slot] = point;
+        } else if (point > from[slot]) {
+            commit(slot, point);
+            from[slot] = point;
+        }
+        System.arraycopy(f, 1, last, slot * width, width);
+    }
+
+    /**
+     * 把槽位当前向量在 [from, to) 上的贡献记进差分数组
+     */
+    private void commit(int slot, int to) {
+        int a = from[slot];
+        if (a >= to) return;
+        Day d = stockDay[slot];
+        d.counts[a]++;
+        d.counts[to]--;
+        int base = slot * width;
+        int ia = a * width;
+        int it = to * width;
+        for (int i = 0; i < width; i++) {
+            double v = last[base + i];
+            d.sums[ia + i] += v;
+            d.sums[it + i] -= v;
+        }
+        if (squares) {
+            for (int i = 0; i < width; i++) {
+                double v = last[base + i];
+                d.sumSqs[ia + i] += v * v;
+                d.sumSqs[it + i] -= v * v;
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = store.capacity() * 2;
+        StockStateStore bigger = new StockStateStore(capacity);
+        // 按原槽位顺序重新插入，槽位号保持不变
+        for (int s = 0; s < store.size(); s++) bigger.slotOf(keys[s]);
+        store = bigger;
+        keys = Arrays.copyOf(keys, capacity);
+        stockDay = Arrays.copyOf(stockDay, capacity);
+        from = Arrays.copyOf(from, capacity);
+        last = Arrays.copyOf(last, capacity * width);
+    }
+
+    /**
+     * 各股票的最后一个向量延续到当天结束，按 (交易日, 网格秒) 升序输出每个网格点的 (股票数, 和)；
+     * 输出后清空全部状态
+     */
+    public void forEach(SlotAggregator.Sink sink) throws IOException, InterruptedException {
+        for (int s = 0; s < store.size(); s++) commit(s, points);
+
+        double[] sums = new double[width];
+        double[] sumSqs = squares ? new double[width] : null;
+        for (Day d : days.values()) {
+            long count = 0;
+            Arrays.fill(sums, 0.0);
+            if (squares) Arrays.fill(sumSqs, 0.0);
+            for (int k = 0; k < points; k++) {
+                count += d.counts[k];
+                int base = k * width;
+                for (int i = 0; i < width; i++) sums[i] += d.sums[base + i];
+                if (squares) {
+                    for (int i = 0; i < width; i++) sumSqs[i] += d.sumSqs[base + i];
+                }
+                int second = firstSecond + k * grid;
+                if (count > 0 && calendar.acceptsAny(d.tradingDay, second)) {
+                    sink.accept(d.tradingDay, second, count, sums, sumSqs, 0);
+                }
+            }
+        }
+        clear();
+    }
+
+    public void clear() {
+        store.clear();
+        days.clear();
+        lastDay = null;
+    }
+}
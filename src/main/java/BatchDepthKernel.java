@@ -0,0 +1,58 @@
+// [file name]: BatchDepthKernel.java
+/**
+ * 跨 tick 的批量盘口聚合：外层按档位、内层按 tick 遍历 TickBlock。
+ * 每笔仍按 1..N 档顺序累加，结果与 DepthKernels 逐位一致。
+ *
+ * 这是 Java 8 的标量实现；多版本 JAR 在 Java 17+ 上通过 BatchKernelProvider 换成
+ * jdk.incubator.vector 的向量实现 (VectorBatchDepthKernel，一条指令处理多笔 tick)，
+ * 模块不可用时仍回退到这里。
+ */
+public class BatchDepthKernel {
+
+    public static final String CONF_KERNEL = "factor.kernel";   // batch (默认) | tick
+
+    protected final int depth;
+
+    public BatchDepthKernel(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * 当前 JVM 上最快的实现
+     */
+    public static BatchDepthKernel create(int depth) {
+        return BatchKernelProvider.create(depth);
+    }
+
+    /**
+     * 实现名称 (日志 / 基准测试输出)
+     */
+    public String name() {
+        return "scalar";
+    }
+
+    public void aggregate(TickBlock block) {
+        aggregateRange(block, 0, block.size);
+    }
+
+    protected void aggregateRange(TickBlock block, int from, int to) {
+        double[] b = block.bidDepth, a = block.askDepth;
+        double[] wb = block.bidNotional, wa = block.askNotional;
+        double[] xb = block.bidWeighted, xa = block.askWeighted;
+        for (int t = from; t < to; t++) {
+            b[t] = 0; a[t] = 0; wb[t] = 0; wa[t] = 0; xb[t] = 0; xa[t] = 0;
+        }
+        for (int l = 1; l <= depth; l++) {
+            final long[] bp = block.bp[l], bv = block.bv[l], ap = block.ap[l], av = block.av[l];
+            final double w = 1.0 / l;
+            for (int t = from; t < to; t++) {
+                b[t] += bv[t];
+                a[t] += av[t];
+                wb[t] += bp[t] * bv[t];
+                wa[t] += ap[t] * av[t];
+                xb[t] += bv[t] * w;
+                xa[t] += av[t] * w;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// [file name]: BatchKernelBenchmark.java
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 盘口聚合核的校验 + 基准：随机盘口上比较
+ * <pre>
+ *   tick    DepthKernels 逐笔 (原路径)
+ *   scalar  BatchDepthKernel 标量批量
+ *   best    BatchDepthKernel.create() (Java 17+ 且加载了 jdk.incubator.vector 时为向量实现)
+ * </pre>
+ * 三者结果必须逐位一致 (比较 doubleToRawLongBits)，否则退出码 1。
+ *
+ * 用法 (向量实现只在多版本 JAR 中生效)：
+ *   java --add-modules jdk.incubator.vector -cp target/Final_proj-1.0-SNAPSHOT.jar:... BatchKernelBenchmark
+ *        [--depth=5,10,20] [--ticks=4096] [--rounds=2000] [--seed=1]
+ */
+public class BatchKernelBenchmark {
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "4096"));
+        int rounds = Integer.parseInt(options.getOrDefault("rounds", "2000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        List<Integer> depths = new ArrayList<>();
+        for (String d : options.getOrDefault("depth", "5,10,20").split(",")) depths.add(Integer.parseInt(d.trim()));
+
+        boolean ok = true;
+        System.out.printf("%-6s %-14s %12s %12s %12s %9s%n", "depth", "kernel", "tick ns", "scalar ns", "best ns", "speedup");
+        for (int depth : depths) {
+            ok &= run(depth, ticks, rounds, seed);
+        }
+        if (!ok) {
+            System.err.println("MISMATCH between scalar and batch kernels");
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(int depth, int ticks, int rounds, long seed) {
+        Random random = new Random(seed + depth);
+        TickData[] data = new TickData[ticks];
+        TickBlock block = new TickBlock(depth, ticks);
+        for (int t = 0; t < ticks; t++) {
+            TickData d = new TickData(depth);
+            long mid = 10_000 + random.nextInt(500_000);
+            for (int l = 1; l <= depth; l++) {
+                d.bp[l] = mid - l * (1 + random.nextInt(50));
+                d.ap[l] = mid + l * (1 + random.nextInt(50));
+                // 偶尔出现缺档 (0) 和大单
+                d.bv[l] = random.nextInt(20) == 0 ? 0 : 100 + random.nextInt(random.nextBoolean() ? 1_000 : 5_000_000);
+                d.av[l] = random.nextInt(20) == 0 ? 0 : 100 + random.nextInt(random.nextBoolean() ? 1_000 : 5_000_000);
+            }
+            data[t] = d;
+            block.add(d);
+        }
+
+        BatchDepthKernel scalar = new BatchDepthKernel(depth);
+        BatchDepthKernel best = BatchDepthKernel.create(depth);
+        int kernel = DepthKernels.kernelFor(depth);
+        DepthKernels.Aggregates agg = new DepthKernels.Aggregates();
+
+        // 校验：逐笔参考值 vs 两种批量实现
+        double[][] reference = new double[ticks][];
+        for (int t = 0; t < ticks; t++) {
+            DepthKernels.aggregate(kernel, depth, data[t], agg);
+            reference[t] = values(agg);
+        }
+        int mismatches = 0;
+        for (BatchDepthKernel k : new BatchDepthKernel[]{scalar, best}) {
+            k.aggregate(block);
+            for (int t = 0; t < ticks; t++) {
+                block.aggregatesOf(t, agg);
+                double[] got = values(agg);
+                for (int i = 0; i < got.length; i++) {
+                    if (Double.doubleToRawLongBits(got[i]) != Double.doubleToRawLongBits(reference[t][i])) mismatches++;
+                }
+            }
+        }
+
+        // 基准：先预热一轮，再计时
+        double sink = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int t = 0; t < ticks; t++) {
+                    DepthKernels.aggregate(kernel, depth, data[t], agg);
+                    sink += agg.bidNotional;
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                scalar.aggregate(block);
+                sink += block.bidNotional[r % ticks];
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                best.aggregate(block);
+                sink += block.bidNotional[r % ticks];
+            }
+            long t3 = System.nanoTime();
+            if (pass == 1) {
+                double n = (double) rounds * ticks;
+                double tickNs = (t1 - t0) / n, scalarNs = (t2 - t1) / n, bestNs = (t3 - t2) / n;
+                System.out.printf("%-6d %-14s %12.2f %12.2f %12.2f %8.2fx%s%n", depth, best.name(),
+                        tickNs, scalarNs, bestNs, tickNs / bestNs, mismatches == 0 ? "" : "  MISMATCH x" + mismatches);
+            }
+        }
+        if (sink == 42) System.out.println();   // 防止被优化掉
+        return mismatches == 0;
+    }
+
+    private static double[] values(DepthKernels.Aggregates agg) {
+        return new double[]{agg.bidDepth, agg.askDepth, agg.bidNotional, agg.askNotional, agg.bidWeighted, agg.askWeighted};
+    }
+}
@@ -0,0 +1,13 @@
+// [file name]: BatchKernelProvider.java
+/**
+ * 批量聚合核的选择。Java 8 版本只有标量实现；
+ * 多版本 JAR 的 META-INF/versions/17 下有同名类，按 jdk.incubator.vector 是否可用选择向量实现。
+ */
+final class BatchKernelProvider {
+
+    private BatchKernelProvider() {}
+
+    static BatchDepthKernel create(int depth) {
+        return new BatchDepthKernel(depth);
+    }
+}
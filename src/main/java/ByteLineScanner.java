@@ -0,0 +1,87 @@
+// [file name]: ByteLineScanner.java
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 大缓冲区逐行扫描：直接在复用的字节缓冲上给出每行的 [lineStart, lineEnd) (行尾 '\n'，去掉 '\r')
+ * 和行首相对扫描起点的字节偏移，不创建 Text / String。一行超过缓冲区时自动扩容。
+ */
+public final class ByteLineScanner implements AutoCloseable {
+
+    private InputStream in;
+    public byte[] buf;
+    private int pos;
+    private int limit;
+    private long bufferOffset;   // buf[0] 相对扫描起点的偏移
+
+    // 当前行
+    public int lineStart;
+    public int lineEnd;
+    public long lineOffset;
+
+    public ByteLineScanner(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[Math.max(bufferSize, 1024)];
+    }
+
+    /**
+     * 换一个输入流从头扫描，复用已分配的缓冲区 (不关闭原来的流)
+     */
+    public void reset(InputStream in) {
+        this.in = in;
+        pos = 0;
+        limit = 0;
+        bufferOffset = 0;
+    }
+
+    /**
+     * 已消费的字节数 (下一行的起点)
+     */
+    public long offset() {
+        return bufferOffset + pos;
+    }
+
+    public boolean next() throws IOException {
+        while (true) {
+            for (int i = pos; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    lineStart = pos;
+                    lineEnd = (i > pos && buf[i - 1] == '\r') ? i - 1 : i;
+                    lineOffset = bufferOffset + pos;
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            // 缓冲区里没有完整行：挪到开头再读
+            int remaining = limit - pos;
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, remaining);
+                bufferOffset += pos;
+                pos = 0;
+                limit = remaining;
+            } else if (limit == buf.length) {
+                byte[] bigger = new byte[buf.length * 2];
+                System.arraycopy(buf, 0, bigger, 0, limit);
+                buf = bigger;
+            }
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n <= 0) {
+                if (limit > pos) {
+                    // 最后一行没有换行符
+                    lineStart = pos;
+                    lineEnd = limit;
+                    lineOffset = bufferOffset + pos;
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            limit += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,149 @@
+// [file name]: ColumnLayout.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CSV 列位置映射：由表头推导各字段下标，档位数 (depth) 按 Job 配置。
+ * 没有表头时退回到原来写死的列顺序（bp1 在第 17 列，每档 4 列）。
+ * 累计成交列 (cumCnt / cumVol / turnover) 只在成交流因子需要时才映射 (见 FlowFactors)，否则为 -1。
+ * 只选了部分基础因子时 (见 FactorSelection) 只解析它们用到的盘口列，maxColumn 也随之变小。
+ */
+public class ColumnLayout {
+
+    public static final String CONF_HEADER = "factor.csv.header";
+    public static final String CONF_DEPTH = "factor.depth";
+    public static final int DEFAULT_DEPTH = 5;
+    public static final int MAX_DEPTH = 20;
+
+    public final int depth;
+    public final int tradingDay, tradeTime, mic, code;
+    public final int last, tBidVol, tAskVol;
+    public final int cumCnt, cumVol, turnover;   // 未启用为 -1
+    public final int[] bp, bv, ap, av;   // 下标 1..depth
+    public final boolean parseLast, parseTradeVolume;
+    public final int priceLevels;        // 解析前几档的 bp / ap (0、1 或 depth)
+    public final int volumeLevels;       // 解析前几档的 bv / av (0、1 或 depth)
+    public final int maxColumn;          // 需要用到的最大列号
+
+    private final Map<String, Integer> columns;
+
+    /**
+     * @param required 需要解析的列 (FactorSelection.COL_* | FlowFactors.COL_* 位掩码)
+     */
+    private ColumnLayout(Map<String, Integer> columns, int depth, int required) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Order book depth must be in [1, " + MAX_DEPTH + "]: " + depth);
+        }
+        this.columns = columns;
+        this.depth = depth;
+        tradingDay = require("tradingDay");
+        tradeTime = require("tradeTime");
+        mic = require("MIC");
+        code = require("code");
+        last = require("last");
+        tBidVol = require("tBidVol");
+        tAskVol = require("tAskVol");
+        bp = new int[depth + 1];
+        bv = new int[depth + 1];
+        ap = new int[depth + 1];
+        av = new int[depth + 1];
+        cumCnt = (required & FlowFactors.COL_CUM_CNT) != 0 ? require("cumCnt") : -1;
+        cumVol = (required & FlowFactors.COL_CUM_VOL) != 0 ? require("cumVol") : -1;
+        turnover = (required & FlowFactors.COL_TURNOVER) != 0 ? require("turnover") : -1;
+        parseLast = (required & FactorSelection.COL_LAST) != 0;
+        parseTradeVolume = (required & FactorSelection.COL_TRADE_VOL) != 0;
+        priceLevels = (required & FactorSelection.COL_DEPTH_PRICE) != 0 ? depth
+                : (required & FactorSelection.COL_L1_PRICE) != 0 ? 1 : 0;
+        volumeLevels = (required & FactorSelection.COL_DEPTH_VOL) != 0 ? depth
+                : (required & FactorSelection.COL_L1_VOL) != 0 ? 1 : 0;
+
+        int max = Math.max(Math.max(tradingDay, tradeTime), Math.max(mic, code));
+        if (parseLast) max = Math.max(max, last);
+        if (parseTradeVolume) max = Math.max(max, Math.max(tBidVol, tAskVol));
+        max = Math.max(max, Math.max(cumCnt, Math.max(cumVol, turnover)));
+        for (int i = 1; i <= depth; i++) {
+            bp[i] = require("bp" + i);
+            bv[i] = require("bv" + i);
+            ap[i] = require("ap" + i);
+            av[i] = require("av" + i);
+            if (i <= priceLevels) max = Math.max(max, Math.max(bp[i], ap[i]));
+            if (i <= volumeLevels) max = Math.max(max, Math.max(bv[i], av[i]));
+        }
+        maxColumn = max;
+    }
+
+    private int require(String name) {
+        Integer idx = columns.get(name);
+        if (idx == null) {
+            throw new IllegalArgumentException("CSV header has no column '" + name + "' (depth=" + depth + ")");
+        }
+        return idx;
+    }
+
+    public static ColumnLayout fromConf(Configuration conf) {
+        int depth = conf.getInt(CONF_DEPTH, DEFAULT_DEPTH);
+        int required = requiredColumns(conf);
+        String header = conf.get(CONF_HEADER);
+        return (header == null || header.isEmpty()) ? defaultLayout(depth, required) : fromHeader(header, depth, required);
+    }
+
+    /**
+     * 按配置需要解析的列：选中因子用到的盘口列 + 成交流因子用到的累计列
+     */
+    public static int requiredColumns(Configuration conf) {
+        return FactorSelection.requiredColumns(conf) | FlowFactors.requiredColumns(conf);
+    }
+
+    public static ColumnLayout fromHeader(String header, int depth) {
+        return fromHeader(header, depth, FactorSelection.ALL_COLUMNS);
+    }
+
+    /**
+     * @param required 需要解析的列 (见 requiredColumns)
+     */
+    public static ColumnLayout fromHeader(String header, int depth, int required) {
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = header.trim().split(",");
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        return new ColumnLayout(columns, depth, required);
+    }
+
+    public static ColumnLayout defaultLayout(int depth) {
+        return defaultLayout(depth, FactorSelection.ALL_COLUMNS);
+    }
+
+    /**
+     * 原始列顺序：
+     * 0:tradingDay, 1:tradeTime, 2:recvTime, 3:MIC, 4:code,
+     * 5:cumCnt, 6:cumVol, 7:turnover, 8:last, 9:open, 10:high, 11:low,
+     * 12:tBidVol, 13:tAskVol, 14:wBidPrc, 15:wAskPrc, 16:openInterest,
+     * 17:bp1, 18:bv1, 19:ap1, 20:av1, 21:bp2, ...
+     */
+    public static ColumnLayout defaultLayout(int depth, int required) {
+        String[] fixed = {"tradingDay", "tradeTime", "recvTime", "MIC", "code",
+                "cumCnt", "cumVol", "turnover", "last", "open", "high", "low",
+                "tBidVol", "tAskVol", "wBidPrc", "wAskPrc", "openInterest"};
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < fixed.length; i++) columns.put(fixed[i], i);
+        for (int i = 1; i <= Math.max(depth, DEFAULT_DEPTH); i++) {
+            int baseCol = 17 + (i - 1) * 4;
+            columns.put("bp" + i, baseCol);
+            columns.put("bv" + i, baseCol + 1);
+            columns.put("ap" + i, baseCol + 2);
+            columns.put("av" + i, baseCol + 3);
+        }
+        return new ColumnLayout(columns, depth, required);
+    }
+
+    /**
+     * 按列名取下标，不存在返回 -1
+     */
+    public int indexOf(String name) {
+        Integer idx = columns.get(name);
+        return idx == null ? -1 : idx;
+    }
+}
@@ -0,0 +1,48 @@
+// [file name]: CompactFactorCombiner.java
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+/**
+ * 紧凑编码下的 Combiner：同一秒的 float 单笔记录在 map 端先做补偿求和，合成一条 double 局部和。
+ */
+public class CompactFactorCombiner extends Reducer<Text, CompactFactorWritable, Text, CompactFactorWritable> {
+
+    private int width;
+    private CompensatedSums acc;
+    private double[] sums;
+    private double[] sqs;
+    private FactorSets sets;
+    private boolean groups;
+    private final CompactFactorWritable outValue = new CompactFactorWritable();
+
+    @Override
+    protected void setup(Context context) {
+        sets = FactorSets.fromConf(context.getConfiguration());
+        width = sets == null ? FactorSchema.width(context.getConfiguration()) : sets.maxWidth();
+        boolean stdErr = StockSampler.enabled(context.getConfiguration());
+        // 分组 key 多一列权重和 (见 StockGroups)
+        groups = StockGroups.enabled(context.getConfiguration());
+        int columns = groups ? width + 1 : width;
+        acc = new CompensatedSums(columns, stdErr);
+        sums = new double[columns];
+        sqs = stdErr ? new double[columns] : null;
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<CompactFactorWritable> values, Context context)
+            throws IOException, InterruptedException {
+        acc.reset();
+        for (CompactFactorWritable value : values) {
+            value.addTo(acc);
+        }
+        if (acc.count() == 0) return;
+
+        acc.copySums(sums, sqs);
+        int keyWidth = groups && StockGroups.isGroupKey(key.getBytes(), key.getLength())
+                ? width + 1 : FactorSets.widthOfKey(sets, key.getBytes(), key.getLength(), width);
+        outValue.setPartial(acc.count(), sums, sqs, 0, keyWidth);
+        context.write(key, outValue);
+    }
+}
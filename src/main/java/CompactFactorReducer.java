@@ -0,0 +1,65 @@
+// [file name]: CompactFactorReducer.java
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+/**
+ * 紧凑编码下的 Reducer：补偿求和后求均值，输出格式与 SingleDateReducer 完全一致。
+ */
+public class CompactFactorReducer extends Reducer<Text, CompactFactorWritable, Text, Text> {
+
+    private int width;
+    private CompensatedSums acc;
+    private double[] sums;
+    private double[] sqs;
+    private FactorSets sets;
+    private boolean groups;
+    private FactorBars bars;
+
+    @Override
+    protected void setup(Context context) {
+        sets = FactorSets.fromConf(context.getConfiguration());
+        width = sets == null ? FactorSchema.width(context.getConfiguration()) : sets.maxWidth();
+        boolean stdErr = StockSampler.enabled(context.getConfiguration());
+        // 分组 key 多一列权重和 (见 StockGroups)
+        groups = StockGroups.enabled(context.getConfiguration());
+        acc = new CompensatedSums(groups ? width + 1 : width, stdErr);
+        sums = new double[width + 2];
+        sqs = stdErr ? new double[width + 1] : null;
+        // 多分辨率 bar (见 FactorBars)
+        int[] barSizes = FactorBars.sizes(context.getConfiguration());
+        if (barSizes != null && sets == null) bars = new FactorBars(barSizes, width, stdErr);
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<CompactFactorWritable> values, Context context)
+            throws IOException, InterruptedException {
+        acc.reset();
+        for (CompactFactorWritable value : values) {
+            value.addTo(acc);
+        }
+        // 如果没有有效数据，直接跳过
+        if (acc.count() == 0) return;
+
+        // formatLine 的数组下标从 1 开始
+        if (groups && StockGroups.isGroupKey(key.getBytes(), key.getLength())) {
+            for (int i = 0; i <= width; i++) sums[i + 1] = acc.sum(i);
+            context.write(new Text(SingleDateReducer.formatWeightedLine(key.toString(), sums, width)), new Text(""));
+            return;
+        }
+        int keyWidth = FactorSets.widthOfKey(sets, key.getBytes(), key.getLength(), width);
+        for (int i = 0; i < keyWidth; i++) {
+            sums[i + 1] = acc.sum(i);
+            if (sqs != null) sqs[i + 1] = acc.sumSq(i);
+        }
+        String result = SingleDateReducer.formatLine(key.toString(), acc.count(), sums, sqs, keyWidth);
+        context.write(new Text(result), new Text(""));
+        if (bars != null) bars.add(key.getBytes(), key.getLength(), acc.count(), sums, sqs, context);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (bars != null) bars.flush(context);
+    }
+}
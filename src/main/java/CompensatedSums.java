@@ -0,0 +1,93 @@
+// [file name]: CompensatedSums.java
+import java.util.Arrays;
+
+/**
+ * 按因子的 Neumaier (改进 Kahan) 补偿求和：每个和带一个补偿项，累加几百万个量级悬殊的值也不丢低位。
+ * 可选同时累加平方和 (抽样模式的标准误)。按 key 复用，reset 后重新累加。
+ */
+public class CompensatedSums {
+
+    private final int width;
+    private final boolean squares;
+    private final double[] sum;
+    private final double[] comp;
+    private final double[] sumSq;
+    private final double[] compSq;
+    private long count;
+
+    public CompensatedSums(int width, boolean squares) {
+        this.width = width;
+        this.squares = squares;
+        this.sum = new double[width];
+        this.comp = new double[width];
+        this.sumSq = squares ? new double[width] : null;
+        this.compSq = squares ? new double[width] : null;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public boolean hasSquares() {
+        return squares;
+    }
+
+    public void reset() {
+        count = 0;
+        Arrays.fill(sum, 0.0);
+        Arrays.fill(comp, 0.0);
+        if (squares) {
+            Arrays.fill(sumSq, 0.0);
+            Arrays.fill(compSq, 0.0);
+        }
+    }
+
+    public void addCount(long n) {
+        count += n;
+    }
+
+    /**
+     * 单个值：累加到和，需要时同时累加平方
+     */
+    public void add(int i, double v) {
+        addSum(i, v);
+        if (squares) addSumSq(i, v * v);
+    }
+
+    public void addSum(int i, double v) {
+        double s = sum[i];
+        double t = s + v;
+        comp[i] += Math.abs(s) >= Math.abs(v) ? (s - t) + v : (v - t) + s;
+        sum[i] = t;
+    }
+
+    public void addSumSq(int i, double v) {
+        if (!squares) return;
+        double s = sumSq[i];
+        double t = s + v;
+        compSq[i] += Math.abs(s) >= Math.abs(v) ? (s - t) + v : (v - t) + s;
+        sumSq[i] = t;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum(int i) {
+        return sum[i] + comp[i];
+    }
+
+    public double sumSq(int i) {
+        return squares ? sumSq[i] + compSq[i] : 0.0;
+    }
+
+    /**
+     * 补偿后的和 / 平方和写到 dst[0..width)，dstSq 可为 null，供 CompactFactorWritable.setPartial 使用
+     */
+    public void copySums(double[] dst, double[] dstSq) {
+        for (int i = 0; i < width; i++) {
+            dst[i] = sum(i);
+            if (dstSq != null) dstSq[i] = sumSq(i);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+// [file name]: DailyFactorMapper.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * map-only 的按日模式 (Driver --map-only)：配合 DailyInputFormat，一个 map 任务处理一整天的截面，
+ * 在内存里按 (交易日, 秒) × 因子累加 (SlotAggregator)，cleanup 时直接输出最终的均值行，
+ * 格式与 SingleDateReducer 相同 ("yyyyMMdd_HHMMSS,avg1,..."，抽样模式附标准误列，可选多分辨率 bar)。
+ * 作业不设 Reducer，没有排序 / 溢写 / shuffle，各天的任务互不依赖、可以完全并行。
+ *
+ * 配置了 factor.align 时按 as-of 网格对齐 (见 AsOfAligner)，输出每个网格点上所有已出现股票的截面均值。
+ *
+ * 均值由 double 精度的和直接算出 (Reducer 路径累加的是每笔保留 6 位小数后的值)，末位可能有舍入差异。
+ */
+public class DailyFactorMapper extends Mapper<LongWritable, Text, Text, Text> {
+
+    private TickLineParser parser;
+    private FactorEngine engine;
+    private TickData currentTick;
+    private double[] factors;
+    private int width;
+
+    private SlotAggregator aggregator;
+    private AsOfAligner aligner;       // 非 null 时代替 aggregator
+    private FactorBars bars;           // null 表示关闭
+    private QuarantineWriter quarantine;
+    private FactorPanelWriter panelWriter;
+
+    private double[] sums;             // 输出一行时的 1 起下标缓冲
+    private double[] sqs;
+    private final Text outKey = new Text();
+    private final Text empty = new Text("");
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        parser = new TickLineParser(conf);
+        engine = new FactorEngine(conf);
+        currentTick = new TickData(parser.layout.depth);
+        width = engine.width();
+        factors = new double[width + 1];
+
+        boolean stdErr = StockSampler.enabled(conf);
+        SessionCalendar calendar = SessionCalendar.fromConf(conf);
+        aligner = AsOfAligner.fromConf(conf, width, calendar, stdErr);
+        if (aligner == null) {
+            aggregator = new SlotAggregator(width, calendar.firstAcceptedSecond(), calendar.lastAcceptedSecond(), stdErr);
+        }
+        int[] barSizes = FactorBars.sizes(conf);
+        if (barSizes != null) bars = new FactorBars(barSizes, width, stdErr);
+        sums = new double[width + 1];
+        sqs = stdErr ? new double[width + 1] : null;
+
+        quarantine = QuarantineWriter.create(context);
+        if (conf.getBoolean(FactorPanelWriter.CONF_ENABLED, false)) {
+            Path panelRoot = new Path(FileOutputFormat.getWorkOutputPath(context), FactorPanelWriter.PANEL_DIR);
+            panelWriter = new FactorPanelWriter(conf, panelRoot, context.getTaskAttemptID().getTaskID().toString(), width);
+        }
+    }
+
+    @Override
+    public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+        byte[] line = value.getBytes();
+        int status = parser.parse(line, 0, value.getLength(), currentTick);
+        if (status != TickLineParser.OK) {
+            if (quarantine != null && TickLineParser.isMalformed(status)) {
+                quarantine.write(status, line, 0, value.getLength());
+            }
+            return;
+        }
+        engine.compute(parser.stockKey, currentTick, factors);
+        if (aligner != null) {
+            aligner.add(parser.stockKey, parser.tradingDay, parser.secondOfDay, factors);
+        } else {
+            aggregator.add(parser.tradingDay, parser.secondOfDay, factors);
+        }
+
+        if (panelWriter != null) {
+            ColumnLayout layout = parser.layout;
+            panelWriter.append(fieldString(line, layout.tradingDay), fieldString(line, layout.code), parser.tradeTime, factors);
+        }
+    }
+
+    private String fieldString(byte[] line, int col) {
+        int start = parser.fieldStart(col);
+        return new String(line, start, parser.fieldEnd(col) - start, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        // 按 (交易日, 秒) 升序输出最终均值行；bar 由每秒的 (样本数, 和) 逐级汇总
+        SlotAggregator.Sink sink = (day, sec, count, daySums, daySqs, offset) -> {
+            System.arraycopy(daySums, offset, sums, 1, width);
+            if (sqs != null) System.arraycopy(daySqs, offset, sqs, 1, width);
+            String slotKey = SlotAggregator.slotKey(day, sec);
+            outKey.set(SingleDateReducer.formatLine(slotKey, count, sums, sqs, width));
+            context.write(outKey, empty);
+            if (bars != null) {
+                byte[] keyBytes = slotKey.getBytes(StandardCharsets.US_ASCII);
+                bars.add(keyBytes, keyBytes.length, count, sums, sqs, context);
+            }
+        };
+        if (aligner != null) {
+            aligner.forEach(sink);
+        } else {
+            aggregator.forEach(sink);
+            aggregator.clear();
+        }
+        if (bars != null) bars.flush(context);
+
+        TickLineParser.reportCounters(parser.statusCounts, context);
+        FactorEngine.reportUnchanged(engine.unchangedTicks(), context);
+        if (quarantine != null) quarantine.close();
+        if (panelWriter != null) panelWriter.close();
+    }
+}
@@ -0,0 +1,72 @@
+// [file name]: DailyInputFormat.java
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 按交易日分片的输入格式 (map-only 模式见 DailyFactorMapper；对齐模式见 AsOfAligner，也用它保证一只股票一天的行不跨任务)：输入按 "每天一个目录" 或 "每天一个文件" 组织时，
+ * 同一个目录下的所有文件 (直接放在输入根目录下的文件则各自) 组成一个分片，文件不切分，
+ * 一个 map 任务就能看到一天的完整截面。
+ *
+ * 每个文件的读取与 TimeRangeInputFormat 相同 (配置了时间窗口且有索引时只读窗口字节段，否则整个文件逐行读)。
+ */
+public class DailyInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        Set<Path> roots = new HashSet<>();
+        for (Path root : FileInputFormat.getInputPaths(job)) {
+            roots.add(root.getFileSystem(job.getConfiguration()).makeQualified(root));
+        }
+
+        // 分组 key：所在目录；直接在输入根目录下 (或输入本身就是文件) 的按文件
+        Map<Path, List<FileStatus>> days = new TreeMap<>();
+        for (FileStatus file : listStatus(job)) {
+            Path path = file.getPath();
+            Path parent = path.getParent();
+            Path day = parent == null || roots.contains(parent) || roots.contains(path) ? path : parent;
+            days.computeIfAbsent(day, k -> new ArrayList<>()).add(file);
+        }
+
+        List<InputSplit> splits = new ArrayList<>(days.size());
+        for (List<FileStatus> files : days.values()) {
+            Path[] paths = new Path[files.size()];
+            long[] starts = new long[files.size()];
+            long[] lengths = new long[files.size()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = files.get(i).getPath();
+                lengths[i] = files.get(i).getLen();
+            }
+            splits.add(new CombineFileSplit(paths, starts, lengths, new String[0]));
+        }
+        return splits;
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context, TimeRangeInputFormat.FileReader.class);
+    }
+}
@@ -0,0 +1,112 @@
+// [file name]: DepthKernels.java
+/**
+ * 按档位数特化的盘口聚合核：一次遍历得到各因子共用的深度 / 加权和。
+ * 5 档为完全展开的基本块，10 / 20 档由基本块串联，其它档位走通用循环。
+ * 各档按 1..N 顺序累加，与原逐因子循环的浮点结果逐位一致。
+ */
+public final class DepthKernels {
+
+    public static final int GENERIC = 0;
+
+    // 档位衰减权重 1/i（因子16），下标 1..MAX_DEPTH
+    private static final double[] LEVEL_WEIGHT = new double[ColumnLayout.MAX_DEPTH + 1];
+    static {
+        for (int i = 1; i <= ColumnLayout.MAX_DEPTH; i++) LEVEL_WEIGHT[i] = 1.0 / i;
+    }
+
+    private DepthKernels() {}
+
+    /**
+     * 前 N 档聚合结果
+     */
+    public static final class Aggregates {
+        public double bidDepth;      // Σ bv
+        public double askDepth;      // Σ av
+        public double bidNotional;   // Σ bp*bv
+        public double askNotional;   // Σ ap*av
+        public double bidWeighted;   // Σ bv/i
+        public double askWeighted;   // Σ av/i
+
+        void reset() {
+            bidDepth = 0; askDepth = 0;
+            bidNotional = 0; askNotional = 0;
+            bidWeighted = 0; askWeighted = 0;
+        }
+    }
+
+    /**
+     * 档位数 -> 特化核编号（5/10/20 有专用核）
+     */
+    public static int kernelFor(int depth) {
+        return (depth == 5 || depth == 10 || depth == 20) ? depth : GENERIC;
+    }
+
+    public static void aggregate(int kernel, int depth, TickData d, Aggregates agg) {
+        agg.reset();
+        switch (kernel) {
+            case 5:
+                block5(d, 0, agg);
+                break;
+            case 10:
+                block5(d, 0, agg);
+                block5(d, 5, agg);
+                break;
+            case 20:
+                block5(d, 0, agg);
+                block5(d, 5, agg);
+                block5(d, 10, agg);
+                block5(d, 15, agg);
+                break;
+            default:
+                generic(d, depth, agg);
+                break;
+        }
+    }
+
+    /**
+     * 展开的 5 档基本块：累加第 base+1 .. base+5 档
+     */
+    private static void block5(TickData d, int base, Aggregates agg) {
+        final long[] bp = d.bp, bv = d.bv, ap = d.ap, av = d.av;
+        final int i1 = base + 1, i2 = base + 2, i3 = base + 3, i4 = base + 4, i5 = base + 5;
+        final long bv1 = bv[i1], bv2 = bv[i2], bv3 = bv[i3], bv4 = bv[i4], bv5 = bv[i5];
+        final long av1 = av[i1], av2 = av[i2], av3 = av[i3], av4 = av[i4], av5 = av[i5];
+
+        double b = agg.bidDepth, a = agg.askDepth;
+        b += bv1; b += bv2; b += bv3; b += bv4; b += bv5;
+        a += av1; a += av2; a += av3; a += av4; a += av5;
+        agg.bidDepth = b;
+        agg.askDepth = a;
+
+        double wb = agg.bidNotional, wa = agg.askNotional;
+        wb += bp[i1] * bv1; wb += bp[i2] * bv2; wb += bp[i3] * bv3; wb += bp[i4] * bv4; wb += bp[i5] * bv5;
+        wa += ap[i1] * av1; wa += ap[i2] * av2; wa += ap[i3] * av3; wa += ap[i4] * av4; wa += ap[i5] * av5;
+        agg.bidNotional = wb;
+        agg.askNotional = wa;
+
+        final double w1 = LEVEL_WEIGHT[i1], w2 = LEVEL_WEIGHT[i2], w3 = LEVEL_WEIGHT[i3], w4 = LEVEL_WEIGHT[i4], w5 = LEVEL_WEIGHT[i5];
+        double xb = agg.bidWeighted, xa = agg.askWeighted;
+        xb += bv1 * w1; xb += bv2 * w2; xb += bv3 * w3; xb += bv4 * w4; xb += bv5 * w5;
+        xa += av1 * w1; xa += av2 * w2; xa += av3 * w3; xa += av4 * w4; xa += av5 * w5;
+        agg.bidWeighted = xb;
+        agg.askWeighted = xa;
+    }
+
+    private static void generic(TickData d, int depth, Aggregates agg) {
+        double b = 0, a = 0, wb = 0, wa = 0, xb = 0, xa = 0;
+        for (int i = 1; i <= depth; i++) {
+            b += d.bv[i];
+            a += d.av[i];
+            wb += d.bp[i] * d.bv[i];
+            wa += d.ap[i] * d.av[i];
+            xb += d.bv[i] * LEVEL_WEIGHT[i];
+            xa += d.av[i] * LEVEL_WEIGHT[i];
+        }
+        agg.bidDepth = b;
+        agg.askDepth = a;
+        agg.bidNotional = wb;
+        agg.askNotional = wa;
+        agg.bidWeighted = xb;
+        agg.askWeighted = xa;
+    }
+}
@@ -0,0 +1,146 @@
+// [file name]: FactorBars.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 多分辨率因子 K 线：Reducer 按 key 顺序拿到每秒的 (样本数, 因子和 [, 平方和]) 后，
+ * 逐级滚动汇总成配置的 bar (factor.bars=3,60,300，单位秒，按自然日秒数对齐)，
+ * 均值按底层 tick 数精确加权 (Σ和 / Σ样本数)，不是对每秒均值再取平均。
+ *
+ * 若粗一级的 bar 长度是更细一级的整数倍，则由细一级收盘的 bar 汇总上来，否则直接由每秒数据汇总。
+ * 输出 key 形如 "&lt;N&gt;s~tradingDay_barStart"，列与每秒输出相同，
+ * Driver 落到 &lt;output&gt;/bars/&lt;N&gt;s/MMDD.csv。只处理不带因子集 / 分组标签的 key。
+ */
+public class FactorBars {
+
+    public static final String CONF_BARS = "factor.bars";
+    public static final char TAG_SEPARATOR = '~';
+    public static final String DIR = "bars";
+
+    /**
+     * 配置的 bar 长度 (秒，升序去重)；未配置返回 null
+     */
+    public static int[] sizes(Configuration conf) {
+        String[] specs = conf.getTrimmedStrings(CONF_BARS);
+        if (specs.length == 0) return null;
+        int[] sizes = new int[specs.length];
+        for (int i = 0; i < specs.length; i++) {
+            int size;
+            try {
+                size = Integer.parseInt(specs[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bar size must be a number of seconds: '" + specs[i] + "'");
+            }
+            if (size < 2 || size > SessionCalendar.SECONDS_PER_DAY) {
+                throw new IllegalArgumentException("Bar size must be in [2, 86400] seconds: " + size);
+            }
+            sizes[i] = size;
+        }
+        return Arrays.stream(sizes).sorted().distinct().toArray();
+    }
+
+    private final int width;
+    private final Level[] levels;
+
+    /**
+     * @param squares 是否同时汇总平方和 (抽样模式的标准误列)
+     */
+    public FactorBars(int[] sizes, int width, boolean squares) {
+        this.width = width;
+        this.levels = new Level[sizes.length];
+        for (int l = 0; l < sizes.length; l++) {
+            int source = -1;
+            for (int j = l - 1; j >= 0 && source < 0; j--) {
+                if (sizes[l] % sizes[j] == 0) source = j;
+            }
+            levels[l] = new Level(sizes[l], width, squares, source);
+        }
+    }
+
+    /**
+     * 一级分辨率：当前未收盘的 bar；source 为汇总来源 (更细一级的下标，-1 表示每秒数据)
+     */
+    private static final class Level {
+        final int size;
+        final int source;
+        final String tag;
+        final double[] sums;
+        final double[] sqs;
+        long count;
+        int day = -1;
+        int start = -1;
+
+        Level(int size, int width, boolean squares, int source) {
+            this.size = size;
+            this.source = source;
+            this.tag = size + "s" + TAG_SEPARATOR;
+            this.sums = new double[width + 1];
+            this.sqs = squares ? new double[width + 1] : null;
+        }
+    }
+
+    /**
+     * 累加一秒的数据：key 为 "yyyyMMdd_HHMMSS"，sums / sqs 下标 1..width (sqs 可为 null)
+     */
+    public void add(byte[] key, int length, long count, double[] sums, double[] sqs,
+                    TaskInputOutputContext<?, ?, Text, Text> context) throws IOException, InterruptedException {
+        int us = -1;
+        for (int i = 0; i < length; i++) {
+            if (key[i] == '_') {
+                us = i;
+                break;
+            }
+        }
+        if (us < 0) return;
+        int day = SessionCalendar.parseDigits(key, 0, us);
+        int time = SessionCalendar.parseDigits(key, us + 1, length);
+        if (day < 0 || time < 0) return;
+        int second = SessionCalendar.secondsOfDay(time);
+        if (second < 0) return;
+        for (int l = 0; l < levels.length; l++) {
+            if (levels[l].source < 0) add(l, day, second, count, sums, sqs, context);
+        }
+    }
+
+    private void add(int l, int day, int second, long count, double[] sums, double[] sqs,
+                     TaskInputOutputContext<?, ?, Text, Text> context) throws IOException, InterruptedException {
+        Level level = levels[l];
+        int start = second - second % level.size;
+        if (level.count > 0 && (day != level.day || start != level.start)) close(l, context);
+        level.day = day;
+        level.start = start;
+        level.count += count;
+        for (int i = 1; i <= width; i++) level.sums[i] += sums[i];
+        if (level.sqs != null && sqs != null) {
+            for (int i = 1; i <= width; i++) level.sqs[i] += sqs[i];
+        }
+    }
+
+    /**
+     * 收盘：输出当前 bar，并汇总进以它为来源的粗一级
+     */
+    private void close(int l, TaskInputOutputContext<?, ?, Text, Text> context) throws IOException, InterruptedException {
+        Level level = levels[l];
+        for (int p = l + 1; p < levels.length; p++) {
+            if (levels[p].source == l) add(p, level.day, level.start, level.count, level.sums, level.sqs, context);
+        }
+        String key = level.tag + SlotAggregator.slotKey(level.day, level.start);
+        context.write(new Text(SingleDateReducer.formatLine(key, level.count, level.sums, level.sqs, width)), new Text(""));
+        level.count = 0;
+        Arrays.fill(level.sums, 0.0);
+        if (level.sqs != null) Arrays.fill(level.sqs, 0.0);
+    }
+
+    /**
+     * Reducer cleanup 时调用：由细到粗输出所有未收盘的 bar
+     */
+    public void flush(TaskInputOutputContext<?, ?, Text, Text> context) throws IOException, InterruptedException {
+        for (int l = 0; l < levels.length; l++) {
+            if (levels[l].count > 0) close(l, context);
+        }
+    }
+}
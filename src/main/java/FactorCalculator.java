@@ -4,7 +4,7 @@
  */
 public class FactorCalculator {
 
-    private static final int N = 5;      // 前n档，根据题目n=5
+    private static final int N = ColumnLayout.DEFAULT_DEPTH;      // 默认前n档，根据题目n=5
     private static final int DELTA_T = 1; // Δt=1（3秒）
     private static final double EPSILON = 1e-7; // 防止除零
 
@@ -12,6 +12,13 @@ public class FactorCalculator {
      * 计算所有20个因子
      */
     public static double[] calculateAllFactors(EnhancedTickData current) {
+        return calculateAllFactors(current, N);
+    }
+
+    /**
+     * 按指定档位数 n 计算所有20个因子
+     */
+    public static double[] calculateAllFactors(EnhancedTickData current, int n) {
         double[] factors = new double[21]; // 索引1-20
 
         // 基础因子（不需要历史数据）
@@ -19,29 +26,29 @@ public class FactorCalculator {
         factors[2] = calculateRelativeSpread(current);  // 相对价差
         factors[3] = calculateMidPrice(current);        // 中间价
         factors[4] = calculateBidAskImbalance1(current); // 买一不平衡
-        factors[5] = calculateMultiLevelImbalance(current, N); // 多档不平衡
-        factors[6] = calculateBidDepth(current, N);     // 买方深度
-        factors[7] = calculateAskDepth(current, N);     // 卖方深度
-        factors[8] = calculateDepthDifference(current, N); // 深度差
-        factors[9] = calculateDepthRatio(current, N);   // 深度比
+        factors[5] = calculateMultiLevelImbalance(current, n); // 多档不平衡
+        factors[6] = calculateBidDepth(current, n);     // 买方深度
+        factors[7] = calculateAskDepth(current, n);     // 卖方深度
+        factors[8] = calculateDepthDifference(current, n); // 深度差
+        factors[9] = calculateDepthRatio(current, n);   // 深度比
         factors[10] = calculateMarketImbalance(current); // 买卖量平衡指数
 
         // 加权价格因子
-        factors[11] = calculateVWAPBid(current, N);     // 买方加权价格
-        factors[12] = calculateVWAPAsk(current, N);     // 卖方加权价格
-        factors[13] = calculateWeightedMidPrice(current, N); // 加权中间价
-        factors[14] = calculateWeightedSpread(current, N); // 加权价差
+        factors[11] = calculateVWAPBid(current, n);     // 买方加权价格
+        factors[12] = calculateVWAPAsk(current, n);     // 卖方加权价格
+        factors[13] = calculateWeightedMidPrice(current, n); // 加权中间价
+        factors[14] = calculateWeightedSpread(current, n); // 加权价差
 
         // 密度和不对称度
-        factors[15] = calculateDensityDifference(current, N); // 买卖密度差
-        factors[16] = calculateAsymmetryDegree(current, N); // 买卖不对称度
+        factors[15] = calculateDensityDifference(current, n); // 买卖密度差
+        factors[16] = calculateAsymmetryDegree(current, n); // 买卖不对称度
 
         // 需要历史数据的因子
         PreviousTickData prev = current.getPreviousData();
         factors[17] = calculateBestPriceChange(current, prev); // 最优价变动
         factors[18] = calculateMidPriceChange(current, prev);  // 中间价变动
-        factors[19] = calculateDepthRatioChange(current, prev, N); // 深度比变动
-        factors[20] = calculatePressureIndicator(current, N); // 价压指标
+        factors[19] = calculateDepthRatioChange(current, prev, n); // 深度比变动
+        factors[20] = calculatePressureIndicator(current, n); // 价压指标
 
         return factors;
     }
@@ -0,0 +1,317 @@
+// [file name]: FactorDaemon.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 常驻因子守护进程：一个长期运行的本地 JVM，在进程内调用 ParallelFactorDriver.run，
+ * 省掉每次运行的 JVM 启动、Hadoop 类加载、FileSystem 初始化和 JIT 预热。
+ * 交易时段表 (SessionCalendar.parse) 和股票分组字典 (StockGroups.load) 按规则 / 文件缓存在进程内，后续作业直接复用；
+ * --preload-groups 在启动时就载入给定的分组文件。
+ *
+ * 只监听回环地址；作业按到达顺序逐个执行 (运行期间 System.out / System.err 转发给提交的客户端)。
+ * 作业以守护进程用户的权限读写任意路径，因此每个请求必须先出示令牌：serve 启动时生成随机令牌，
+ * 写进只有属主可读写 (0600) 的令牌文件 (默认 ~/.factor-daemon-&lt;port&gt;.token)，submit / stop 读取后随请求发送，
+ * 不符的请求直接拒绝。
+ *
+ * 用法：
+ *   FactorDaemon serve [--port=17071] [--token-file=f] [--warmup=&lt;input&gt;] [--preload-groups=a.csv,b.csv]
+ *   FactorDaemon submit [--port=17071] [--token-file=f] &lt;input&gt; &lt;output&gt; [driver options...]
+ *   FactorDaemon stop [--port=17071] [--token-file=f]
+ * submit 的退出码与直接运行 ParallelFactorDriver 相同 (0 成功 / 1 失败)。
+ */
+public class FactorDaemon {
+
+    public static final int DEFAULT_PORT = 17071;
+
+    // 协议：客户端 writeUTF(令牌)，服务端回 ACCEPTED (令牌不符时直接回 OUT 帧 + EXIT 1)；
+    // 客户端再发 writeUTF(命令) + writeInt(参数个数) + writeUTF(参数)...；
+    // 服务端回 [OUT writeInt(长度) + 原始字节]... 最后 EXIT writeInt(退出码)
+    private static final String CMD_RUN = "run";
+    private static final String CMD_STOP = "stop";
+    private static final int OUT = 1;
+    private static final int EXIT = 0;
+    private static final int ACCEPTED = 2;
+    private static final int CHUNK = 16 * 1024;
+    private static final int TOKEN_BYTES = 32;
+    private static final int REQUEST_TIMEOUT_MS = 10_000;   // 读请求的超时，防止不发数据的连接占住守护进程
+
+    public static void main(String[] args) throws Exception {
+        List<String> rest = new ArrayList<>();
+        int port = DEFAULT_PORT;
+        String warmup = null;
+        String tokenFile = null;
+        String preloadGroups = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) port = Integer.parseInt(arg.substring("--port=".length()));
+            else if (arg.startsWith("--warmup=")) warmup = arg.substring("--warmup=".length());
+            else if (arg.startsWith("--token-file=")) tokenFile = arg.substring("--token-file=".length());
+            else if (arg.startsWith("--preload-groups=")) preloadGroups = arg.substring("--preload-groups=".length());
+            else rest.add(arg);
+        }
+        File token = tokenFile != null ? new File(tokenFile)
+                : new File(System.getProperty("user.home"), ".factor-daemon-" + port + ".token");
+        String command = rest.isEmpty() ? "" : rest.remove(0);
+        switch (command) {
+            case "serve":
+                serve(port, token, warmup, preloadGroups);
+                break;
+            case "submit":
+                System.exit(submit(port, token, CMD_RUN, rest));
+                break;
+            case "stop":
+                System.exit(submit(port, token, CMD_STOP, rest));
+                break;
+            default:
+                System.err.println("Usage: FactorDaemon serve [--port=N] [--token-file=f] [--warmup=<input>] [--preload-groups=a.csv,b.csv]");
+                System.err.println("       FactorDaemon submit [--port=N] [--token-file=f] <input> <output> [driver options...]");
+                System.err.println("       FactorDaemon stop [--port=N] [--token-file=f]");
+                System.exit(2);
+        }
+    }
+
+    // ========== 服务端 ==========
+
+    private static void serve(int port, File tokenFile, String warmup, String preloadGroups) throws Exception {
+        long t0 = System.currentTimeMillis();
+        // 预加载：Hadoop 配置 / 本地文件系统 / 作业相关类，默认交易时段表和给定的股票分组字典
+        Configuration conf = new Configuration();
+        FileSystem.get(conf);
+        SessionCalendar.defaultCalendar();
+        Class.forName(Job.class.getName());
+        if (preloadGroups != null) {
+            for (String file : preloadGroups.split(",")) {
+                if (file.trim().isEmpty()) continue;
+                Path path = new Path(new File(file.trim()).getAbsolutePath());
+                System.out.printf(">>> Preloaded %d stock groups from %s%n", StockGroups.load(conf, path).size(), path);
+            }
+        }
+        if (warmup != null) {
+            File dir = Files.createTempDirectory("factor-daemon-warmup").toFile();
+            System.out.println(">>> Warming up on " + warmup);
+            ParallelFactorDriver.run(new String[]{warmup, dir.getPath()});
+            deleteRecursively(dir);
+        }
+        System.out.printf(">>> Factor daemon ready in %d ms%n", System.currentTimeMillis() - t0);
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (ServerSocket server = new ServerSocket(port, 16, InetAddress.getLoopbackAddress())) {
+            byte[] token = writeToken(tokenFile);
+            stdout.println(">>> Listening on " + server.getLocalSocketAddress() + ", token in " + tokenFile);
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    byte[] presented = in.readUTF().getBytes(StandardCharsets.US_ASCII);
+                    if (!MessageDigest.isEqual(token, presented)) {
+                        // 令牌不符：不读后续参数，直接回错误
+                        PrintStream reply = new PrintStream(new FrameOutputStream(out), true, "UTF-8");
+                        reply.println("Rejected: bad or missing daemon token (read from " + tokenFile + ")");
+                        reply.flush();
+                        out.writeByte(EXIT);
+                        out.writeInt(1);
+                        out.flush();
+                        stderr.println(">>> Rejected a request with a bad token");
+                        continue;
+                    }
+                    out.writeByte(ACCEPTED);
+                    out.flush();
+                    String command = in.readUTF();
+                    String[] jobArgs = new String[in.readInt()];
+                    for (int i = 0; i < jobArgs.length; i++) jobArgs[i] = in.readUTF();
+                    socket.setSoTimeout(0);
+
+                    if (CMD_STOP.equals(command)) {
+                        out.writeByte(EXIT);
+                        out.writeInt(0);
+                        out.flush();
+                        stdout.println(">>> Stopped");
+                        return;
+                    }
+
+                    stdout.println(">>> Job: " + String.join(" ", jobArgs));
+                    long start = System.currentTimeMillis();
+                    int exit;
+                    PrintStream forward = new PrintStream(new FrameOutputStream(out), true, "UTF-8");
+                    System.setOut(forward);
+                    System.setErr(forward);
+                    try {
+                        exit = ParallelFactorDriver.run(jobArgs) != null ? 0 : 1;
+                    } catch (Throwable t) {
+                        t.printStackTrace(forward);
+                        exit = 1;
+                    } finally {
+                        forward.flush();
+                        System.setOut(stdout);
+                        System.setErr(stderr);
+                    }
+                    out.writeByte(EXIT);
+                    out.writeInt(exit);
+                    out.flush();
+                    stdout.printf(">>> Job finished (exit=%d) in %d ms%n", exit, System.currentTimeMillis() - start);
+                } catch (IOException e) {
+                    // 客户端中途断开不影响守护进程
+                    stderr.println(">>> Client error: " + e);
+                }
+            }
+        } finally {
+            tokenFile.delete();
+        }
+    }
+
+    /**
+     * 生成随机令牌 (十六进制) 并写进只有属主可读写的令牌文件；不支持 POSIX 权限的文件系统退化为 File 的属主权限
+     */
+    private static byte[] writeToken(File file) throws IOException {
+        byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : random) hex.append(String.format("%02x", b & 0xFF));
+        byte[] token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+
+        java.nio.file.Path path = file.toPath();
+        Files.deleteIfExists(path);   // 不沿用旧文件 (及其权限)
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(path, token);
+        return token;
+    }
+
+    /**
+     * 把作业输出按帧转发给客户端
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buf = new byte[CHUNK];
+        private int len;
+
+        FrameOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (len == buf.length) flush();
+            buf[len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int n) throws IOException {
+            while (n > 0) {
+                if (len == buf.length) flush();
+                int k = Math.min(n, buf.length - len);
+                System.arraycopy(b, off, buf, len, k);
+                len += k;
+                off += k;
+                n -= k;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (len == 0) return;
+            // writeUTF 上限 64KB，按原始字节分帧，客户端原样输出
+            out.writeByte(OUT);
+            out.writeInt(len);
+            out.write(buf, 0, len);
+            out.flush();
+            len = 0;
+        }
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteRecursively(c);
+        }
+        f.delete();
+    }
+
+    // ========== 客户端 ==========
+
+    private static int submit(int port, File tokenFile, String command, List<String> jobArgs) throws IOException {
+        String token;
+        try {
+            token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            System.err.println("Cannot read the daemon token " + tokenFile + " (start a daemon with 'FactorDaemon serve'"
+                    + " as this user, or pass --token-file): " + e.getMessage());
+            return 1;
+        }
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (IOException e) {
+            System.err.println("No factor daemon on port " + port + " (start one with 'FactorDaemon serve'): " + e.getMessage());
+            return 1;
+        }
+        try (Socket s = socket) {
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            out.writeUTF(token);
+            out.flush();
+            int type = in.readByte();
+            if (type == ACCEPTED) {
+                out.writeUTF(command);
+                out.writeInt(jobArgs.size());
+                for (String arg : resolvePaths(jobArgs)) out.writeUTF(arg);
+                out.flush();
+                type = in.readByte();
+            }
+
+            byte[] buf = new byte[CHUNK];
+            for (; ; type = in.readByte()) {
+                if (type == EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                int len = in.readInt();
+                if (len > buf.length) buf = new byte[len];
+                in.readFully(buf, 0, len);
+                System.out.write(buf, 0, len);
+            }
+        }
+    }
+
+    /**
+     * 守护进程的工作目录可能不同：输入 / 输出两个位置参数是相对路径时在客户端转成绝对路径
+     */
+    private static List<String> resolvePaths(List<String> args) {
+        List<String> resolved = new ArrayList<>(args.size());
+        int positional = 0;
+        for (String arg : args) {
+            boolean path = !arg.startsWith("--") && positional++ < 2
+                    && !arg.contains("://") && !new File(arg).isAbsolute();
+            resolved.add(path ? new File(arg).getAbsolutePath() : arg);
+        }
+        return resolved;
+    }
+}
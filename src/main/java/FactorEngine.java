@@ -0,0 +1,266 @@
+// [file name]: FactorEngine.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.util.Arrays;
+
+/**
+ * 带状态的逐笔因子引擎：持有每只股票的前一档口与滚动窗口状态，计算一笔 tick 的完整因子向量。
+ * 配置了 factor.select 时 (见 FactorSelection) 只输出选中的基础因子，用不到盘口聚合时跳过 DepthKernels。
+ * 非线程安全，每个线程 / Mapper 各持有一个实例。
+ */
+public class FactorEngine {
+
+    public static final String CONF_STATE_CAPACITY = "factor.state.capacity";
+    public static final String CONF_DEDUP = "factor.dedup";
+    public static final String COUNTER_UNCHANGED = "UNCHANGED_BOOK";   // 计数器组 TickLineParser.COUNTER_GROUP
+
+    // 按 (股票, 交易日) 的槽位；factor.state.capacity 是初始容量，用满时各状态数组随之翻倍
+    private final StockStateStore store;
+    private PreviousTickData[] prevStates;
+    private boolean[] hasPrev;
+    private final RollingFactors rolling;
+    // 成交流因子 (见 FlowFactors) 排在滚动因子之后
+    private final FlowFactors flow;
+    private final int flowOffset;
+    private final int width;
+
+    // 因子选择：先算到完整向量 full，再按 selected 投影到输出；null 表示全部输出，直接写调用方数组
+    private final int[] selected;
+    private final double[] full;
+    private final int tailWidth;            // 滚动 + 成交流因子个数
+    private final boolean aggregateDepth;
+    private double mid;
+
+    // 档位数与对应的特化聚合核
+    private final int depth;
+    private final int kernel;
+    private final DepthKernels.Aggregates agg = new DepthKernels.Aggregates();
+
+    // 盘口去重：每只股票上一笔的盘口字段 (bp/bv/ap/av 各档 + tBidVol/tAskVol) 和基础因子向量，
+    // 盘口完全相同时直接复用 (17-19 变化类因子置 0)，不再聚合 / 计算 / 改写前一时刻状态
+    private final boolean dedup;
+    private final int bookStride;
+    private long[] books;
+    private double[] cachedFactors;
+    private long unchanged;
+
+    public FactorEngine(Configuration conf) {
+        int capacity = conf.getInt(CONF_STATE_CAPACITY, 8192);
+        depth = conf.getInt(ColumnLayout.CONF_DEPTH, ColumnLayout.DEFAULT_DEPTH);
+        kernel = DepthKernels.kernelFor(depth);
+        store = new StockStateStore(capacity);
+        prevStates = new PreviousTickData[capacity];
+        for (int i = 0; i < capacity; i++) prevStates[i] = new PreviousTickData(depth);
+        hasPrev = new boolean[capacity];
+        rolling = RollingFactors.fromConf(conf, capacity);
+        flow = FlowFactors.fromConf(conf, capacity);
+        flowOffset = FactorSchema.BASE_FACTORS + (rolling == null ? 0 : rolling.count()) + 1;
+        tailWidth = flowOffset - 1 - FactorSchema.BASE_FACTORS + (flow == null ? 0 : flow.count());
+        selected = FactorSelection.selected(conf);
+        full = selected == null ? null : new double[FactorSchema.BASE_FACTORS + tailWidth + 1];
+        width = (selected == null ? FactorSchema.BASE_FACTORS : selected.length) + tailWidth;
+        aggregateDepth = FactorSelection.usesDepth(FactorSelection.computed(conf));
+        dedup = conf.getBoolean(CONF_DEDUP, true);
+        bookStride = 4 * depth + 2;
+        books = dedup ? new long[capacity * bookStride] : null;
+        cachedFactors = dedup ? new double[capacity * FactorSchema.BASE_FACTORS] : null;
+    }
+
+    /**
+     * 因盘口未变而复用缓存因子的笔数
+     */
+    public long unchangedTicks() {
+        return unchanged;
+    }
+
+    public static void reportUnchanged(long count, TaskInputOutputContext<?, ?, ?, ?> context) {
+        if (count > 0) context.getCounter(TickLineParser.COUNTER_GROUP, COUNTER_UNCHANGED).increment(count);
+    }
+
+    /**
+     * 输出因子个数 (f[1..width])
+     */
+    public int width() {
+        return width;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * 选中的因子是否用到多档盘口聚合 (不用时批量聚合核也无需启用)
+     */
+    public boolean aggregatesDepth() {
+        return aggregateDepth;
+    }
+
+    /**
+     * 上一次 compute 的中间价 (基础因子 3)，不受因子选择影响
+     */
+    public double mid() {
+        return mid;
+    }
+
+    /**
+     * 计算 current 的因子写入 f[1..width]，并把 current 记为该股票的前一时刻
+     * @param stockKey StockStateStore.stockKey(...) 编码的 (股票, 交易日)
+     */
+    public void compute(long stockKey, TickData current, double[] f) {
+        int slot = slotOf(stockKey);
+        double[] out = selected == null ? f : full;
+        if (!dedup || !reuse(slot, current, out)) {
+            if (aggregateDepth) DepthKernels.aggregate(kernel, depth, current, agg);
+            computeSlot(slot, current, agg, out);
+        }
+        finish(out, f);
+    }
+
+    /**
+     * 同上，盘口聚合已由外部算好 (如 BatchDepthKernel 按块批量计算)
+     */
+    public void compute(long stockKey, TickData current, DepthKernels.Aggregates aggregates, double[] f) {
+        int slot = slotOf(stockKey);
+        double[] out = selected == null ? f : full;
+        if (!dedup || !reuse(slot, current, out)) computeSlot(slot, current, aggregates, out);
+        finish(out, f);
+    }
+
+    /**
+     * 记下中间价；有因子选择时把完整向量投影到 f[1..width] (选中的基础因子 + 滚动 / 成交流因子)
+     */
+    private void finish(double[] out, double[] f) {
+        mid = out[3];
+        if (selected == null) return;
+        for (int k = 0; k < selected.length; k++) f[k + 1] = out[selected[k]];
+        System.arraycopy(out, FactorSchema.BASE_FACTORS + 1, f, selected.length + 1, tailWidth);
+    }
+
+    private int slotOf(long stockKey) {
+        int slot = store.slotOf(stockKey);
+        if (store.created()) {
+            if (slot >= hasPrev.length) grow();
+            hasPrev[slot] = false;
+            if (rolling != null) rolling.reset(slot);
+            if (flow != null) flow.reset(slot);
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = store.capacity();
+        int old = prevStates.length;
+        prevStates = Arrays.copyOf(prevStates, capacity);
+        for (int i = old; i < capacity; i++) prevStates[i] = new PreviousTickData(depth);
+        hasPrev = Arrays.copyOf(hasPrev, capacity);
+        if (rolling != null) rolling.grow(capacity);
+        if (flow != null) flow.grow(capacity);
+        if (dedup) {
+            books = Arrays.copyOf(books, capacity * bookStride);
+            cachedFactors = Arrays.copyOf(cachedFactors, capacity * FactorSchema.BASE_FACTORS);
+        }
+    }
+
+    /**
+     * 盘口与该股票上一笔完全相同：复用缓存的基础因子，17-19 (相对前一时刻的变化) 为 0，
+     * 滚动窗口和成交流 (成交与盘口无关) 照常更新
+     */
+    private boolean reuse(int slot, TickData current, double[] f) {
+        if (!hasPrev[slot]) return false;
+        int p = slot * bookStride;
+        final long[] book = books;
+        if (book[p] != current.tBidVol || book[p + 1] != current.tAskVol) return false;
+        p += 2;
+        for (int i = 1; i <= depth; i++, p += 4) {
+            if (book[p] != current.bp[i] || book[p + 1] != current.bv[i]
+                    || book[p + 2] != current.ap[i] || book[p + 3] != current.av[i]) return false;
+        }
+
+        System.arraycopy(cachedFactors, slot * FactorSchema.BASE_FACTORS, f, 1, FactorSchema.BASE_FACTORS);
+        f[17] = 0.0;
+        f[18] = 0.0;
+        f[19] = 0.0;
+        if (rolling != null) {
+            rolling.update(slot, f[3], f[5], f, FactorSchema.BASE_FACTORS + 1);
+        }
+        if (flow != null) flow.update(slot, current, f[3], f, flowOffset);
+        unchanged++;
+        return true;
+    }
+
+    private void computeSlot(int slot, TickData current, DepthKernels.Aggregates aggregates, double[] f) {
+        PreviousTickData prev = hasPrev[slot] ? prevStates[slot] : null;
+        calculateFactorsInPlace(f, current, prev, aggregates);
+        if (rolling != null) {
+            rolling.update(slot, f[3], f[5], f, FactorSchema.BASE_FACTORS + 1);
+        }
+        if (flow != null) flow.update(slot, current, f[3], f, flowOffset);
+
+        prevStates[slot].update(current);
+        hasPrev[slot] = true;
+
+        if (dedup) {
+            int p = slot * bookStride;
+            books[p] = current.tBidVol;
+            books[p + 1] = current.tAskVol;
+            p += 2;
+            for (int i = 1; i <= depth; i++, p += 4) {
+                books[p] = current.bp[i];
+                books[p + 1] = current.bv[i];
+                books[p + 2] = current.ap[i];
+                books[p + 3] = current.av[i];
+            }
+            System.arraycopy(f, 1, cachedFactors, slot * FactorSchema.BASE_FACTORS, FactorSchema.BASE_FACTORS);
+        }
+    }
+
+    private void calculateFactorsInPlace(double[] f, TickData current, PreviousTickData prev, DepthKernels.Aggregates agg) {
+        double bidDepth = agg.bidDepth;
+        double askDepth = agg.askDepth;
+
+        f[1] = calculateFactor1(current);
+        f[2] = calculateFactor2(current);
+        f[3] = calculateFactor3(current);
+        f[4] = calculateFactor4(current);
+        f[5] = (bidDepth - askDepth) / (bidDepth + askDepth + 1e-7);
+        f[6] = bidDepth;
+        f[7] = askDepth;
+        f[8] = calculateFactor8(f[6], f[7]);
+        f[9] = calculateFactor9(f[6], f[7]);
+        f[10] = calculateFactor10(current);
+
+        double vwapBid = agg.bidNotional / (bidDepth + 1e-7);
+        double vwapAsk = agg.askNotional / (askDepth + 1e-7);
+        f[11] = vwapBid;
+        f[12] = vwapAsk;
+        f[13] = (agg.bidNotional + agg.askNotional) / (bidDepth + askDepth + 1e-7);
+        f[14] = vwapAsk - vwapBid;
+
+        f[15] = (bidDepth - askDepth) / (double) depth;
+        f[16] = (agg.bidWeighted - agg.askWeighted) / (agg.bidWeighted + agg.askWeighted + 1e-7);
+
+        f[17] = calculateFactor17(current, prev);
+        f[18] = calculateFactor18(current, prev);
+        f[19] = calculateFactor19(f[9], prev);
+        f[20] = (current.ap1 - current.bp1) / (bidDepth + askDepth + 1e-7);
+    }
+
+    // === 辅助计算逻辑 (多档求和统一由 DepthKernels 完成) ===
+    private double calculateFactor1(TickData data) { return data.ap1 - data.bp1; }
+    private double calculateFactor2(TickData data) { double mid = (data.ap1 + data.bp1) / 2.0; return (data.ap1 - data.bp1) / (mid + 1e-7); }
+    private double calculateFactor3(TickData data) { return (data.ap1 + data.bp1) / 2.0; }
+    private double calculateFactor4(TickData data) { return (data.bv1 - data.av1) / (data.bv1 + data.av1 + 1e-7); }
+    private double calculateFactor8(double b, double a) { return b - a; }
+    private double calculateFactor9(double b, double a) { return b / (a + 1e-7); }
+    private double calculateFactor10(TickData data) { return (data.tBidVol - data.tAskVol) / (data.tBidVol + data.tAskVol + 1e-7); }
+    private double calculateFactor17(TickData c, PreviousTickData p) { return (p==null)?0.0 : c.ap1 - p.getAp1(); }
+    private double calculateFactor18(TickData c, PreviousTickData p) { if(p==null)return 0.0; double cm=(c.ap1+c.bp1)/2.0; double pm=(p.getAp1()+p.getBp1())/2.0; return cm-pm; }
+    private double calculateFactor19(double currentRatio, PreviousTickData p) {
+        if(p==null)return 0.0;
+        double pb=0, pa=0;
+        for(int i=0;i<depth;i++){ pb+=p.bv[i]; pa+=p.av[i]; }
+        double pr=pb/(pa+1e-7);
+        return currentRatio-pr;
+    }
+}
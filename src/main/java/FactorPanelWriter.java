@@ -0,0 +1,247 @@
+// [file name]: FactorPanelWriter.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 个股因子面板输出（股票 × 时间 × 因子），与均值计算同一遍扫描完成。
+ *
+ * 目录布局：panel/&lt;tradingDay&gt;/b&lt;bucket&gt;/&lt;taskId&gt;.col (+ .dict)，每个 (任务, 交易日, 桶) 一个文件，
+ * 其中 bucket = bucketOf(stockCode, buckets)，查单只股票时只需读对应桶里各任务的 .dict。
+ * 每个 (交易日, 桶) 攒满 factor.panel.chunk.rows 行就作为一个列块追加到同一个 .col 文件 (文件保持打开，close 时关闭)。
+ *
+ * .col 二进制 (大端)：
+ * <pre>
+ *   文件头   int magic 'FPNL', int version, byte 精度(4=float, 8=double), int factors
+ *   列块 ... int rows, int stocks
+ *            int[stocks]      块内各股票在本文件字典里的编号
+ *            int[stocks + 1]  各股票行区间 [off[k], off[k+1])，块内按股票分组、组内保持时间顺序
+ *            int[rows]        tradeTime (HHMMSS)
+ *            factors 列 × rows 值 (float 或 double)
+ * </pre>
+ * .dict 文本 (close 时写一次)：每行 "stockId,stockCode,rowCount,块偏移:块内首行:行数;..."，
+ * 即本文件的股票字典 + 按股票的索引：块偏移是该列块在 .col 里的字节位置，按时间顺序排列。
+ */
+public class FactorPanelWriter {
+
+    public static final String CONF_ENABLED = "factor.panel.enabled";
+    public static final String CONF_PRECISION = "factor.panel.precision";   // float | double
+    public static final String CONF_BUCKETS = "factor.panel.buckets";
+    public static final String CONF_CHUNK_ROWS = "factor.panel.chunk.rows";
+
+    public static final String PANEL_DIR = "panel";
+    public static final int MAGIC = 0x46504E4C; // "FPNL"
+    public static final int VERSION = 2;
+
+    private final FileSystem fs;
+    private final Path root;
+    private final String filePrefix;
+    private final boolean singlePrecision;
+    private final int buckets;
+    private final int chunkRows;
+    private final int factorCount;
+
+    private final Map<String, Chunk> chunks = new HashMap<>();
+
+    public FactorPanelWriter(Configuration conf, Path root, String filePrefix, int factorCount) throws IOException {
+        this.fs = root.getFileSystem(conf);
+        this.root = root;
+        this.filePrefix = filePrefix;
+        this.singlePrecision = !"double".equalsIgnoreCase(conf.get(CONF_PRECISION, "float"));
+        this.buckets = Math.max(1, conf.getInt(CONF_BUCKETS, 16));
+        this.chunkRows = Math.max(1024, conf.getInt(CONF_CHUNK_ROWS, 8192));
+        this.factorCount = factorCount;
+    }
+
+    public static int bucketOf(String stockCode, int buckets) {
+        return (stockCode.hashCode() & Integer.MAX_VALUE) % buckets;
+    }
+
+    /**
+     * 追加一行：factors 下标 1..factorCount 为因子值
+     */
+    public void append(String tradingDay, String stockCode, int tradeTime, double[] factors) throws IOException {
+        int bucket = bucketOf(stockCode, buckets);
+        String chunkKey = tradingDay + "/b" + bucket;
+        Chunk chunk = chunks.get(chunkKey);
+        if (chunk == null) {
+            chunk = new Chunk(chunkKey);
+            chunks.put(chunkKey, chunk);
+        }
+        chunk.add(stockCode, tradeTime, factors);
+        if (chunk.rows == chunkRows) {
+            flush(chunk);
+        }
+    }
+
+    public void close() throws IOException {
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.rows > 0) flush(chunk);
+            chunk.file.close();
+        }
+        chunks.clear();
+    }
+
+    private void flush(Chunk chunk) throws IOException {
+        int stocks = chunk.codes.size();
+        int rows = chunk.rows;
+
+        // 计数排序：按股票分组，组内保持到达(时间)顺序
+        int[] offsets = new int[stocks + 1];
+        for (int r = 0; r < rows; r++) offsets[chunk.stockIds[r] + 1]++;
+        for (int k = 0; k < stocks; k++) offsets[k + 1] += offsets[k];
+        int[] order = new int[rows];
+        int[] cursor = offsets.clone();
+        for (int r = 0; r < rows; r++) order[cursor[chunk.stockIds[r]]++] = r;
+
+        PanelFile file = chunk.file;
+        DataOutputStream out = file.out();
+        long chunkOffset = file.position();
+        int[] fileIds = new int[stocks];
+        for (int k = 0; k < stocks; k++) {
+            fileIds[k] = file.idOf(chunk.codes.get(k));
+            file.index(fileIds[k], chunkOffset, offsets[k], offsets[k + 1] - offsets[k]);
+        }
+        out.writeInt(rows);
+        out.writeInt(stocks);
+        for (int id : fileIds) out.writeInt(id);
+        for (int off : offsets) out.writeInt(off);
+        for (int r = 0; r < rows; r++) out.writeInt(chunk.times[order[r]]);
+        for (int f = 0; f < factorCount; f++) {
+            if (singlePrecision) {
+                float[] col = chunk.floatCols[f];
+                for (int r = 0; r < rows; r++) out.writeFloat(col[order[r]]);
+            } else {
+                double[] col = chunk.doubleCols[f];
+                for (int r = 0; r < rows; r++) out.writeDouble(col[order[r]]);
+            }
+        }
+
+        chunk.clear();
+    }
+
+    /**
+     * 一个 (任务, 交易日, 桶) 的 .col 文件：首个列块写出时创建，列块依次追加；
+     * 同时累积本文件的股票字典和按股票的列块索引，close 时写 .dict
+     */
+    private final class PanelFile {
+        final Path base;
+        private FSDataOutputStream os;
+        private DataOutputStream out;
+        final List<String> codes = new ArrayList<>();
+        final Map<String, Integer> codeIds = new HashMap<>();
+        final List<StringBuilder> entries = new ArrayList<>();
+        final List<Integer> rowCounts = new ArrayList<>();
+
+        PanelFile(Path base) {
+            this.base = base;
+        }
+
+        DataOutputStream out() throws IOException {
+            if (out == null) {
+                os = fs.create(base.suffix(".col"), true);
+                out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(singlePrecision ? 4 : 8);
+                out.writeInt(factorCount);
+            }
+            return out;
+        }
+
+        // 下一个字节在 .col 里的位置 (含缓冲中尚未落盘的部分)
+        long position() throws IOException {
+            out.flush();
+            return os.getPos();
+        }
+
+        int idOf(String code) {
+            Integer id = codeIds.get(code);
+            if (id == null) {
+                id = codes.size();
+                codes.add(code);
+                codeIds.put(code, id);
+                entries.add(new StringBuilder());
+                rowCounts.add(0);
+            }
+            return id;
+        }
+
+        void index(int id, long chunkOffset, int firstRow, int rows) {
+            StringBuilder sb = entries.get(id);
+            if (sb.length() > 0) sb.append(';');
+            sb.append(chunkOffset).append(':').append(firstRow).append(':').append(rows);
+            rowCounts.set(id, rowCounts.get(id) + rows);
+        }
+
+        void close() throws IOException {
+            if (out == null) return;
+            out.close();
+            out = null;
+            try (FSDataOutputStream dict = fs.create(base.suffix(".dict"), true);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(dict, StandardCharsets.UTF_8))) {
+                for (int k = 0; k < codes.size(); k++) {
+                    writer.write(k + "," + codes.get(k) + "," + rowCounts.get(k) + "," + entries.get(k));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个 (交易日, 桶) 的内存列缓冲
+     */
+    private final class Chunk {
+        final String key;
+        final PanelFile file;
+        final List<String> codes = new ArrayList<>();
+        final Map<String, Integer> codeIds = new HashMap<>();
+        final int[] stockIds = new int[chunkRows];
+        final int[] times = new int[chunkRows];
+        final float[][] floatCols;
+        final double[][] doubleCols;
+        int rows = 0;
+
+        Chunk(String key) {
+            this.key = key;
+            this.file = new PanelFile(new Path(root, key + "/" + filePrefix));
+            this.floatCols = singlePrecision ? new float[factorCount][chunkRows] : null;
+            this.doubleCols = singlePrecision ? null : new double[factorCount][chunkRows];
+        }
+
+        void add(String stockCode, int tradeTime, double[] factors) {
+            Integer id = codeIds.get(stockCode);
+            if (id == null) {
+                id = codes.size();
+                codes.add(stockCode);
+                codeIds.put(stockCode, id);
+            }
+            stockIds[rows] = id;
+            times[rows] = tradeTime;
+            if (singlePrecision) {
+                for (int f = 0; f < factorCount; f++) floatCols[f][rows] = (float) factors[f + 1];
+            } else {
+                for (int f = 0; f < factorCount; f++) doubleCols[f][rows] = factors[f + 1];
+            }
+            rows++;
+        }
+
+        void clear() {
+            rows = 0;
+            codes.clear();
+            codeIds.clear();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+// [file name]: FactorSchema.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 输出列定义：alpha_1..alpha_20 (或 factor.select 选中的部分，见 FactorSelection) 之后依次追加启用的扩展因子列。
+ * Mapper / Reducer / Driver 都从这里取列数和表头，保证三者一致。
+ */
+public class FactorSchema {
+
+    public static final int BASE_FACTORS = 20;
+
+    public static List<String> columnNames(Configuration conf) {
+        List<String> names = new ArrayList<>();
+        int[] selected = FactorSelection.selected(conf);
+        if (selected == null) {
+            for (int i = 1; i <= BASE_FACTORS; i++) names.add("alpha_" + i);
+        } else {
+            for (int i : selected) names.add("alpha_" + i);
+        }
+        names.addAll(RollingFactors.columnNames(conf));
+        names.addAll(FlowFactors.columnNames(conf));
+        return names;
+    }
+
+    public static int width(Configuration conf) {
+        return columnNames(conf).size();
+    }
+
+    /**
+     * 抽样模式 (见 StockSampler) 下每个因子列后紧跟一列 "&lt;name&gt;_se"
+     */
+    public static String header(Configuration conf) {
+        boolean stdErr = StockSampler.enabled(conf);
+        StringBuilder sb = new StringBuilder("tradeTime");
+        for (String name : columnNames(conf)) {
+            sb.append(',').append(name);
+            if (stdErr) sb.append(',').append(name).append("_se");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,121 @@
+// [file name]: FactorSelection.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * 基础因子选择 (列裁剪)：factor.select=1-3,10,20 只输出选中的 alpha 列，
+ * 并由选中的因子推导需要解析的 CSV 列，解析器扫到需要的最后一列即停 (见 ColumnLayout / TickLineParser)。
+ *
+ * 各因子依赖的列：
+ * <pre>
+ *   1 2 3 17 18        ap1 / bp1
+ *   4                  bv1 / av1
+ *   10                 tBidVol / tAskVol
+ *   5-9 15 16 19       各档 bv / av
+ *   11-14              各档 bp / bv / ap / av
+ *   20                 ap1 / bp1 + 各档 bv / av
+ * </pre>
+ * 滚动因子依赖中间价 (3) 和多档不平衡 (5)，成交流因子和 IC 阶段依赖中间价，启用时这些因子在内部照常计算。
+ * 未配置时选中全部 20 个因子、解析全部列，与原来完全一致。
+ */
+public class FactorSelection {
+
+    public static final String CONF_SELECT = "factor.select";
+
+    // 需要解析的盘口 / 成交列 (位掩码，与 FlowFactors.COL_* 共用一个掩码)
+    public static final int COL_LAST = 8;
+    public static final int COL_TRADE_VOL = 16;     // tBidVol / tAskVol
+    public static final int COL_L1_PRICE = 32;      // bp1 / ap1
+    public static final int COL_L1_VOL = 64;        // bv1 / av1
+    public static final int COL_DEPTH_PRICE = 128;  // 各档 bp / ap
+    public static final int COL_DEPTH_VOL = 256;    // 各档 bv / av
+    public static final int ALL_COLUMNS = COL_LAST | COL_TRADE_VOL | COL_L1_PRICE | COL_L1_VOL | COL_DEPTH_PRICE | COL_DEPTH_VOL;
+
+    // 因子 1..20 依赖的列
+    private static final int[] FACTOR_COLUMNS = {0,
+            COL_L1_PRICE, COL_L1_PRICE, COL_L1_PRICE, COL_L1_VOL, COL_DEPTH_VOL,
+            COL_DEPTH_VOL, COL_DEPTH_VOL, COL_DEPTH_VOL, COL_DEPTH_VOL, COL_TRADE_VOL,
+            COL_DEPTH_PRICE | COL_DEPTH_VOL, COL_DEPTH_PRICE | COL_DEPTH_VOL,
+            COL_DEPTH_PRICE | COL_DEPTH_VOL, COL_DEPTH_PRICE | COL_DEPTH_VOL,
+            COL_DEPTH_VOL, COL_DEPTH_VOL, COL_L1_PRICE, COL_L1_PRICE, COL_DEPTH_VOL,
+            COL_L1_PRICE | COL_DEPTH_VOL};
+
+    // 依赖盘口聚合 (DepthKernels) 的因子
+    private static final boolean[] USES_DEPTH = {false,
+            false, false, false, false, true, true, true, true, true, false,
+            true, true, true, true, true, true, false, false, true, true};
+
+    /**
+     * 选中的基础因子编号 (升序去重)；未配置返回 null (全部)
+     */
+    public static int[] selected(Configuration conf) {
+        String[] specs = conf.getTrimmedStrings(CONF_SELECT);
+        if (specs.length == 0) return null;
+        boolean[] chosen = new boolean[FactorSchema.BASE_FACTORS + 1];
+        for (String spec : specs) {
+            int dash = spec.indexOf('-', 1);
+            int from, to;
+            try {
+                from = Integer.parseInt((dash < 0 ? spec : spec.substring(0, dash)).trim());
+                to = dash < 0 ? from : Integer.parseInt(spec.substring(dash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid factor selection: '" + spec + "'");
+            }
+            if (from < 1 || to > FactorSchema.BASE_FACTORS || from > to) {
+                throw new IllegalArgumentException("Factor selection must be within 1-" + FactorSchema.BASE_FACTORS + ": '" + spec + "'");
+            }
+            for (int i = from; i <= to; i++) chosen[i] = true;
+        }
+        int[] result = new int[FactorSchema.BASE_FACTORS];
+        int n = 0;
+        for (int i = 1; i <= FactorSchema.BASE_FACTORS; i++) {
+            if (chosen[i]) result[n++] = i;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 内部需要计算的基础因子 (下标 1..20)：选中的 + 滚动 / 成交流 / IC 阶段依赖的
+     */
+    public static boolean[] computed(Configuration conf) {
+        boolean[] needed = new boolean[FactorSchema.BASE_FACTORS + 1];
+        int[] selected = selected(conf);
+        if (selected == null) {
+            Arrays.fill(needed, 1, needed.length, true);
+            return needed;
+        }
+        for (int i : selected) needed[i] = true;
+        if (!RollingFactors.columnNames(conf).isEmpty()) {
+            needed[3] = true;
+            needed[5] = true;
+        }
+        if (FlowFactors.requiredColumns(conf) != 0 || conf.get(ForwardReturnMapper.CONF_HORIZONS) != null) {
+            needed[3] = true;
+        }
+        return needed;
+    }
+
+    /**
+     * 需要解析的盘口 / 成交列 (COL_* 位掩码)；未配置选择时为全部
+     */
+    public static int requiredColumns(Configuration conf) {
+        if (selected(conf) == null) return ALL_COLUMNS;
+        boolean[] needed = computed(conf);
+        int mask = 0;
+        for (int i = 1; i <= FactorSchema.BASE_FACTORS; i++) {
+            if (needed[i]) mask |= FACTOR_COLUMNS[i];
+        }
+        return mask;
+    }
+
+    /**
+     * 是否有需要计算的因子依赖盘口聚合；没有时 FactorEngine 跳过 DepthKernels
+     */
+    public static boolean usesDepth(boolean[] computed) {
+        for (int i = 1; i < computed.length; i++) {
+            if (computed[i] && USES_DEPTH[i]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+// [file name]: FactorSets.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.Map;
+
+/**
+ * 多因子集共享扫描：一次作业同时计算多套因子配置 (档位数 / 交易时段 / 滚动窗口各不相同)，
+ * 每行只切列解析一次，各因子集在同一个 TickData 上各自计算。
+ *
+ * 配置：factor.sets=a,b 列出因子集 ID；factor.set.&lt;id&gt;.&lt;key&gt; 覆盖该集的 factor.&lt;key&gt;，例如
+ * <pre>
+ *   factor.set.deep.depth=10
+ *   factor.set.deep.rolling=ema:50
+ *   factor.set.am.session.spec=* session 093000 113000
+ * </pre>
+ * 未覆盖的配置沿用 Job 级设置。Shuffle key 形如 "&lt;id&gt;#tradingDay_tradeTime"，
+ * Driver 按 ID 分别落到 &lt;output&gt;/&lt;id&gt;/MMDD.csv。
+ */
+public class FactorSets {
+
+    public static final String CONF_SETS = "factor.sets";
+    public static final String CONF_PREFIX = "factor.set.";
+    public static final char TAG_SEPARATOR = '#';
+
+    public final String[] ids;
+    public final Configuration[] confs;
+    public final int[] widths;
+    private final byte[][] tags;     // "<id>#" 的字节
+    private final int maxWidth;
+    private final int maxDepth;
+
+    private FactorSets(Configuration conf, String[] ids) {
+        this.ids = ids;
+        this.confs = new Configuration[ids.length];
+        this.widths = new int[ids.length];
+        this.tags = new byte[ids.length][];
+        int w = 0;
+        int d = 0;
+        for (int i = 0; i < ids.length; i++) {
+            confs[i] = confFor(conf, ids[i]);
+            widths[i] = FactorSchema.width(confs[i]);
+            tags[i] = (ids[i] + TAG_SEPARATOR).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            w = Math.max(w, widths[i]);
+            d = Math.max(d, confs[i].getInt(ColumnLayout.CONF_DEPTH, ColumnLayout.DEFAULT_DEPTH));
+        }
+        this.maxWidth = w;
+        this.maxDepth = d;
+    }
+
+    /**
+     * 未配置 factor.sets 时返回 null (单因子集的常规作业)
+     */
+    public static FactorSets fromConf(Configuration conf) {
+        String[] ids = conf.getTrimmedStrings(CONF_SETS);
+        if (ids.length == 0) return null;
+        for (String id : ids) {
+            if (id.isEmpty() || !id.matches("[A-Za-z0-9-]+")) {
+                throw new IllegalArgumentException("Factor set id must be [A-Za-z0-9-]+: '" + id + "'");
+            }
+        }
+        return new FactorSets(conf, ids);
+    }
+
+    public static boolean enabled(Configuration conf) {
+        return conf.getTrimmedStrings(CONF_SETS).length > 0;
+    }
+
+    /**
+     * 因子集 id 的有效配置：Job 配置 + factor.set.&lt;id&gt;.* 覆盖
+     */
+    public static Configuration confFor(Configuration conf, String id) {
+        Configuration setConf = new Configuration(conf);
+        String prefix = CONF_PREFIX + id + ".";
+        for (Map.Entry<String, String> e : conf.getPropsWithPrefix(prefix).entrySet()) {
+            setConf.set("factor." + e.getKey(), e.getValue());
+        }
+        return setConf;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int maxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * 共享解析按最深的因子集切列，浅的因子集只读前几档
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public byte[] tag(int set) {
+        return tags[set];
+    }
+
+    /**
+     * shuffle key 的因子集下标 (没有标签或 ID 未知返回 -1)
+     */
+    public int indexOfKey(byte[] key, int length) {
+        int sep = -1;
+        for (int i = 0; i < length; i++) {
+            if (key[i] == TAG_SEPARATOR) {
+                sep = i;
+                break;
+            }
+        }
+        if (sep < 0) return -1;
+        for (int s = 0; s < tags.length; s++) {
+            byte[] t = tags[s];
+            if (t.length != sep + 1) continue;
+            boolean match = true;
+            for (int i = 0; i < sep && match; i++) match = t[i] == key[i];
+            if (match) return s;
+        }
+        return -1;
+    }
+
+    /**
+     * 该 key 的因子个数：常规作业 (sets 为 null) 或未知标签时返回 defaultWidth
+     */
+    public static int widthOfKey(FactorSets sets, byte[] key, int length, int defaultWidth) {
+        if (sets == null) return defaultWidth;
+        int set = sets.indexOfKey(key, length);
+        return set < 0 ? defaultWidth : sets.widths[set];
+    }
+}
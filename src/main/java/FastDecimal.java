@@ -0,0 +1,144 @@
+// [file name]: FastDecimal.java
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+
+/**
+ * 热路径上的数字编解码，直接读写字节数组，不创建 String。
+ * 结果与 DecimalFormat("0.000000") / Double.parseDouble 逐字节一致：
+ * 快路径只在能证明结果精确时使用，其余情况 (很大的数、接近进位边界、NaN 等) 回退到 JDK 实现。
+ */
+public final class FastDecimal {
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10.0;
+    }
+
+    // formatFixed6 单个值的最长输出 (Double.MAX_VALUE 有 309 位整数)
+    public static final int MAX_FIXED6_LENGTH = 320;
+
+    private static final double FAST_FORMAT_LIMIT = (double) (1L << 50);
+    private static final long FAST_PARSE_LIMIT = 1L << 53;
+
+    // 回退路径用，DecimalFormat 非线程安全
+    private static final ThreadLocal<DecimalFormat> FIXED6 = ThreadLocal.withInitial(() -> new DecimalFormat("0.000000"));
+
+    private FastDecimal() {
+    }
+
+    /**
+     * 按 "0.000000" (HALF_EVEN) 格式把 v 写到 dst[pos..]，返回写完后的位置。dst 需留 MAX_FIXED6_LENGTH 字节余量。
+     */
+    public static int formatFixed6(double v, byte[] dst, int pos) {
+        double scaled = v * 1e6;
+        if (scaled > -FAST_FORMAT_LIMIT && scaled < FAST_FORMAT_LIMIT) {
+            double floor = Math.floor(scaled);
+            double frac = scaled - floor;
+            // 乘法误差不超过 1ulp，离 .5 进位边界足够远时舍入方向确定
+            if (Math.abs(frac - 0.5) > 4 * Math.ulp(scaled)) {
+                long r = (long) floor + (frac > 0.5 ? 1 : 0);
+                // 负数舍入到 0 时 DecimalFormat 输出 "-0.000000"，交给回退路径
+                if (r != 0 || v > 0 || (v == 0 && 1 / v > 0)) {
+                    return writeFixed6(r, dst, pos);
+                }
+            }
+        }
+        byte[] s = FIXED6.get().format(v).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(s, 0, dst, pos, s.length);
+        return pos + s.length;
+    }
+
+    private static int writeFixed6(long r, byte[] dst, int pos) {
+        if (r < 0) {
+            dst[pos++] = '-';
+            r = -r;
+        }
+        long intPart = r / 1000000;
+        int fracPart = (int) (r - intPart * 1000000);
+        pos = writeLong(intPart, dst, pos);
+        dst[pos++] = '.';
+        for (int div = 100000; div > 0; div /= 10) {
+            dst[pos++] = (byte) ('0' + fracPart / div % 10);
+        }
+        return pos;
+    }
+
+    /**
+     * 整数写到 dst[pos..]，返回写完后的位置
+     */
+    public static int writeLong(long v, byte[] dst, int pos) {
+        if (v < 0) {
+            dst[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            dst[pos++] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = dst[i];
+            dst[i] = dst[j];
+            dst[j] = t;
+        }
+        return pos;
+    }
+
+    /**
+     * 解析 b[start, end) 为 double，等价于 Double.parseDouble。
+     * 形如 [-]ddd[.ddd] 且有效数字不超过 2^53、小数位不超过 22 时直接一次除法得到正确舍入的结果。
+     */
+    public static double parseDouble(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int fracDigits = 0;
+        boolean digits = false;
+        boolean dot = false;
+        for (; i < end; i++) {
+            int c = b[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= FAST_PARSE_LIMIT / 10) return slowParse(b, start, end);
+                mantissa = mantissa * 10 + (c - '0');
+                digits = true;
+                if (dot) fracDigits++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return slowParse(b, start, end);
+            }
+        }
+        if (!digits || fracDigits >= POW10.length) return slowParse(b, start, end);
+        double v = fracDigits == 0 ? (double) mantissa : mantissa / POW10[fracDigits];
+        return negative ? -v : v;
+    }
+
+    /**
+     * 解析 b[start, end) 为 long，等价于 Long.parseLong
+     */
+    public static long parseLong(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && b[i] == '-') {
+            negative = true;
+            i++;
+        }
+        if (i == end || end - i > 18) return Long.parseLong(new String(b, start, end - start, StandardCharsets.US_ASCII));
+        long v = 0;
+        for (; i < end; i++) {
+            int c = b[i];
+            if (c < '0' || c > '9') return Long.parseLong(new String(b, start, end - start, StandardCharsets.US_ASCII));
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v : v;
+    }
+
+    private static double slowParse(byte[] b, int start, int end) {
+        return Double.parseDouble(new String(b, start, end - start, StandardCharsets.US_ASCII));
+    }
+}
@@ -12,45 +12,26 @@ public class FixedTimeParser {
     public static TimeInfo parseTradeTime(long tradeTime) {
         TimeInfo info = new TimeInfo();
 
-        // 将时间转换为6位字符串（前面补零）
-        String timeStr = String.format("%06d", tradeTime);
-
-        if (timeStr.length() != 6) {
+        // 直接按位取 HHMMSS，不再格式化成字符串
+        info.totalSeconds = SessionCalendar.secondsOfDay(tradeTime);
+        if (info.totalSeconds < 0) {
             throw new IllegalArgumentException("Invalid time format, expected 6 digits: " + tradeTime);
         }
-
-        // 解析HHMMSS
-        info.hour = Integer.parseInt(timeStr.substring(0, 2));
-        info.minute = Integer.parseInt(timeStr.substring(2, 4));
-        info.second = Integer.parseInt(timeStr.substring(4, 6));
-        info.totalSeconds = info.hour * 3600 + info.minute * 60 + info.second;
+        info.hour = info.totalSeconds / 3600;
+        info.minute = info.totalSeconds / 60 % 60;
+        info.second = info.totalSeconds % 60;
 
         return info;
     }
 
+    private static final SessionCalendar DEFAULT_CALENDAR = SessionCalendar.defaultCalendar();
+    private static final byte[] DEFAULT_TABLE = DEFAULT_CALENDAR.tableFor(0, 0);
+
     /**
-     * 判断是否为交易时间（9:30:00 - 15:00:00）
+     * 判断是否为交易时间（默认交易时段，见 SessionCalendar.DEFAULT_SPEC）
      */
     public static boolean isTradingTime(long tradeTime) {
-        try {
-            TimeInfo info = parseTradeTime(tradeTime);
-
-            // 上午交易时段：9:30:00 - 11:30:00
-            int morningStart = 9 * 3600 + 30 * 60;   // 9:30:00
-            int morningEnd = 11 * 3600 + 30 * 60;    // 11:30:00
-
-            // 下午交易时段：13:00:00 - 15:00:00
-            int afternoonStart = 13 * 3600;          // 13:00:00
-            int afternoonEnd = 15 * 3600;            // 15:00:00
-
-            boolean inMorning = info.totalSeconds >= morningStart && info.totalSeconds <= morningEnd;
-            boolean inAfternoon = info.totalSeconds >= afternoonStart && info.totalSeconds <= afternoonEnd;
-
-            return inMorning || inAfternoon;
-        } catch (Exception e) {
-            System.err.println("Error parsing time: " + tradeTime + " - " + e.getMessage());
-            return false;
-        }
+        return DEFAULT_CALENDAR.accepts(DEFAULT_TABLE, SessionCalendar.secondsOfDay(tradeTime));
     }
 
     /**
@@ -0,0 +1,207 @@
+// [file name]: FlowFactors.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 成交流因子：由累计成交笔数 / 成交量 / 成交额 (cumCnt / cumVol / turnover) 与该股票上一笔的差分得到，
+ * 上一笔的累计值按 StockStateStore 槽位平铺在原始类型数组里，每 tick O(1)。
+ *
+ * 配置 factor.flow，逗号分隔：
+ * <pre>
+ *   vol       区间成交量           Δ cumVol
+ *   vwap      区间成交均价         Δ turnover · scale / Δ cumVol，区间无成交时取最新价 last
+ *   count     区间成交笔数         Δ cumCnt
+ *   signed    带方向的区间成交量   最新价高于上一笔中间价记为主动买 (+)，低于记为主动卖 (-)，
+ *                                  等于时按与上一笔最新价比较 (tick rule)，仍相等沿用上一次方向
+ *   turnover  成交额速率           Δ turnover · scale / 距上一笔的秒数 (同一秒按 1 秒计)
+ * </pre>
+ * 单位：价格类按 last 列的整数价格刻度 (如 134890 表示 13.4890 元)，成交量按 cumVol 的单位 (股)。
+ * 成交额按原值解析 (保留小数)，乘 factor.flow.turnover.scale 换算成 "last 刻度的价格 × 股"：
+ * 默认 1，即成交额与 last 同一刻度 (Δturnover / Δvol 直接就是 last 刻度的均价)；
+ * 成交额以元计、last 以 1/10000 元计时设为 10000。这样 vwap 有成交和无成交 (取 last) 两种情况单位一致，
+ * flow_turnover_rate 的单位为 "last 刻度的价格 × 股 / 秒"。
+ * 每只股票当天第一笔 (没有上一笔) 以及累计值回退时差分记为 0。
+ * 解析器只在启用了对应因子时才读取额外的列 (见 requiredColumns / ColumnLayout)。
+ */
+public class FlowFactors {
+
+    public static final String CONF_SPECS = "factor.flow";
+    public static final String CONF_TURNOVER_SCALE = "factor.flow.turnover.scale";
+
+    // 需要的额外列 (位掩码)
+    public static final int COL_CUM_CNT = 1;
+    public static final int COL_CUM_VOL = 2;
+    public static final int COL_TURNOVER = 4;
+
+    private static final int VOL = 0, VWAP = 1, COUNT = 2, SIGNED = 3, TURNOVER = 4;
+    private static final String[] TYPE_NAMES = {"vol", "vwap", "count", "signed", "turnover"};
+    private static final String[] COLUMN_NAMES = {"flow_vol", "flow_vwap", "flow_count", "flow_signed_vol", "flow_turnover_rate"};
+    private static final int[] TYPE_COLUMNS = {COL_CUM_VOL, COL_CUM_VOL | COL_TURNOVER | FactorSelection.COL_LAST,
+            COL_CUM_CNT, COL_CUM_VOL | FactorSelection.COL_LAST, COL_TURNOVER};
+
+    private final int[] types;
+    private final int count;
+    private final double turnoverScale;
+
+    private boolean[] seen;
+    private long[] prevCnt;
+    private long[] prevVol;
+    private double[] prevTurnover;
+    private long[] prevLast;
+    private double[] prevMid;
+    private int[] prevSecond;
+    private byte[] lastSign;
+
+    private FlowFactors(int[] types, double turnoverScale, int slots) {
+        this.types = types;
+        this.count = types.length;
+        this.turnoverScale = turnoverScale;
+        seen = new boolean[slots];
+        prevCnt = new long[slots];
+        prevVol = new long[slots];
+        prevTurnover = new double[slots];
+        prevLast = new long[slots];
+        prevMid = new double[slots];
+        prevSecond = new int[slots];
+        lastSign = new byte[slots];
+    }
+
+    /**
+     * 按配置创建；未配置时返回 null
+     */
+    public static FlowFactors fromConf(Configuration conf, int slots) {
+        int[] types = parseSpecs(conf.get(CONF_SPECS, ""));
+        return types.length == 0 ? null : new FlowFactors(types, turnoverScale(conf), slots);
+    }
+
+    /**
+     * 成交额换算到 "last 刻度的价格 × 股" 的倍数，默认 1
+     */
+    public static double turnoverScale(Configuration conf) {
+        double scale = conf.getDouble(CONF_TURNOVER_SCALE, 1.0);
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException(CONF_TURNOVER_SCALE + " must be a positive number: " + conf.get(CONF_TURNOVER_SCALE));
+        }
+        return scale;
+    }
+
+    public static List<String> columnNames(Configuration conf) {
+        List<String> names = new ArrayList<>();
+        for (int t : parseSpecs(conf.get(CONF_SPECS, ""))) names.add(COLUMN_NAMES[t]);
+        return names;
+    }
+
+    /**
+     * 启用的成交流因子需要解析的额外列 (COL_* 位掩码)，未启用为 0
+     */
+    public static int requiredColumns(Configuration conf) {
+        int mask = 0;
+        for (int t : parseSpecs(conf.get(CONF_SPECS, ""))) mask |= TYPE_COLUMNS[t];
+        return mask;
+    }
+
+    private static int[] parseSpecs(String value) {
+        List<Integer> types = new ArrayList<>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) continue;
+            int t = -1;
+            for (int i = 0; i < TYPE_NAMES.length; i++) {
+                if (TYPE_NAMES[i].equals(item)) t = i;
+            }
+            if (t < 0 || types.contains(t)) {
+                throw new IllegalArgumentException("Invalid trade-flow factor: " + item);
+            }
+            types.add(t);
+        }
+        int[] result = new int[types.size()];
+        for (int i = 0; i < result.length; i++) result[i] = types.get(i);
+        return result;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * 槽位被 (重新) 分配给一只新股票时调用
+     */
+    public void reset(int slot) {
+        seen[slot] = false;
+        lastSign[slot] = 0;
+    }
+
+    /**
+     * 槽位数扩到 slots (StockStateStore 扩容后调用)，已有槽位的状态不变
+     */
+    public void grow(int slots) {
+        seen = Arrays.copyOf(seen, slots);
+        prevCnt = Arrays.copyOf(prevCnt, slots);
+        prevVol = Arrays.copyOf(prevVol, slots);
+        prevTurnover = Arrays.copyOf(prevTurnover, slots);
+        prevLast = Arrays.copyOf(prevLast, slots);
+        prevMid = Arrays.copyOf(prevMid, slots);
+        prevSecond = Arrays.copyOf(prevSecond, slots);
+        lastSign = Arrays.copyOf(lastSign, slots);
+    }
+
+    /**
+     * 写入一笔新数据，把各成交流因子写到 out[offset ...]
+     *
+     * @param mid 本笔中间价 (基础因子 3)
+     */
+    public void update(int slot, TickData current, double mid, double[] out, int offset) {
+        long dCnt = 0;
+        long dVol = 0;
+        double dTurnover = 0;
+        int dt = 1;
+        int second = SessionCalendar.secondsOfDay(current.tradeTime);
+        int sign = lastSign[slot];
+        if (seen[slot]) {
+            dCnt = Math.max(0, current.cumCnt - prevCnt[slot]);
+            dVol = Math.max(0, current.cumVol - prevVol[slot]);
+            dTurnover = Math.max(0, current.turnover - prevTurnover[slot]) * turnoverScale;
+            dt = Math.max(1, second - prevSecond[slot]);
+            if (dVol > 0) {
+                if (current.last > prevMid[slot]) sign = 1;
+                else if (current.last < prevMid[slot]) sign = -1;
+                else if (current.last > prevLast[slot]) sign = 1;
+                else if (current.last < prevLast[slot]) sign = -1;
+            }
+        }
+
+        for (int s = 0; s < count; s++) {
+            double value;
+            switch (types[s]) {
+                case VOL:
+                    value = dVol;
+                    break;
+                case VWAP:
+                    value = dVol > 0 ? dTurnover / dVol : current.last;
+                    break;
+                case COUNT:
+                    value = dCnt;
+                    break;
+                case SIGNED:
+                    value = dVol > 0 ? sign * (double) dVol : 0.0;
+                    break;
+                default: // TURNOVER
+                    value = dTurnover / dt;
+                    break;
+            }
+            out[offset + s] = value;
+        }
+
+        seen[slot] = true;
+        prevCnt[slot] = current.cumCnt;
+        prevVol[slot] = current.cumVol;
+        prevTurnover[slot] = current.turnover;
+        prevLast[slot] = current.last;
+        prevMid[slot] = mid;
+        prevSecond[slot] = second;
+        lastSign[slot] = (byte) sign;
+    }
+}
@@ -0,0 +1,169 @@
+// [file name]: ForwardReturnMapper.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * IC 阶段的 Mapper：按股票缓存当天按时间排列的 (秒, 中间价, 因子向量)，
+ * 交易日切换或任务结束时为每只股票打前瞻收益标签：
+ * <pre>
+ *   r_h(t) = mid(t + h) / mid(t) - 1      mid(t + h) 取 t + h 时刻 (含) 之前最后一笔的中间价
+ * </pre>
+ * t + h 超过该股票当天最后一笔时没有标签 (NaN)。每只股票每秒只取该秒最后一笔 (快照)，
+ * 以 "yyyyMMdd_HHMMSS" 为 key 输出 float 向量 [f1..fW, r_h1..r_hH]，横截面 IC 由
+ * InformationCoefficientReducer 计算。
+ *
+ * 与主作业一样依赖同一只股票当天的行落在同一个分片内且按时间排列 (源文件按股票分组)。
+ */
+public class ForwardReturnMapper extends Mapper<LongWritable, Text, Text, CompactFactorWritable> {
+
+    public static final String CONF_HORIZONS = "factor.ic.horizons";   // 秒，如 "30,60,300"
+
+    /**
+     * 前瞻收益的期限 (秒，升序)
+     */
+    public static int[] horizons(Configuration conf) {
+        int[] h = conf.getInts(CONF_HORIZONS);
+        if (h.length == 0) throw new IllegalArgumentException(CONF_HORIZONS + " is not set");
+        for (int v : h) {
+            if (v <= 0) throw new IllegalArgumentException("IC horizon must be positive seconds: " + v);
+        }
+        Arrays.sort(h);
+        return h;
+    }
+
+    /**
+     * 一只股票当天的序列
+     */
+    private static final class Series {
+        int n;
+        int[] secs = new int[1024];
+        double[] mids = new double[1024];
+        float[] values;
+
+        Series(int width) {
+            values = new float[1024 * width];
+        }
+
+        void add(int sec, double mid, double[] f, int width) {
+            if (n == secs.length) {
+                secs = Arrays.copyOf(secs, n * 2);
+                mids = Arrays.copyOf(mids, n * 2);
+                values = Arrays.copyOf(values, n * 2 * width);
+            }
+            secs[n] = sec;
+            mids[n] = mid;
+            int base = n * width;
+            for (int i = 0; i < width; i++) values[base + i] = (float) f[i + 1];
+            n++;
+        }
+    }
+
+    private TickLineParser parser;
+    private FactorEngine engine;
+    private TickData currentTick;
+    private double[] factors;
+    private int width;
+    private int[] horizons;
+
+    private final Map<Long, Series> series = new HashMap<>();
+    private final ArrayDeque<Series> pool = new ArrayDeque<>();
+    private int currentDay = -1;
+
+    private final Text outKey = new Text();
+    private final CompactFactorWritable outValue = new CompactFactorWritable();
+    private double[] vector;   // 1 起：因子 + 各期限收益
+    private int[] cursors;
+    private long unordered;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        parser = new TickLineParser(conf);
+        engine = new FactorEngine(conf);
+        currentTick = new TickData(parser.layout.depth);
+        width = engine.width();
+        factors = new double[width + 1];
+        horizons = horizons(conf);
+        vector = new double[width + horizons.length + 1];
+        cursors = new int[horizons.length];
+    }
+
+    @Override
+    public void map(LongWritable key, Text value, Context context)
+            throws IOException, InterruptedException {
+        int status = parser.parse(value.getBytes(), 0, value.getLength(), currentTick);
+        if (status != TickLineParser.OK) return;
+
+        engine.compute(parser.stockKey, currentTick, factors);
+
+        // 换日：前一天的股票序列都已完整
+        if (parser.tradingDay != currentDay) {
+            flushAll(context);
+            currentDay = parser.tradingDay;
+        }
+        Series s = series.get(parser.stockKey);
+        if (s == null) {
+            s = pool.isEmpty() ? new Series(width) : pool.poll();
+            series.put(parser.stockKey, s);
+        }
+        s.add(parser.secondOfDay, engine.mid(), factors, width);
+    }
+
+    private void flushAll(Context context) throws IOException, InterruptedException {
+        for (Series s : series.values()) {
+            label(s, context);
+            s.n = 0;
+            pool.add(s);
+        }
+        series.clear();
+    }
+
+    private void label(Series s, Context context) throws IOException, InterruptedException {
+        int n = s.n;
+        for (int i = 1; i < n; i++) {
+            if (s.secs[i] < s.secs[i - 1]) {
+                // 乱序的序列无法按时间前瞻 (主作业的前一时刻因子同样依赖时间顺序)，整段跳过并计数
+                unordered += n;
+                return;
+            }
+        }
+        int lastSec = s.secs[n - 1];
+        Arrays.fill(cursors, 0);
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && s.secs[i + 1] == s.secs[i]) continue;   // 每秒只取最后一笔
+
+            int base = i * width;
+            for (int j = 0; j < width; j++) vector[j + 1] = s.values[base + j];
+            double mid = s.mids[i];
+            for (int h = 0; h < horizons.length; h++) {
+                int target = s.secs[i] + horizons[h];
+                double r = Double.NaN;
+                if (target <= lastSec && mid > 0) {
+                    int p = Math.max(cursors[h], i);
+                    while (p + 1 < n && s.secs[p + 1] <= target) p++;
+                    cursors[h] = p;
+                    r = s.mids[p] / mid - 1.0;
+                }
+                vector[width + h + 1] = r;
+            }
+            outKey.set(SlotAggregator.slotKey(currentDay, s.secs[i]));
+            outValue.setValues(vector, width + horizons.length);
+            context.write(outKey, outValue);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        flushAll(context);
+        TickLineParser.reportCounters(parser.statusCounts, context);
+        if (unordered > 0) context.getCounter(TickLineParser.COUNTER_GROUP, "IC_UNORDERED").increment(unordered);
+    }
+}
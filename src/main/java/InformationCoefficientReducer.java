@@ -0,0 +1,232 @@
+// [file name]: InformationCoefficientReducer.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IC 阶段的 Reducer：每个 key 是一秒的横截面 (每只股票一条 [f1..fW, r_h1..r_hH])，
+ * 对每个期限、每个因子计算 Pearson IC 和秩 IC (Spearman，并列取平均秩)，
+ * 再按交易日累加成可合并的统计量 (截面数 n, Σic, Σic²)。
+ *
+ * 输出一行一个 (交易日, 期限, 因子, 方法)：
+ * <pre>
+ *   tradingDay,horizon,factor,method,slots,sum_ic,sum_ic2,mean_ic,ic_ir
+ * </pre>
+ * 多天 / 多个作业的结果把 slots、sum_ic、sum_ic2 直接相加即可合并。
+ * 有效股票数少于 factor.ic.min.stocks (默认 5) 或某一侧方差为 0 的截面不计入。
+ */
+public class InformationCoefficientReducer extends Reducer<Text, CompactFactorWritable, Text, NullWritable> {
+
+    public static final String CONF_MIN_STOCKS = "factor.ic.min.stocks";
+    public static final String HEADER = "tradingDay,horizon,factor,method,slots,sum_ic,sum_ic2,mean_ic,ic_ir";
+
+    private static final int PEARSON = 0;
+    private static final int RANK = 1;
+    private static final String[] METHODS = {"pearson", "rank"};
+
+    private int width;
+    private int[] horizons;
+    private List<String> names;
+    private int minStocks;
+    private int stride;
+
+    // 当前截面：rows[k * stride + j]
+    private double[] rows = new double[0];
+    private int stocks;
+
+    // 当前交易日的统计量，下标 [(h * width + j) * 2 + method]
+    private long[] slots;
+    private double[] sumIc;
+    private double[] sumIc2;
+    private int currentDay = -1;
+
+    // 复用的工作数组
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] rx = new double[0];
+    private double[] ry = new double[0];
+    private int[] order = new int[0];
+
+    @Override
+    protected void setup(Context context) {
+        Configuration conf = context.getConfiguration();
+        names = FactorSchema.columnNames(conf);
+        width = names.size();
+        horizons = ForwardReturnMapper.horizons(conf);
+        minStocks = Math.max(3, conf.getInt(CONF_MIN_STOCKS, 5));
+        stride = width + horizons.length;
+        int cells = horizons.length * width * 2;
+        slots = new long[cells];
+        sumIc = new double[cells];
+        sumIc2 = new double[cells];
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<CompactFactorWritable> values, Context context)
+            throws IOException, InterruptedException {
+        int day = SessionCalendar.parseDigits(key.getBytes(), 0, Math.min(8, key.getLength()));
+        if (day != currentDay) {
+            emitDay(context);
+            currentDay = day;
+        }
+
+        stocks = 0;
+        for (CompactFactorWritable value : values) {
+            if (value.width() != stride) continue;
+            if ((stocks + 1) * stride > rows.length) rows = Arrays.copyOf(rows, Math.max(64 * stride, rows.length * 2));
+            int base = stocks * stride;
+            for (int j = 0; j < stride; j++) rows[base + j] = value.value(j);
+            stocks++;
+        }
+        ensureWork(stocks);
+
+        for (int h = 0; h < horizons.length; h++) {
+            int retCol = width + h;
+            for (int j = 0; j < width; j++) {
+                int m = 0;
+                for (int k = 0; k < stocks; k++) {
+                    double f = rows[k * stride + j];
+                    double r = rows[k * stride + retCol];
+                    if (Double.isNaN(r) || Double.isNaN(f) || Double.isInfinite(f)) continue;
+                    x[m] = f;
+                    y[m] = r;
+                    m++;
+                }
+                if (m < minStocks) continue;
+                int cell = (h * width + j) * 2;
+                accumulate(cell + PEARSON, pearson(x, y, m));
+                rank(x, m, rx);
+                rank(y, m, ry);
+                accumulate(cell + RANK, pearson(rx, ry, m));
+            }
+        }
+    }
+
+    private void accumulate(int cell, double ic) {
+        if (Double.isNaN(ic)) return;
+        slots[cell]++;
+        sumIc[cell] += ic;
+        sumIc2[cell] += ic * ic;
+    }
+
+    private void emitDay(Context context) throws IOException, InterruptedException {
+        if (currentDay < 0) return;
+        StringBuilder sb = new StringBuilder(128);
+        for (int h = 0; h < horizons.length; h++) {
+            for (int j = 0; j < width; j++) {
+                for (int method = 0; method < 2; method++) {
+                    int cell = (h * width + j) * 2 + method;
+                    long n = slots[cell];
+                    if (n == 0) continue;
+                    double mean = sumIc[cell] / n;
+                    double var = n > 1 ? (sumIc2[cell] - n * mean * mean) / (n - 1) : 0.0;
+                    double ir = var > 0 ? mean / Math.sqrt(var) : 0.0;
+                    sb.setLength(0);
+                    sb.append(currentDay).append(',').append(horizons[h]).append(',').append(names.get(j))
+                            .append(',').append(METHODS[method]).append(',').append(n)
+                            .append(String.format(",%.6f,%.6f,%.6f,%.6f", sumIc[cell], sumIc2[cell], mean, ir));
+                    context.write(new Text(sb.toString()), NullWritable.get());
+                }
+            }
+        }
+        Arrays.fill(slots, 0);
+        Arrays.fill(sumIc, 0.0);
+        Arrays.fill(sumIc2, 0.0);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        emitDay(context);
+    }
+
+    private void ensureWork(int n) {
+        if (x.length >= n) return;
+        int size = Math.max(n, x.length * 2);
+        x = new double[size];
+        y = new double[size];
+        rx = new double[size];
+        ry = new double[size];
+        order = new int[size];
+    }
+
+    /**
+     * Pearson 相关系数；任一侧方差为 0 返回 NaN
+     */
+    static double pearson(double[] a, double[] b, int n) {
+        double ma = 0, mb = 0;
+        for (int i = 0; i < n; i++) {
+            ma += a[i];
+            mb += b[i];
+        }
+        ma /= n;
+        mb /= n;
+        double sab = 0, saa = 0, sbb = 0;
+        for (int i = 0; i < n; i++) {
+            double da = a[i] - ma;
+            double db = b[i] - mb;
+            sab += da * db;
+            saa += da * da;
+            sbb += db * db;
+        }
+        if (saa <= 0 || sbb <= 0) return Double.NaN;
+        return sab / Math.sqrt(saa * sbb);
+    }
+
+    /**
+     * 秩 (1 起)，并列取平均秩
+     */
+    private void rank(double[] v, int n, double[] out) {
+        for (int i = 0; i < n; i++) order[i] = i;
+        sortByValue(order, v, 0, n - 1);
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && v[order[j + 1]] == v[order[i]]) j++;
+            double r = (i + j) / 2.0 + 1;
+            for (int k = i; k <= j; k++) out[order[k]] = r;
+            i = j + 1;
+        }
+    }
+
+    // 下标数组按 v 升序的快速排序 (小区间插入排序)
+    private static void sortByValue(int[] idx, double[] v, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = v[idx[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (v[idx[i]] < pivot) i++;
+                while (v[idx[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = idx[i];
+                    idx[i] = idx[j];
+                    idx[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            // 先递归短的一侧
+            if (j - lo < hi - i) {
+                sortByValue(idx, v, lo, j);
+                lo = i;
+            } else {
+                sortByValue(idx, v, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int t = idx[i];
+            double tv = v[t];
+            int j = i - 1;
+            while (j >= lo && v[idx[j]] > tv) {
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = t;
+        }
+    }
+}
@@ -7,12 +7,19 @@ import java.util.Map;
 
 public class LocalAggregator extends Reducer<Text, Text, Text, Text> {
 
+    private int width;
+
+    @Override
+    protected void setup(Context context) {
+        width = FactorSchema.width(context.getConfiguration());
+    }
+
     @Override
     protected void reduce(Text key, Iterable<Text> values, Context context)
             throws IOException, InterruptedException {
 
-        // 用来存20个因子的累加值 (索引1-20)
-        double[] sumFactors = new double[21];
+        // 用来存各因子的累加值 (索引1-width)
+        double[] sumFactors = new double[width + 1];
         long totalCount = 0;
 
         for (Text value : values) {
@@ -28,7 +35,7 @@ public class LocalAggregator extends Reducer<Text, Text, Text, Text> {
                 totalCount += count; // 累加样本数
 
                 // 累加因子值
-                for (int i = 0; i < factors.length && i < 20; i++) {
+                for (int i = 0; i < factors.length && i < width; i++) {
                     // factors[0] 是第一个因子，存入 sumFactors[1]
                     sumFactors[i+1] += Double.parseDouble(factors[i]);
                 }
@@ -40,9 +47,9 @@ public class LocalAggregator extends Reducer<Text, Text, Text, Text> {
         StringBuilder sb = new StringBuilder();
         sb.append(totalCount).append("|");
 
-        for (int i = 1; i <= 20; i++) {
+        for (int i = 1; i <= width; i++) {
             sb.append(String.format("%.6f", sumFactors[i]));
-            if (i < 20) sb.append(",");
+            if (i < width) sb.append(",");
         }
 
         context.write(key, new Text(sb.toString()));
@@ -0,0 +1,329 @@
+// [file name]: MultithreadedFactorMapper.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 多线程 Mapper：一个 map 任务内部按股票代码哈希把行分给 K 个工作线程。
+ *
+ * - 同一只股票的所有 tick 固定落到同一个线程，并保持输入顺序，前一档口 / 滚动窗口状态不需要加锁；
+ * - 每个线程各自持有 TickLineParser、FactorEngine、TickData、因子数组等临时对象；
+ * - 每个线程在自己的 SlotAggregator 里按 (交易日, 秒) 做局部求和，cleanup 时合并后一次性输出，
+ *   输出格式 "count|sum1,..." 与 SingleDateReducer 兼容，shuffle 数据量从“每笔一条”降到“每秒一条”。
+ *
+ * 主线程只负责找出代码列、把行字节拷进批缓冲区；批缓冲区在线程间循环复用，空闲池为空时主线程阻塞（背压）。
+ */
+public class MultithreadedFactorMapper extends Mapper<LongWritable, Text, Text, Writable> {
+
+    public static final String CONF_THREADS = "factor.mt.threads";
+    public static final String CONF_BATCH_BYTES = "factor.mt.batch.bytes";
+
+    private static final int BATCHES_PER_WORKER = 3;
+    private static final int BLOCK_TICKS = 256;
+
+    private int codeColumn;
+    private Worker[] workers;
+    private Batch[] filling;   // 主线程正在填充的批，每个工作线程一个
+    private QuarantineWriter quarantine;   // 各工作线程共享 (内部加锁)
+
+    private final Text outKey = new Text();
+    private final Text outValue = new Text();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        int threads = Math.max(1, conf.getInt(CONF_THREADS, Runtime.getRuntime().availableProcessors()));
+        int batchBytes = Math.max(4096, conf.getInt(CONF_BATCH_BYTES, 256 * 1024));
+
+        // 只读共享：列映射与交易日历在构造后不再修改
+        ColumnLayout layout = ColumnLayout.fromConf(conf);
+        SessionCalendar calendar = SessionCalendar.fromConf(conf);
+        StockSampler sampler = StockSampler.fromConf(conf);
+        codeColumn = layout.code;
+
+        Path panelRoot = null;
+        if (conf.getBoolean(FactorPanelWriter.CONF_ENABLED, false)) {
+            panelRoot = new Path(FileOutputFormat.getWorkOutputPath(context), FactorPanelWriter.PANEL_DIR);
+        }
+        String taskId = context.getTaskAttemptID().getTaskID().toString();
+        QuarantineWriter quarantine = QuarantineWriter.create(context);
+        this.quarantine = quarantine;
+
+        workers = new Worker[threads];
+        filling = new Batch[threads];
+        for (int w = 0; w < threads; w++) {
+            FactorPanelWriter panel = panelRoot == null ? null
+                    : new FactorPanelWriter(conf, panelRoot, taskId + "-w" + w, FactorSchema.width(conf));
+            workers[w] = new Worker(w, conf, layout, calendar, sampler, panel, quarantine, batchBytes);
+            filling[w] = workers[w].free.take();
+            workers[w].start();
+        }
+        BatchDepthKernel kernel = workers[0].kernel;
+        System.out.println("=== Multithreaded Mapper Initialized: " + threads + " workers, "
+                + (kernel == null ? "per-tick" : kernel.name()) + " book kernel ===");
+    }
+
+    @Override
+    public void map(LongWritable key, Text value, Context context)
+            throws IOException, InterruptedException {
+        byte[] line = value.getBytes();
+        int len = value.getLength();
+
+        int w = workerOf(line, len);
+        Batch batch = filling[w];
+        if (!batch.fits(len) && batch.count > 0) {
+            dispatch(w);
+            batch = filling[w];
+        }
+        batch.append(line, len);
+    }
+
+    // 代码列的 FNV-1a 哈希决定工作线程；列数不足的行 (表头 / 坏行) 交给 0 号线程由解析器丢弃
+    private int workerOf(byte[] line, int len) {
+        if (workers.length == 1) return 0;
+        int start = 0;
+        for (int col = 0; col < codeColumn; col++) {
+            while (start < len && line[start] != ',') start++;
+            if (start >= len) return 0;
+            start++;
+        }
+        int h = 0x811C9DC5;
+        for (int i = start; i < len && line[i] != ','; i++) {
+            h ^= (line[i] & 0xFF);
+            h *= 0x01000193;
+        }
+        return (h & Integer.MAX_VALUE) % workers.length;
+    }
+
+    private void dispatch(int w) throws IOException, InterruptedException {
+        Worker worker = workers[w];
+        worker.checkFailure();
+        worker.queue.put(filling[w]);
+        filling[w] = worker.free.take();
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        for (int w = 0; w < workers.length; w++) {
+            if (filling[w].count > 0) dispatch(w);
+            workers[w].queue.put(Batch.END);
+        }
+        for (Worker worker : workers) {
+            worker.join();
+            worker.checkFailure();
+        }
+
+        // 合并各线程的局部和与解析计数
+        SlotAggregator total = workers[0].aggregator;
+        long[] statusCounts = workers[0].parser.statusCounts.clone();
+        long unchanged = workers[0].engine.unchangedTicks();
+        for (int w = 1; w < workers.length; w++) {
+            unchanged += workers[w].engine.unchangedTicks();
+            total.merge(workers[w].aggregator);
+            workers[w].aggregator.clear();
+            long[] counts = workers[w].parser.statusCounts;
+            for (int i = 0; i < counts.length; i++) statusCounts[i] += counts[i];
+        }
+        TickLineParser.reportCounters(statusCounts, context);
+        FactorEngine.reportUnchanged(unchanged, context);
+        if (quarantine != null) quarantine.close();
+
+        final int width = workers[0].engine.width();
+        final CompactFactorWritable compactValue =
+                CompactFactorWritable.enabled(context.getConfiguration()) ? new CompactFactorWritable() : null;
+        total.forEach((day, sec, count, sums, sumSqs, offset) -> {
+            outKey.set(SlotAggregator.slotKey(day, sec));
+            if (compactValue != null) {
+                compactValue.setPartial(count, sums, sumSqs, offset, width);
+                context.write(outKey, compactValue);
+            } else {
+                outValue.set(SlotAggregator.formatPartial(count, sums, sumSqs, offset, width));
+                context.write(outKey, outValue);
+            }
+        });
+        total.clear();
+    }
+
+    /**
+     * 一批原始行：字节连续存放，starts/ends 记录各行边界
+     */
+    private static final class Batch {
+        static final Batch END = new Batch(0);
+
+        byte[] data;
+        int[] starts = new int[1024];
+        int[] ends = new int[1024];
+        int count;
+        int used;
+
+        Batch(int bytes) {
+            data = new byte[bytes];
+        }
+
+        boolean fits(int len) {
+            return used + len <= data.length && count < starts.length;
+        }
+
+        void append(byte[] line, int len) {
+            if (used + len > data.length) {
+                // 单行超过批大小：扩容 (只在批为空时发生)
+                byte[] bigger = new byte[Math.max(data.length * 2, used + len)];
+                System.arraycopy(data, 0, bigger, 0, used);
+                data = bigger;
+            }
+            if (count == starts.length) {
+                int[] s = new int[count * 2];
+                int[] e = new int[count * 2];
+                System.arraycopy(starts, 0, s, 0, count);
+                System.arraycopy(ends, 0, e, 0, count);
+                starts = s;
+                ends = e;
+            }
+            System.arraycopy(line, 0, data, used, len);
+            starts[count] = used;
+            used += len;
+            ends[count] = used;
+            count++;
+        }
+
+        void clear() {
+            count = 0;
+            used = 0;
+        }
+    }
+
+    /**
+     * 工作线程：顺序处理分给它的批，每只股票的状态只在本线程内访问
+     */
+    private static final class Worker extends Thread {
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(BATCHES_PER_WORKER + 1);
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES_PER_WORKER);
+
+        final TickLineParser parser;
+        final FactorEngine engine;
+        final TickData tick;
+        final double[] factors;
+        final SlotAggregator aggregator;
+        final FactorPanelWriter panel;
+        final QuarantineWriter quarantine;
+
+        // 批量盘口聚合 (见 BatchDepthKernel)：先解析一块 tick，整块聚合后再按原顺序逐笔算因子；null 表示逐笔
+        final BatchDepthKernel kernel;
+        final TickBlock block;
+        final TickData[] blockTicks;
+        final long[] blockKeys;
+        final int[] blockDays;
+        final int[] blockSeconds;
+        final DepthKernels.Aggregates agg = new DepthKernels.Aggregates();
+
+        private volatile Throwable failure;
+
+        Worker(int index, Configuration conf, ColumnLayout layout, SessionCalendar calendar,
+               StockSampler sampler, FactorPanelWriter panel, QuarantineWriter quarantine, int batchBytes) {
+            super("factor-worker-" + index);
+            setDaemon(true);
+            this.parser = new TickLineParser(layout, calendar, sampler);
+            this.engine = new FactorEngine(conf);
+            this.tick = new TickData(layout.depth);
+            this.factors = new double[engine.width() + 1];
+            this.aggregator = new SlotAggregator(engine.width(),
+                    calendar.firstAcceptedSecond(), calendar.lastAcceptedSecond(), sampler != null);
+            this.panel = panel;
+            this.quarantine = quarantine;
+            // 面板需要逐行取日期 / 代码字段，只在逐笔路径上支持；选中的因子用不到盘口聚合时也走逐笔
+            boolean batched = panel == null && engine.aggregatesDepth()
+                    && !"tick".equals(conf.get(BatchDepthKernel.CONF_KERNEL, "batch"));
+            this.kernel = batched ? BatchDepthKernel.create(engine.depth()) : null;
+            this.block = batched ? new TickBlock(engine.depth(), BLOCK_TICKS) : null;
+            this.blockTicks = new TickData[batched ? BLOCK_TICKS : 0];
+            for (int i = 0; i < blockTicks.length; i++) blockTicks[i] = new TickData(layout.depth);
+            this.blockKeys = new long[blockTicks.length];
+            this.blockDays = new int[blockTicks.length];
+            this.blockSeconds = new int[blockTicks.length];
+            for (int i = 0; i < BATCHES_PER_WORKER; i++) free.add(new Batch(batchBytes));
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Batch batch = queue.take();
+                    if (batch == Batch.END) break;
+                    // 出错后继续消费 (丢弃) 后续批，避免主线程在空闲池上永远阻塞
+                    if (failure == null) {
+                        try {
+                            process(batch);
+                        } catch (Throwable t) {
+                            failure = t;
+                        }
+                    }
+                    batch.clear();
+                    free.put(batch);
+                }
+                if (panel != null && failure == null) panel.close();
+            } catch (Throwable t) {
+                if (failure == null) failure = t;
+            }
+        }
+
+        private void process(Batch batch) throws IOException, InterruptedException {
+            byte[] data = batch.data;
+            ColumnLayout layout = parser.layout;
+            for (int i = 0; i < batch.count; i++) {
+                TickData tick = kernel == null ? this.tick : blockTicks[block.size];
+                int status = parser.parse(data, batch.starts[i], batch.ends[i], tick);
+                if (status != TickLineParser.OK) {
+                    if (quarantine != null && TickLineParser.isMalformed(status)) {
+                        quarantine.write(status, data, batch.starts[i], batch.ends[i]);
+                    }
+                    continue;
+                }
+                if (kernel != null) {
+                    int t = block.add(tick);
+                    blockKeys[t] = parser.stockKey;
+                    blockDays[t] = parser.tradingDay;
+                    blockSeconds[t] = parser.secondOfDay;
+                    if (block.isFull()) flushBlock();
+                    continue;
+                }
+                engine.compute(parser.stockKey, tick, factors);
+                aggregator.add(parser.tradingDay, parser.secondOfDay, factors);
+                if (panel != null) {
+                    panel.append(field(data, layout.tradingDay), field(data, layout.code), parser.tradeTime, factors);
+                }
+            }
+            if (kernel != null && block.size > 0) flushBlock();
+        }
+
+        private void flushBlock() {
+            kernel.aggregate(block);
+            for (int t = 0; t < block.size; t++) {
+                block.aggregatesOf(t, agg);
+                engine.compute(blockKeys[t], blockTicks[t], agg, factors);
+                aggregator.add(blockDays[t], blockSeconds[t], factors);
+            }
+            block.clear();
+        }
+
+        private String field(byte[] data, int col) {
+            int start = parser.fieldStart(col);
+            return new String(data, start, parser.fieldEnd(col) - start, StandardCharsets.US_ASCII);
+        }
+
+        void checkFailure() throws IOException {
+            Throwable t = failure;
+            if (t == null) return;
+            if (t instanceof IOException) throw (IOException) t;
+            throw new IOException(getName() + " failed", t);
+        }
+    }
+}
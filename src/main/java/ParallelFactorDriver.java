@@ -10,18 +10,151 @@ import java.util.*;
 public class ParallelFactorDriver {
     public static void main(String[] args) throws Exception {
         System.out.println("=== 🏆 Running V8 Pro: The Champion Tune ===");
+        System.exit(run(args) != null ? 0 : 1);
+    }
+
+    /**
+     * 跑一次完整流程 (MapReduce + 本地落盘)，成功返回已完成的 Job (可取计数器)，失败返回 null。
+     * 供 main 和 RegressionRunner 等进程内调用。
+     */
+    public static Job run(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        parseArgs(args, positional, options);
 
-        if (args.length < 2) {
+        if (positional.size() < 2) {
             System.err.println("Usage: ParallelFactorDriver <hdfs-input> <local-linux-output> [num-days]");
-            System.exit(1);
+            System.err.println("Options: --sessions=<calendar-file> --accept-auction");
+            System.err.println("         --time-range=HHMMSS-HHMMSS (only this window; files indexed by 'TickFileIndex build' are read");
+            System.err.println("                 from the window's byte ranges only)");
+            System.err.println("         --panel [--panel-precision=float|double] [--panel-buckets=N]");
+            System.err.println("         --rolling=chg:20,ema:50,std:100,oisum:200");
+            System.err.println("         --flow=vol,vwap,count,signed,turnover (trade-flow factors from cumulative volume / turnover)");
+            System.err.println("         --turnover-scale=X (turnover x X = last-price units x volume, default 1; e.g. 10000 for");
+            System.err.println("                 turnover in yuan and last in 1/10000 yuan)");
+            System.err.println("         --factors=1-3,20 (output only these base alphas; only the columns they need are parsed)");
+            System.err.println("         --depth=N (order book levels, default 5)");
+            System.err.println("         --no-dedup (recompute factors for snapshots whose book did not change)");
+            System.err.println("         --threads=N (stock-partitioned worker threads per map task)");
+            System.err.println("         --input-format=text|tick (tick: record reader parses ticks, mapper gets (stockId, tick))");
+            System.err.println("         --kernel=batch|tick (with --threads: block-wise book aggregation, vectorized on Java 17+)");
+            System.err.println("         --sample=<fraction> (hash-sampled stocks, adds <alpha>_se columns)");
+            System.err.println("         --encoding=text|compact (compact: float32 binary shuffle values + combiner)");
+            System.err.println("         --quarantine-rate=N (malformed lines/sec kept per task, default 100, 0 = off)");
+            System.err.println("         --sets=a,b [--set.<id>.<key>=value ...] (shared-scan factor sets, e.g. --set.a.depth=10,");
+            System.err.println("                 --set.a.rolling=ema:50, --set.a.session.spec=...; output in <output>/<id>/)");
+            System.err.println("         --ic=30,60,300 [--ic-min-stocks=N] (forward-return IC stage, output in <output>/ic/ic.csv)");
+            System.err.println("         --bars=3,60,300 (tick-weighted factor bars of N seconds in <output>/bars/<N>s/)");
+            System.err.println("         --groups=<file> (lines code,group[,weight]: per-group weighted means in <output>/groups/<group>/)");
+            System.err.println("         --map-only (input is one directory or file per trading day: each map task aggregates a whole day");
+            System.err.println("                 and writes its final rows, no shuffle / reducer)");
+            System.err.println("         --align=N (as-of grid of N seconds: each row averages every stock seen so far that day,");
+            System.err.println("                 carrying its last factor vector forward)");
+            return null;
         }
 
-        String inputPathStr = args[0];
-        String localLinuxOutputDir = args[1];
+        String inputPathStr = positional.get(0);
+        String localLinuxOutputDir = positional.get(1);
         long start_time = System.currentTimeMillis();
 
         Configuration conf = new Configuration();
 
+        // 0. 交易时段日历 (见 SessionCalendar)
+        if (options.containsKey("sessions")) conf.set(SessionCalendar.CONF_FILE, options.get("sessions"));
+        if (options.containsKey("accept-auction")) conf.setBoolean(SessionCalendar.CONF_ACCEPT_AUCTION, true);
+        if (options.containsKey("time-range")) {
+            conf.set(SessionCalendar.CONF_TIME_RANGE, options.get("time-range"));
+            SessionCalendar.timeRange(conf); // 提交前校验
+        }
+
+        // 0.05 按股票代码哈希抽样 (见 StockSampler)，输出附带每秒标准误列
+        if (options.containsKey("sample")) {
+            double fraction = Double.parseDouble(options.get("sample"));
+            new StockSampler(fraction); // 提交前校验取值范围
+            conf.setDouble(StockSampler.CONF_FRACTION, fraction);
+        }
+
+        // 0.07 盘口未变的快照复用缓存因子 (见 FactorEngine)
+        if (options.containsKey("no-dedup")) conf.setBoolean(FactorEngine.CONF_DEDUP, false);
+
+        // 0.1 滚动窗口因子 (见 RollingFactors)
+        if (options.containsKey("rolling")) conf.set(RollingFactors.CONF_SPECS, options.get("rolling"));
+
+        // 0.15 成交流因子 (见 FlowFactors)，排在滚动因子之后
+        if (options.containsKey("flow")) conf.set(FlowFactors.CONF_SPECS, options.get("flow"));
+        if (options.containsKey("turnover-scale")) {
+            conf.set(FlowFactors.CONF_TURNOVER_SCALE, options.get("turnover-scale"));
+            FlowFactors.turnoverScale(conf); // 提交前校验
+        }
+
+        // 0.17 基础因子选择 (见 FactorSelection)：只输出选中的 alpha 列，解析器只读它们用到的列
+        if (options.containsKey("factors")) {
+            conf.set(FactorSelection.CONF_SELECT, options.get("factors"));
+            System.out.println(">>> Selected factors: " + FactorSchema.columnNames(conf)); // 提交前校验
+        }
+
+        // 0.2 个股因子面板 (见 FactorPanelWriter)
+        if (options.containsKey("panel")) {
+            conf.setBoolean(FactorPanelWriter.CONF_ENABLED, true);
+            conf.set(FactorPanelWriter.CONF_PRECISION, options.getOrDefault("panel-precision", "float"));
+            conf.set(FactorPanelWriter.CONF_BUCKETS, options.getOrDefault("panel-buckets", "16"));
+        }
+
+        // 0.25 多因子集共享扫描 (见 FactorSets)：--set.<id>.<key>=v 即 factor.set.<id>.<key>=v
+        if (options.containsKey("sets")) {
+            conf.set(FactorSets.CONF_SETS, options.get("sets"));
+            for (Map.Entry<String, String> e : options.entrySet()) {
+                if (e.getKey().startsWith("set.")) conf.set("factor." + e.getKey(), e.getValue());
+            }
+            if (options.containsKey("panel") || Integer.parseInt(options.getOrDefault("threads", "1")) > 1) {
+                System.err.println("--sets cannot be combined with --panel or --threads");
+                return null;
+            }
+        }
+
+        // 0.26 多分辨率 bar (见 FactorBars)：Reducer 按秒的样本数 / 和逐级汇总
+        if (options.containsKey("bars")) {
+            if (options.containsKey("sets")) {
+                System.err.println("--bars cannot be combined with --sets");
+                return null;
+            }
+            conf.set(FactorBars.CONF_BARS, options.get("bars"));
+            FactorBars.sizes(conf); // 提交前校验
+        }
+
+        // 0.27 分组截面聚合 (见 StockGroups)：与全市场均值同一次扫描
+        if (options.containsKey("groups") && (options.containsKey("sets") || options.containsKey("sample")
+                || Integer.parseInt(options.getOrDefault("threads", "1")) > 1)) {
+            System.err.println("--groups cannot be combined with --sets, --sample or --threads");
+            return null;
+        }
+
+        // 0.28 map-only 按日模式 (见 DailyInputFormat / DailyFactorMapper)：每个 map 任务一整天，直接输出最终结果
+        boolean mapOnly = options.containsKey("map-only");
+        if (mapOnly && (options.containsKey("sets") || options.containsKey("groups") || options.containsKey("encoding")
+                || options.containsKey("input-format") || Integer.parseInt(options.getOrDefault("threads", "1")) > 1)) {
+            System.err.println("--map-only cannot be combined with --sets, --groups, --encoding, --input-format or --threads");
+            return null;
+        }
+        if (mapOnly && conf.get("mapreduce.local.map.tasks.maximum") == null) {
+            // 本地运行时各天的 map 任务并行执行 (没有 Reducer，也不分配排序缓冲区)
+            conf.setInt("mapreduce.local.map.tasks.maximum", Runtime.getRuntime().availableProcessors());
+        }
+
+        // 0.29 as-of 对齐 (见 AsOfAligner)：固定网格上前向填充，每个网格点的截面包含当天所有已出现的股票
+        if (options.containsKey("align")) {
+            if (options.containsKey("sets") || options.containsKey("groups")
+                    || "tick".equals(options.get("input-format")) || Integer.parseInt(options.getOrDefault("threads", "1")) > 1) {
+                System.err.println("--align cannot be combined with --sets, --groups, --input-format=tick or --threads");
+                return null;
+            }
+            conf.set(AsOfAligner.CONF_ALIGN, options.get("align"));
+            if (AsOfAligner.gridSeconds(conf) == 0) { // 提交前校验
+                System.err.println("--align must be at least 1 second");
+                return null;
+            }
+        }
+
         // 1. [基础] 递归读取 + JVM 重用
         conf.setBoolean("mapreduce.input.fileinputformat.input.dir.recursive", true);
         conf.set("mapreduce.job.jvm.numtasks", "-1");
@@ -45,7 +178,33 @@ public class ParallelFactorDriver {
         FileSystem hdfs = FileSystem.get(conf);
         Path inputRoot = new Path(inputPathStr);
         if (!hdfs.exists(inputRoot)) {
-            System.exit(1);
+            System.err.println("Input path not found: " + inputRoot);
+            return null;
+        }
+
+        // 0.3 盘口档位数 + 由 CSV 表头推导列映射 (见 ColumnLayout)
+        if (options.containsKey("depth")) conf.setInt(ColumnLayout.CONF_DEPTH, Integer.parseInt(options.get("depth")));
+        String csvHeader = readCsvHeader(hdfs, inputRoot);
+        if (csvHeader != null) conf.set(ColumnLayout.CONF_HEADER, csvHeader);
+        ColumnLayout layout = ColumnLayout.fromConf(conf); // 提交前校验：表头缺列直接报错
+        System.out.printf(">>> Order book depth: %d (columns up to #%d)\n", layout.depth, layout.maxColumn);
+        if (SessionCalendar.timeRange(conf) != null) {
+            int files = 0;
+            int indexed = 0;
+            for (Path file : TickFileIndex.dataFiles(hdfs, inputRoot)) {
+                files++;
+                if (TickFileIndex.read(hdfs, file) != null) indexed++;
+            }
+            System.out.printf(">>> Time range %s: %d of %d input files indexed (others are scanned in full)\n",
+                    conf.get(SessionCalendar.CONF_TIME_RANGE), indexed, files);
+        }
+        FactorSets sets = FactorSets.fromConf(conf);
+        if (sets != null) {
+            for (int s = 0; s < sets.size(); s++) {
+                ColumnLayout.fromConf(sets.confs[s]);
+                SessionCalendar.fromConf(sets.confs[s]);
+                System.out.printf(">>> Factor set %s: %d factors\n", sets.ids[s], sets.widths[s]);
+            }
         }
 
         String hdfsTempPath = "/tmp/stock_v8_pro_" + System.currentTimeMillis();
@@ -56,22 +215,71 @@ public class ParallelFactorDriver {
         FileInputFormat.addInputPath(job, inputRoot);
         FileOutputFormat.setOutputPath(job, new Path(hdfsTempPath));
 
-        job.setMapperClass(SimplifiedFactorMapper.class);
-        // job.setCombinerClass(...) // 确认移除 Combiner
+        // 0.35 tick 输入格式：读取器直接解析出 tick (见 TickRecordInputFormat)
+        boolean tickInput = "tick".equals(options.getOrDefault("input-format", "text"));
+        if (tickInput && (sets != null || Integer.parseInt(options.getOrDefault("threads", "1")) > 1)) {
+            System.err.println("--input-format=tick cannot be combined with --sets or --threads");
+            return null;
+        }
 
-        job.setReducerClass(SingleDateReducer.class);
-        job.setNumReduceTasks(1); // 保持单 Reducer
+        if (options.containsKey("groups")) {
+            StockGroups.configure(job, new Path(options.get("groups")));
+            StockGroups groups = StockGroups.load(job.getConfiguration(), new Path(options.get("groups"))); // 提交前校验
+            System.out.printf(">>> Stock groups: %d\n", groups.size());
+        }
 
-        job.setInputFormatClass(CombineTextInputFormat.class);
+        // 0.4 多线程 Mapper：按股票哈希分给 N 个工作线程，map 端先按秒聚合 (见 MultithreadedFactorMapper)
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        if (tickInput) {
+            job.setMapperClass(TickFactorMapper.class);
+        } else if (sets != null) {
+            job.setMapperClass(SharedScanFactorMapper.class);
+        } else if (mapOnly) {
+            job.setMapperClass(DailyFactorMapper.class);
+        } else if (threads > 1) {
+            job.getConfiguration().setInt(MultithreadedFactorMapper.CONF_THREADS, threads);
+            if (options.containsKey("kernel")) job.getConfiguration().set(BatchDepthKernel.CONF_KERNEL, options.get("kernel"));
+            job.setMapperClass(MultithreadedFactorMapper.class);
+        } else {
+            job.setMapperClass(SimplifiedFactorMapper.class);
+        }
+        // job.setCombinerClass(...) // 确认移除 Combiner
 
-        // 6. [保留] 64MB 切片 (经测试这是最佳并行度)
-        CombineTextInputFormat.setMaxInputSplitSize(job, 64 * 1024 * 1024);
+        // 0.45 坏行隔离输出 (见 QuarantineWriter)，落到输出目录的 quarantine/ 下
+        QuarantineWriter.configure(job, Double.parseDouble(options.getOrDefault("quarantine-rate", "100")));
+
+        // 0.5 shuffle 值编码：compact 用 float32 二进制值 + 补偿求和的 Combiner / Reducer (见 CompactFactorWritable)
+        if (options.containsKey("encoding")) job.getConfiguration().set(CompactFactorWritable.CONF_ENCODING, options.get("encoding"));
+        if (mapOnly) {
+            job.setMapOutputKeyClass(Text.class);
+            job.setMapOutputValueClass(Text.class);
+        } else if (CompactFactorWritable.enabled(job.getConfiguration())) {
+            job.setMapOutputKeyClass(Text.class);
+            job.setMapOutputValueClass(CompactFactorWritable.class);
+            job.setCombinerClass(CompactFactorCombiner.class);
+            job.setReducerClass(CompactFactorReducer.class);
+        } else {
+            job.setReducerClass(SingleDateReducer.class);
+        }
+        job.setNumReduceTasks(mapOnly ? 0 : 1); // 保持单 Reducer (map-only 模式没有 Reducer)
+
+        // 6. [保留] 64MB 切片 (经测试这是最佳并行度)；map-only / 对齐模式每天一个分片
+        if (tickInput) {
+            job.setInputFormatClass(TickRecordInputFormat.class);
+            TickRecordInputFormat.setMaxInputSplitSize(job, 64 * 1024 * 1024);
+        } else if (mapOnly || AsOfAligner.gridSeconds(job.getConfiguration()) > 0) {
+            // 对齐模式把每只股票的最后向量延续到收盘，同一只股票同一天的行不能分到两个 map 任务：
+            // 文件不切分，按天目录组织时一天的文件在同一个分片
+            job.setInputFormatClass(DailyInputFormat.class);
+        } else {
+            setTextInputFormat(job);
+        }
 
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
 
         if (!job.waitForCompletion(true)) {
-            System.exit(1);
+            return null;
         }
 
         long hadoop_end = System.currentTimeMillis();
@@ -79,12 +287,109 @@ public class ParallelFactorDriver {
 
         // 7. [微调] 优化的本地写入逻辑
         splitAndSaveToLocal(conf, hdfsTempPath, localLinuxOutputDir);
+        if (conf.getBoolean(FactorPanelWriter.CONF_ENABLED, false)) {
+            copyDirToLocal(conf, hdfsTempPath, FactorPanelWriter.PANEL_DIR, localLinuxOutputDir);
+        }
+        copyDirToLocal(conf, hdfsTempPath, QuarantineWriter.DIR, localLinuxOutputDir);
+        hdfs.delete(new Path(hdfsTempPath), true);
+
+        // 8. 前瞻收益 + IC 阶段 (见 ForwardReturnMapper / InformationCoefficientReducer)
+        if (options.containsKey("ic")) {
+            conf.set(ForwardReturnMapper.CONF_HORIZONS, options.get("ic"));
+            if (options.containsKey("ic-min-stocks")) {
+                conf.setInt(InformationCoefficientReducer.CONF_MIN_STOCKS, Integer.parseInt(options.get("ic-min-stocks")));
+            }
+            if (!runIcStage(conf, inputRoot, hdfsTempPath + "_ic", localLinuxOutputDir)) return null;
+        }
 
         long total_time = System.currentTimeMillis() - start_time;
         System.out.printf(">>> Total Time: %d ms (%.2f sec)\n", total_time, total_time / 1000.0);
 
-        hdfs.delete(new Path(hdfsTempPath), true);
         System.out.println("=== Mission Complete! ===");
+        return job;
+    }
+
+    // IC 阶段：按股票打前瞻收益标签，按秒算横截面 IC，按日汇总；结果合并为 <output>/ic/ic.csv
+    private static boolean runIcStage(Configuration conf, Path inputRoot, String hdfsOutput, String localOutDir)
+            throws Exception {
+        Job job = Job.getInstance(conf, "Stock-V8-Pro-IC");
+        job.setJarByClass(ParallelFactorDriver.class);
+        FileInputFormat.addInputPath(job, inputRoot);
+        FileOutputFormat.setOutputPath(job, new Path(hdfsOutput));
+        setTextInputFormat(job);
+
+        job.setMapperClass(ForwardReturnMapper.class);
+        job.setReducerClass(InformationCoefficientReducer.class);
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(CompactFactorWritable.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(NullWritable.class);
+        job.setNumReduceTasks(1); // 按交易日汇总依赖 key 全局有序
+
+        if (!job.waitForCompletion(true)) return false;
+
+        FileSystem hdfs = FileSystem.get(conf);
+        FileSystem localFs = FileSystem.getLocal(conf).getRaw();
+        FileStatus[] parts = hdfs.listStatus(new Path(hdfsOutput), path -> path.getName().startsWith("part-r-"));
+        System.out.println("⬇️  Writing ic/ic.csv ...");
+        try (OutputStream os = localFs.create(new Path(localOutDir + "/ic/ic.csv"), true)) {
+            os.write((InformationCoefficientReducer.HEADER + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            for (FileStatus part : parts) {
+                try (FSDataInputStream in = hdfs.open(part.getPath())) {
+                    IOUtils.copyBytes(in, os, 64 * 1024, false);
+                }
+            }
+        }
+        hdfs.delete(new Path(hdfsOutput), true);
+        return true;
+    }
+
+    // 文本输入：小文件合并成 64MB 分片；配置了时间窗口时改用按索引只读窗口字节段的 TimeRangeInputFormat
+    private static void setTextInputFormat(Job job) {
+        if (SessionCalendar.timeRange(job.getConfiguration()) != null) {
+            job.setInputFormatClass(TimeRangeInputFormat.class);
+        } else {
+            job.setInputFormatClass(CombineTextInputFormat.class);
+        }
+        CombineTextInputFormat.setMaxInputSplitSize(job, 64 * 1024 * 1024);
+    }
+
+    // 取输入目录下第一个数据文件的首行，是表头 (字母开头) 则返回
+    private static String readCsvHeader(FileSystem fs, Path inputRoot) throws IOException {
+        RemoteIterator<LocatedFileStatus> files = fs.listFiles(inputRoot, true);
+        while (files.hasNext()) {
+            Path p = files.next().getPath();
+            String name = p.getName();
+            if (name.startsWith("_") || name.startsWith(".")) continue;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(p)))) {
+                String first = reader.readLine();
+                if (first != null && !first.isEmpty() && Character.isLetter(first.charAt(0))) return first.trim();
+            }
+            return null;
+        }
+        return null;
+    }
+
+    // 命令行参数：--key=value 或 --flag 为选项，其余按顺序为位置参数
+    private static void parseArgs(String[] args, List<String> positional, Map<String, String> options) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) options.put(arg.substring(2), "true");
+                else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+
+    // 面板 / 隔离文件已是最终格式，整目录拷到本地输出目录下
+    private static void copyDirToLocal(Configuration conf, String hdfsOutput, String dir, String localOutDir) throws IOException {
+        FileSystem hdfs = FileSystem.get(conf);
+        Path src = new Path(hdfsOutput, dir);
+        if (!hdfs.exists(src)) return;
+        System.out.println("⬇️  Copying " + dir + "/ ...");
+        FileUtil.copy(hdfs, src, FileSystem.getLocal(conf).getRaw(), new Path(localOutDir), false, conf);
     }
 
     // 优化的结果保存方法：增大缓冲区
@@ -94,15 +399,24 @@ public class ParallelFactorDriver {
         Path localOutPath = new Path(localOutDir);
         if (!localFs.exists(localOutPath)) localFs.mkdirs(localOutPath);
 
-        StringBuilder headerBuilder = new StringBuilder("tradeTime");
-        for (int i = 1; i <= 20; i++) headerBuilder.append(String.format(",alpha_%d", i));
-        String header = headerBuilder.toString();
+        String header = FactorSchema.header(conf);
+        // 多因子集：key 带 "<id>#" 前缀，落到 <output>/<id>/，表头按各自配置
+        FactorSets sets = FactorSets.fromConf(conf);
+        Map<String, String> setHeaders = new HashMap<>();
+        if (sets != null) {
+            for (int s = 0; s < sets.size(); s++) setHeaders.put(sets.ids[s], FactorSchema.header(sets.confs[s]));
+        }
 
-        FileStatus[] resultFiles = hdfs.listStatus(new Path(hdfsOutput), path -> path.getName().startsWith("part-r-"));
+        // part-r-* 来自 Reducer；map-only 按日模式下是每天一个的 part-m-*
+        FileStatus[] resultFiles = hdfs.listStatus(new Path(hdfsOutput),
+                path -> path.getName().startsWith("part-r-") || path.getName().startsWith("part-m-"));
         if (resultFiles.length == 0) return;
+        Arrays.sort(resultFiles);
 
         System.out.println("⬇️  Merging results with High-Speed Buffer...");
         Map<String, BufferedWriter> writers = new HashMap<>();
+        // 每个输出文件来自哪个 part 文件：map-only 模式下同一天出现在两个 map 输出里说明输入不是按天组织的
+        Map<String, String> sources = new HashMap<>();
 
         // 使用 64KB 的读写缓冲区 (默认是 8KB)
         int bufferSize = 64 * 1024;
@@ -116,6 +430,28 @@ public class ParallelFactorDriver {
                     line = line.trim();
                     if (line.isEmpty()) continue;
 
+                    String dir = "";
+                    String fileHeader = header;
+                    int barIndex = line.indexOf(FactorBars.TAG_SEPARATOR);
+                    int groupIndex = line.indexOf(StockGroups.TAG_SEPARATOR);
+                    if (barIndex >= 0) {
+                        // bar key "<N>s~..." 落到 <output>/bars/<N>s/
+                        dir = FactorBars.DIR + "/" + line.substring(0, barIndex) + "/";
+                        line = line.substring(barIndex + 1);
+                    } else if (groupIndex >= 0) {
+                        // 分组 key "<group>@..." 落到 <output>/groups/<group>/
+                        dir = StockGroups.DIR + "/" + line.substring(0, groupIndex) + "/";
+                        line = line.substring(groupIndex + 1);
+                    } else if (sets != null) {
+                        int tagIndex = line.indexOf(FactorSets.TAG_SEPARATOR);
+                        if (tagIndex == -1) continue;
+                        String id = line.substring(0, tagIndex);
+                        fileHeader = setHeaders.get(id);
+                        if (fileHeader == null) continue;
+                        dir = id + "/";
+                        line = line.substring(tagIndex + 1);
+                    }
+
                     int underscoreIndex = line.indexOf('_');
                     if (underscoreIndex == -1) continue;
 
@@ -124,14 +460,21 @@ public class ParallelFactorDriver {
                     String csvLine = line.substring(underscoreIndex + 1).replace('\t', ',');
                     String shortName = dateStr.length() >= 4 ? dateStr.substring(dateStr.length() - 4) : dateStr;
 
-                    BufferedWriter writer = writers.get(shortName);
+                    BufferedWriter writer = writers.get(dir + shortName);
                     if (writer == null) {
-                        Path targetFile = new Path(localOutDir + "/" + shortName + ".csv");
+                        Path targetFile = new Path(localOutDir + "/" + dir + shortName + ".csv");
                         OutputStream os = localFs.create(targetFile, true);
                         writer = new BufferedWriter(new OutputStreamWriter(os), bufferSize);
-                        writer.write(header);
+                        writer.write(fileHeader);
                         writer.newLine();
-                        writers.put(shortName, writer);
+                        writers.put(dir + shortName, writer);
+                        sources.put(dir + shortName, file.getPath().getName());
+                    } else if (!sources.get(dir + shortName).equals(file.getPath().getName())
+                            && file.getPath().getName().startsWith("part-m-")) {
+                        for (BufferedWriter w : writers.values()) w.close();
+                        throw new IOException("Trading day " + dateStr + " is split across map tasks "
+                                + sources.get(dir + shortName) + " and " + file.getPath().getName()
+                                + ": --map-only needs one directory or file per trading day");
                     }
                     writer.write(csvLine);
                     writer.newLine();
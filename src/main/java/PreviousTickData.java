@@ -7,20 +7,28 @@ public class PreviousTickData {
     private long tradeTime;
     private long ap1;
     private long bp1;
-    long[] bv = new long[5];  // 前5档买单量（索引0-4）
-    long[] av = new long[5];  // 前5档卖单量（索引0-4）
+    long[] bv;  // 前N档买单量（索引0-(N-1)）
+    long[] av;  // 前N档卖单量（索引0-(N-1)）
 
-    public PreviousTickData() {}
+    public PreviousTickData() {
+        this(ColumnLayout.DEFAULT_DEPTH);
+    }
+
+    public PreviousTickData(int depth) {
+        bv = new long[depth];
+        av = new long[depth];
+    }
 
     public PreviousTickData(long tradeTime, long ap1, long bp1, long[] bv, long[] av) {
+        this(bv != null ? bv.length : ColumnLayout.DEFAULT_DEPTH);
         this.tradeTime = tradeTime;
         this.ap1 = ap1;
         this.bp1 = bp1;
-        if (bv != null && bv.length >= 5) {
-            System.arraycopy(bv, 0, this.bv, 0, 5);
+        if (bv != null) {
+            System.arraycopy(bv, 0, this.bv, 0, this.bv.length);
         }
-        if (av != null && av.length >= 5) {
-            System.arraycopy(av, 0, this.av, 0, 5);
+        if (av != null) {
+            System.arraycopy(av, 0, this.av, 0, Math.min(av.length, this.av.length));
         }
     }
 
@@ -35,31 +43,42 @@ public class PreviousTickData {
     public void setBp1(long bp1) { this.bp1 = bp1; }
 
     public long getBv(int index) {
-        if (index >= 0 && index < 5) return bv[index];
+        if (index >= 0 && index < bv.length) return bv[index];
         return 0;
     }
 
     public void setBv(int index, long value) {
-        if (index >= 0 && index < 5) bv[index] = value;
+        if (index >= 0 && index < bv.length) bv[index] = value;
     }
 
     public long getAv(int index) {
-        if (index >= 0 && index < 5) return av[index];
+        if (index >= 0 && index < av.length) return av[index];
         return 0;
     }
 
     public void setAv(int index, long value) {
-        if (index >= 0 && index < 5) av[index] = value;
+        if (index >= 0 && index < av.length) av[index] = value;
     }
 
 
+    /**
+     * 原地覆盖为当前 tick 的快照（对象复用，避免每笔 new）
+     */
+    public void update(TickData current) {
+        this.tradeTime = current.tradeTime;
+        this.ap1 = current.ap1;
+        this.bp1 = current.bp1;
+        System.arraycopy(current.bv, 1, this.bv, 0, this.bv.length);
+        System.arraycopy(current.av, 1, this.av, 0, this.av.length);
+    }
+
     public PreviousTickData deepCopy() {
-        PreviousTickData copy = new PreviousTickData();
+        PreviousTickData copy = new PreviousTickData(bv.length);
         copy.tradeTime = this.tradeTime;
         copy.ap1 = this.ap1;
         copy.bp1 = this.bp1;
-        System.arraycopy(this.bv, 0, copy.bv, 0, 5);
-        System.arraycopy(this.av, 0, copy.av, 0, 5);
+        System.arraycopy(this.bv, 0, copy.bv, 0, bv.length);
+        System.arraycopy(this.av, 0, copy.av, 0, av.length);
         return copy;
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+// [file name]: QuarantineWriter.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 坏行隔离输出：把格式错误的原始行 (带原因) 写到 Job 输出目录下的 quarantine/part-m-*，供事后排查。
+ *
+ * 令牌桶限速 (factor.quarantine.rate 行/秒，默认 100) 并限制每个任务的总行数 (factor.quarantine.max)，
+ * 脏数据源上也不会把时间花在写隔离文件上；超出的只计数 (QUARANTINE_DROPPED)。
+ * 多个工作线程可共享同一个实例 (write 加锁，只在坏行上发生)。
+ */
+public class QuarantineWriter {
+
+    public static final String CONF_ENABLED = "factor.quarantine.enabled";
+    public static final String CONF_RATE = "factor.quarantine.rate";
+    public static final String CONF_MAX = "factor.quarantine.max";
+
+    public static final String NAMED_OUTPUT = "quarantine";
+    public static final String DIR = "quarantine";
+
+    private static final byte[] TAB = {'\t'};
+
+    private final MultipleOutputs<?, ?> mos;
+    private final double rate;
+    private final long max;
+    private final Counter written;
+    private final Counter dropped;
+    private final Text line = new Text();
+
+    private double tokens;
+    private long lastNanos;
+    private long total;
+
+    private QuarantineWriter(TaskInputOutputContext<?, ?, ?, ?> context, double rate, long max) {
+        this.mos = new MultipleOutputs<>(context);
+        this.rate = rate;
+        this.max = max;
+        this.tokens = rate;   // 允许 1 秒的突发
+        this.lastNanos = System.nanoTime();
+        this.written = context.getCounter(TickLineParser.COUNTER_GROUP, "QUARANTINED");
+        this.dropped = context.getCounter(TickLineParser.COUNTER_GROUP, "QUARANTINE_DROPPED");
+    }
+
+    /**
+     * 提交前注册命名输出
+     */
+    public static void configure(Job job, double rate) {
+        Configuration conf = job.getConfiguration();
+        if (rate <= 0) {
+            conf.setBoolean(CONF_ENABLED, false);
+            return;
+        }
+        conf.setBoolean(CONF_ENABLED, true);
+        conf.setDouble(CONF_RATE, rate);
+        MultipleOutputs.addNamedOutput(job, NAMED_OUTPUT, TextOutputFormat.class, NullWritable.class, Text.class);
+    }
+
+    /**
+     * 未通过 configure 启用时返回 null
+     */
+    public static QuarantineWriter create(TaskInputOutputContext<?, ?, ?, ?> context) {
+        Configuration conf = context.getConfiguration();
+        if (!conf.getBoolean(CONF_ENABLED, false)) return null;
+        return new QuarantineWriter(context, conf.getDouble(CONF_RATE, 100), conf.getLong(CONF_MAX, 10000));
+    }
+
+    /**
+     * 隔离一行：输出 "原因\t原始行"
+     */
+    public synchronized void write(int status, byte[] buf, int start, int end) throws IOException, InterruptedException {
+        long now = System.nanoTime();
+        tokens = Math.min(rate, tokens + (now - lastNanos) * 1e-9 * rate);
+        lastNanos = now;
+        if (tokens < 1 || total >= max) {
+            dropped.increment(1);
+            return;
+        }
+        tokens -= 1;
+        total++;
+
+        byte[] reason = TickLineParser.STATUS_NAMES[status].getBytes(StandardCharsets.US_ASCII);
+        line.clear();
+        line.append(reason, 0, reason.length);
+        line.append(TAB, 0, 1);
+        line.append(buf, start, end - start);
+        mos.write(NAMED_OUTPUT, NullWritable.get(), line, DIR + "/part");
+        written.increment(1);
+    }
+
+    public synchronized void close() throws IOException, InterruptedException {
+        mos.close();
+    }
+}
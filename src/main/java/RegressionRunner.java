@@ -0,0 +1,327 @@
+// [file name]: RegressionRunner.java
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * 性能回归 + 精度门禁 (取代 test.py)：
+ * 用固定数据集跑一次 ParallelFactorDriver，记录耗时 / 吞吐 / 峰值内存到历史文件，
+ * 并按 test.py 的规则 (每个 alpha 在各交易日平均相对误差的均值 &lt; 1%) 并行比对标准答案。
+ * 精度不过或性能相对历史基线退化超过阈值时以非 0 退出。
+ * 性能基线只取标签 (--label，默认为传给 Driver 的选项) 与输入路径都相同的历史行，不同负载 / 参数的耗时互不比较。
+ */
+public class RegressionRunner {
+
+    private static final String HISTORY_HEADER =
+            "timestamp,label,wallMs,mapInputRecords,inputBytes,recordsPerSec,mbPerSec,peakHeapMb,maxAlphaErr,accuracyOk,perfOk,input";
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        List<String> driverOptions = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            if (isRunnerOption(name)) {
+                options.put(name, eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                driverOptions.add(arg); // 其余选项原样传给 ParallelFactorDriver
+            }
+        }
+
+        if (positional.size() < 3) {
+            System.err.println("Usage: RegressionRunner <workload-input> <golden-dir> <output-dir> [driver options...]");
+            System.err.println("Options: --history=<file> (default regression_history.csv) --label=<text>");
+            System.err.println("         --tolerance=0.01 --window=093000-145700");
+            System.err.println("         --max-slowdown=0.15 --max-heap-growth=0.25 --baseline-runs=5");
+            System.err.println("Baseline: median of the last passing runs in the history with the same label and workload input");
+            System.exit(2);
+        }
+
+        String input = positional.get(0);
+        Path golden = Paths.get(positional.get(1));
+        Path output = Paths.get(positional.get(2));
+        Path history = Paths.get(options.getOrDefault("history", "regression_history.csv"));
+        String label = options.getOrDefault("label", String.join(" ", driverOptions));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.01"));
+        double maxSlowdown = Double.parseDouble(options.getOrDefault("max-slowdown", "0.15"));
+        double maxHeapGrowth = Double.parseDouble(options.getOrDefault("max-heap-growth", "0.25"));
+        int baselineRuns = Integer.parseInt(options.getOrDefault("baseline-runs", "5"));
+        String[] window = options.getOrDefault("window", "093000-145700").split("-");
+
+        // 1. 跑固定负载
+        List<String> driverArgs = new ArrayList<>(Arrays.asList(input, output.toString()));
+        driverArgs.addAll(driverOptions);
+        long inputBytes = inputSize(input);
+        String inputKey = historyField(qualifiedInput(input));
+        String labelKey = historyField(label);
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long start = System.nanoTime();
+        Job job = ParallelFactorDriver.run(driverArgs.toArray(new String[0]));
+        long wallMs = (System.nanoTime() - start) / 1_000_000;
+        if (job == null) {
+            System.err.println("❌ Workload failed");
+            System.exit(1);
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) peakHeap += pool.getPeakUsage().getUsed();
+        long records = job.getCounters().findCounter(TaskCounter.MAP_INPUT_RECORDS).getValue();
+
+        double seconds = Math.max(wallMs, 1) / 1000.0;
+        double recordsPerSec = records / seconds;
+        double mbPerSec = inputBytes / 1048576.0 / seconds;
+        double peakHeapMb = peakHeap / 1048576.0;
+
+        // 2. 精度门禁
+        TreeMap<String, Double> alphaErrors = compareAll(golden, output, window[0], window[1]);
+        boolean accuracyOk = !alphaErrors.isEmpty();
+        double maxErr = 0;
+        System.out.println("=== Accuracy (mean relative error, tolerance " + tolerance + ") ===");
+        for (Map.Entry<String, Double> e : alphaErrors.entrySet()) {
+            boolean ok = e.getValue() < tolerance;   // NaN 也判为不通过
+            accuracyOk &= ok;
+            maxErr = Double.isNaN(e.getValue()) ? Double.NaN : Math.max(maxErr, e.getValue());
+            System.out.printf("%s: %s (%.6g)%n", e.getKey(), ok ? "True" : "False", e.getValue());
+        }
+
+        // 3. 性能门禁：与历史中同一标签、同一输入最近若干次通过的运行的中位数比较
+        List<String[]> previous = readHistory(history);
+        List<Double> baseWall = new ArrayList<>();
+        List<Double> baseHeap = new ArrayList<>();
+        for (int i = previous.size() - 1; i >= 0 && baseWall.size() < baselineRuns; i--) {
+            String[] row = previous.get(i);
+            if (row.length < 12 || !"true".equals(row[9]) || !"true".equals(row[10])) continue;
+            if (!labelKey.equals(row[1]) || !inputKey.equals(row[11])) continue;
+            baseWall.add(Double.parseDouble(row[2]));
+            baseHeap.add(Double.parseDouble(row[7]));
+        }
+        boolean perfOk = true;
+        System.out.println("=== Performance ===");
+        System.out.printf("wall=%d ms, records=%d, %.0f records/s, %.2f MB/s, peak heap=%.1f MB%n",
+                wallMs, records, recordsPerSec, mbPerSec, peakHeapMb);
+        if (!baseWall.isEmpty()) {
+            double wallBase = median(baseWall);
+            double heapBase = median(baseHeap);
+            double slowdown = wallMs / wallBase - 1;
+            double heapGrowth = peakHeapMb / heapBase - 1;
+            perfOk = slowdown <= maxSlowdown && heapGrowth <= maxHeapGrowth;
+            System.out.printf("baseline (median of %d): wall=%.0f ms (%+.1f%%, limit +%.0f%%), peak heap=%.1f MB (%+.1f%%, limit +%.0f%%)%n",
+                    baseWall.size(), wallBase, slowdown * 100, maxSlowdown * 100,
+                    heapBase, heapGrowth * 100, maxHeapGrowth * 100);
+        } else {
+            System.out.println("no passing baseline for this label and input in history yet, recording this run as the first one");
+        }
+
+        appendHistory(history, String.join(",",
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()),
+                labelKey,
+                Long.toString(wallMs), Long.toString(records), Long.toString(inputBytes),
+                String.format("%.1f", recordsPerSec), String.format("%.3f", mbPerSec),
+                String.format("%.1f", peakHeapMb), String.format("%.6g", maxErr),
+                Boolean.toString(accuracyOk), Boolean.toString(perfOk), inputKey));
+
+        System.out.println(accuracyOk && perfOk ? "✅ Regression check passed"
+                : "❌ Regression check failed (accuracy=" + accuracyOk + ", performance=" + perfOk + ")");
+        System.exit(accuracyOk && perfOk ? 0 : 1);
+    }
+
+    private static boolean isRunnerOption(String name) {
+        switch (name) {
+            case "history": case "label": case "tolerance": case "window":
+            case "max-slowdown": case "max-heap-growth": case "baseline-runs":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // ========== 精度比对 ==========
+
+    /**
+     * 按标准答案目录下的每个 MMDD.csv 并行比对，返回 列名 -> 各交易日平均相对误差的均值
+     */
+    static TreeMap<String, Double> compareAll(Path goldenDir, Path outputDir, String from, String to) throws Exception {
+        List<Path> days = new ArrayList<>();
+        try (Stream<Path> files = Files.list(goldenDir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".csv")).sorted().forEach(days::add);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(days.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Map<String, Double>>> futures = new ArrayList<>();
+            for (Path day : days) {
+                Path candidate = outputDir.resolve(day.getFileName());
+                futures.add(pool.submit(() -> compareDay(day, candidate, from, to)));
+            }
+            Map<String, List<Double>> perColumn = new TreeMap<>();
+            for (Future<Map<String, Double>> f : futures) {
+                for (Map.Entry<String, Double> e : f.get().entrySet()) {
+                    perColumn.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+                }
+            }
+            TreeMap<String, Double> result = new TreeMap<>(RegressionRunner::compareColumns);
+            for (Map.Entry<String, List<Double>> e : perColumn.entrySet()) {
+                double sum = 0;
+                for (double v : e.getValue()) sum += v;
+                result.put(e.getKey(), sum / e.getValue().size());
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 单个交易日：对标准答案的每一列，求窗口内各时刻 |std - test| / |std + 1e-7| 的平均；
+     * 缺文件 / 缺列 / 缺时刻记为 NaN (与 pandas 对齐后 NaN 判为不通过一致)
+     */
+    private static Map<String, Double> compareDay(Path golden, Path candidate, String from, String to) throws IOException {
+        Map<String, double[]> std = new HashMap<>();
+        String[] stdHeader = readCsv(golden, from, to, std);
+        Map<String, double[]> test = new HashMap<>();
+        String[] testHeader = Files.exists(candidate) ? readCsv(candidate, from, to, test) : new String[0];
+
+        Map<String, Double> errors = new HashMap<>();
+        for (int c = 1; c < stdHeader.length; c++) {
+            int tc = Arrays.asList(testHeader).indexOf(stdHeader[c]);
+            double sum = 0;
+            int n = 0;
+            for (Map.Entry<String, double[]> row : std.entrySet()) {
+                double[] t = test.get(row.getKey());
+                double s = row.getValue()[c];
+                double v = (tc < 1 || t == null || tc >= t.length) ? Double.NaN : t[tc];
+                sum += Math.abs(s - v) / Math.abs(s + 1e-7);
+                n++;
+            }
+            errors.put(stdHeader[c], n == 0 ? Double.NaN : sum / n);
+        }
+        return errors;
+    }
+
+    private static String[] readCsv(Path file, String from, String to, Map<String, double[]> rows) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) return new String[0];
+            String[] header = headerLine.split(",");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                String time = zeroPad(parts[0].trim());
+                if (time.compareTo(from) < 0 || time.compareTo(to) > 0) continue;
+                double[] values = new double[parts.length];
+                for (int i = 1; i < parts.length; i++) {
+                    try {
+                        values[i] = Double.parseDouble(parts[i]);
+                    } catch (NumberFormatException e) {
+                        values[i] = Double.NaN;
+                    }
+                }
+                rows.put(time, values);
+            }
+            return header;
+        }
+    }
+
+    private static String zeroPad(String time) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = time.length(); i < 6; i++) sb.append('0');
+        return sb.append(time).toString();
+    }
+
+    // alpha_2 排在 alpha_10 前面
+    private static int compareColumns(String a, String b) {
+        int ia = a.lastIndexOf('_'), ib = b.lastIndexOf('_');
+        if (ia > 0 && ib > 0 && a.substring(0, ia).equals(b.substring(0, ib))) {
+            try {
+                return Integer.compare(Integer.parseInt(a.substring(ia + 1)), Integer.parseInt(b.substring(ib + 1)));
+            } catch (NumberFormatException ignored) {
+                // 非数字后缀按字典序
+            }
+        }
+        return a.compareTo(b);
+    }
+
+    // ========== 历史记录 ==========
+
+    private static long inputSize(String input) throws IOException {
+        org.apache.hadoop.fs.Path path = new org.apache.hadoop.fs.Path(input);
+        return path.getFileSystem(new org.apache.hadoop.conf.Configuration()).getContentSummary(path).getLength();
+    }
+
+    private static String qualifiedInput(String input) throws IOException {
+        org.apache.hadoop.fs.Path path = new org.apache.hadoop.fs.Path(input);
+        return path.getFileSystem(new org.apache.hadoop.conf.Configuration()).makeQualified(path).toString();
+    }
+
+    // 历史文件以 ',' 分隔，字段里的 ',' 换成 ';'
+    private static String historyField(String value) {
+        return value.replace(',', ';');
+    }
+
+    private static List<String[]> readHistory(Path history) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        if (!Files.exists(history)) return rows;
+        for (String line : Files.readAllLines(history, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("timestamp,")) continue;
+            rows.add(line.split(","));
+        }
+        return rows;
+    }
+
+    private static void appendHistory(Path history, String row) throws IOException {
+        File parent = history.toAbsolutePath().getParent().toFile();
+        if (!parent.exists()) parent.mkdirs();
+        boolean fresh = !Files.exists(history);
+        try (BufferedWriter writer = Files.newBufferedWriter(history, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (fresh) {
+                writer.write(HISTORY_HEADER);
+                writer.newLine();
+            }
+            writer.write(row);
+            writer.newLine();
+        }
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int n = sorted.size();
+        return n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2;
+    }
+}
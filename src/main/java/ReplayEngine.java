@@ -0,0 +1,531 @@
+// [file name]: ReplayEngine.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 历史回放引擎：把原始文件里各股票的 tick 按全市场时间顺序回放，逐笔增量计算因子 (FactorEngine，
+ * 与整批作业相同的前一时刻逻辑)，再交给可插拔的策略回调 (Strategy)，用于在因子流上回测。
+ *
+ * 回放按交易日进行：当天每个 (交易日, 股票) 连续行段 (TickFileIndex.Run) 一个游标，各自内存映射对应的字节区间，
+ * 用小顶堆做 k 路归并 (按 秒 排序，同一秒内按文件 / run 顺序，结果确定)。
+ * 段内有序的 run (索引的 ordered 标记) 顺序读，整天的数据不进堆内存，每个游标只持有一小块 (8KB) 拷贝和一个 TickData；
+ * 无序的 run 整段拷进堆内存，按 (秒, 原顺序) 稳定排序后再参与归并，且总是从 run 开头读、读完整段
+ * (--cold 的检查点和 --to 的提前结束只对有序 run 成立)。
+ * 有 TickFileIndex 侧车时直接用其 run 列表，没有时先在内存里顺序扫一遍建立 (不写盘)。
+ * 只支持本地文件系统 (内存映射)。
+ *
+ * 命令行：
+ *   ReplayEngine &lt;input&gt; [--strategy=count|csv|&lt;class&gt;] [--codes=a,b] [--from=HHMMSS] [--to=HHMMSS] [--cold]
+ *                [--depth=N] [--rolling=spec] [--flow=list] [--turnover-scale=X] [--factors=1-3,20] [--sessions=file] [--accept-auction] [--sample=f]
+ * 默认策略 count 只统计笔数；csv 逐笔输出 tradingDay,code,tradeTime + 全部因子列。
+ * 与 TickFileIndex query 相同：默认从 run 开头预热状态，--from 之前的 tick 只更新状态不回调；
+ * --cold 直接从检查点开始 (只对段内有序的 run，无序 run 仍从开头读)。
+ */
+public class ReplayEngine {
+
+    public static final String CONF_STRATEGY = "factor.replay.strategy";
+
+    /**
+     * 策略回调。实现类需有无参构造；实现 Configurable 时会收到回放用的配置
+     */
+    public interface Strategy {
+        default void onDayStart(int tradingDay) throws IOException {
+        }
+
+        /**
+         * 每笔 tick 一次，按时间顺序；event 及其数组在回调返回后复用
+         */
+        void onTick(Event event) throws IOException;
+
+        default void onDayEnd(int tradingDay) throws IOException {
+        }
+
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * 交给策略的一笔 tick 与其因子 (factors 下标 1..width)
+     */
+    public static final class Event {
+        public int tradingDay;
+        public int tradeTime;
+        public int secondOfDay;
+        public String code;
+        public long stockKey;
+        public TickData tick;
+        public final double[] factors;
+        public final int width;
+
+        Event(int width) {
+            this.width = width;
+            this.factors = new double[width + 1];
+        }
+    }
+
+    private final Configuration conf;
+    private final FileSystem fs;
+    private final int depth;
+    private long ticks;
+    private long[] statusCounts = new long[TickLineParser.STATUS_NAMES.length];
+    private int unindexed;
+
+    public ReplayEngine(Configuration conf, FileSystem fs) {
+        this.conf = conf;
+        this.fs = fs;
+        this.depth = conf.getInt(ColumnLayout.CONF_DEPTH, ColumnLayout.DEFAULT_DEPTH);
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    /**
+     * 按交易日回放 input 下的所有数据文件
+     *
+     * @param codes 只回放这些股票 (null 为全部)
+     * @param from  早于此 HHMMSS 的 tick 只更新状态、不回调
+     * @param to    晚于此 HHMMSS 的 tick 不再读取
+     * @param cold  从不晚于 from 的检查点开始读，不从 run 开头预热 (无序 run 除外)
+     */
+    public void replay(Path input, Set<String> codes, int from, int to, boolean cold, Strategy strategy)
+            throws IOException {
+        // 交易日 → 当天的 (文件, run)；同一天内保持文件 / run 顺序
+        TreeMap<Integer, List<Source>> days = new TreeMap<>();
+        for (Path file : TickFileIndex.dataFiles(fs, input)) {
+            TickFileIndex index = TickFileIndex.read(fs, file);
+            if (index == null) {
+                index = TickFileIndex.build(fs, file, conf, TickFileIndex.DEFAULT_CHECKPOINT_EVERY);
+                unindexed++;
+            }
+            FileSource fileSource = null;
+            for (TickFileIndex.Run run : index.runs()) {
+                if (codes != null && !codes.contains(run.code)) continue;
+                if (fileSource == null) fileSource = new FileSource(file);
+                days.computeIfAbsent(run.tradingDay, d -> new ArrayList<>()).add(new Source(fileSource, run));
+            }
+        }
+
+        Event event = new Event(FactorSchema.width(conf));
+        try {
+            for (Map.Entry<Integer, List<Source>> day : days.entrySet()) {
+                replayDay(day.getKey(), day.getValue(), event, from, to, cold, strategy);
+            }
+        } finally {
+            for (List<Source> sources : days.values()) {
+                for (Source source : sources) source.file.close();
+            }
+        }
+    }
+
+    private void replayDay(int tradingDay, List<Source> sources, Event event,
+                           int from, int to, boolean cold, Strategy strategy) throws IOException {
+        strategy.onDayStart(tradingDay);
+        // 状态按 (股票, 交易日) 保存、不跨天，每天一个新引擎，前一天的状态不占槽位
+        FactorEngine engine = new FactorEngine(conf);
+
+        Cursor[] cursors = new Cursor[sources.size()];
+        int[] heap = new int[cursors.length];
+        int[] seconds = new int[cursors.length];    // 各游标当前 tick 的秒数 (堆比较只读这个数组)
+        int size = 0;
+        for (int i = 0; i < cursors.length; i++) {
+            Source source = sources.get(i);
+            long offset = cold && source.run.ordered ? source.run.seek(from) : source.run.start;
+            cursors[i] = new Cursor(source.file.parser(), source.file.map(offset, source.run.end), source.run.code, depth);
+            if (!source.run.ordered) cursors[i].sortRun(to);
+            if (cursors[i].advance(to)) {
+                seconds[i] = cursors[i].secondOfDay;
+                heap[size++] = i;
+            }
+        }
+        // 建堆
+        for (int i = size / 2 - 1; i >= 0; i--) siftDown(heap, size, i, seconds);
+
+        while (size > 0) {
+            Cursor c = cursors[heap[0]];
+            engine.compute(c.stockKey, c.tick, event.factors);
+            ticks++;
+            if (c.tradeTime >= from) {
+                event.tradingDay = c.tradingDay;
+                event.tradeTime = c.tradeTime;
+                event.secondOfDay = c.secondOfDay;
+                event.code = c.code;
+                event.stockKey = c.stockKey;
+                event.tick = c.tick;
+                strategy.onTick(event);
+            }
+            if (c.advance(to)) seconds[heap[0]] = c.secondOfDay;
+            else heap[0] = heap[--size];
+            siftDown(heap, size, 0, seconds);
+        }
+
+        for (Cursor c : cursors) c.release();
+        strategy.onDayEnd(tradingDay);
+    }
+
+    private static void siftDown(int[] heap, int size, int i, int[] seconds) {
+        int x = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(heap[child + 1], heap[child], seconds)) child++;
+            if (!before(heap[child], x, seconds)) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+
+    private static boolean before(int a, int b, int[] seconds) {
+        int sa = seconds[a];
+        int sb = seconds[b];
+        return sa < sb || (sa == sb && a < b);
+    }
+
+    // ========== 数据源 ==========
+
+    /**
+     * 一个数据文件：内存映射用的通道和按该文件表头构造的解析器
+     */
+    private final class FileSource {
+        final Path path;
+        private RandomAccessFile raf;
+        private FileChannel channel;
+        private TickLineParser parser;
+
+        FileSource(Path path) {
+            this.path = path;
+        }
+
+        TickLineParser parser() throws IOException {
+            if (parser == null) {
+                String header = TickFileIndex.readHeader(fs, path);
+                ColumnLayout layout = header.isEmpty() ? ColumnLayout.fromConf(conf) : ColumnLayout.fromHeader(header, depth, ColumnLayout.requiredColumns(conf));
+                parser = new TickLineParser(layout, SessionCalendar.fromConf(conf), StockSampler.fromConf(conf));
+            }
+            return parser;
+        }
+
+        MappedByteBuffer map(long start, long end) throws IOException {
+            if (channel == null) {
+                raf = new RandomAccessFile(localFile(path), "r");
+                channel = raf.getChannel();
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+
+        void close() throws IOException {
+            if (parser != null) {
+                for (int i = 0; i < statusCounts.length; i++) statusCounts[i] += parser.statusCounts[i];
+                parser = null;
+            }
+            if (raf != null) {
+                raf.close();
+                raf = null;
+                channel = null;
+            }
+        }
+    }
+
+    private File localFile(Path path) throws IOException {
+        if (fs instanceof LocalFileSystem) return ((LocalFileSystem) fs).pathToFile(path);
+        if (fs instanceof RawLocalFileSystem) return ((RawLocalFileSystem) fs).pathToFile(path);
+        throw new IOException("Replay memory-maps its input and needs a local path: " + path);
+    }
+
+    private static final class Source {
+        final FileSource file;
+        final TickFileIndex.Run run;
+
+        Source(FileSource file, TickFileIndex.Run run) {
+            this.file = file;
+            this.run = run;
+        }
+    }
+
+    /**
+     * 一个 run 的读取游标：从映射区间分块拷到自己的小缓冲区里找行、解析，解析结果保留到被堆顶取走
+     */
+    private static final class Cursor {
+        private static final int CHUNK = 8 * 1024;
+
+        private final TickLineParser parser;
+        private MappedByteBuffer data;
+        private byte[] chunk = new byte[CHUNK];
+        private int pos;
+        private int limit;
+        // 无序 run：chunk 是整段拷贝，order 是按 (秒, 原顺序) 排好的可用行号；null 表示顺序读
+        private int[] order;
+        private int[] lineStarts;
+        private int[] lineEnds;
+        private int next;
+        final String code;
+        final TickData tick;
+        int tradingDay;
+        int tradeTime;
+        int secondOfDay;
+        long stockKey;
+
+        Cursor(TickLineParser parser, MappedByteBuffer data, String code, int depth) {
+            this.parser = parser;
+            this.data = data;
+            this.code = code;
+            this.tick = new TickData(depth);
+        }
+
+        /**
+         * 无序 run：整段拷进堆内存，解析一遍记下不晚于 to 的可用行的位置和秒数，按 (秒, 原顺序) 稳定排序，
+         * 之后 advance 按排好的顺序逐行重新解析
+         */
+        void sortRun(int to) {
+            chunk = new byte[data.remaining()];
+            data.get(chunk);
+            pos = 0;
+            limit = chunk.length;
+            lineStarts = new int[64];
+            lineEnds = new int[64];
+            long[] keys = new long[64];
+            int n = 0;
+            while (pos < limit) {
+                int start = pos;
+                int end = start;
+                while (end < limit && chunk[end] != '\n') end++;
+                pos = end < limit ? end + 1 : limit;
+                if (end > start && chunk[end - 1] == '\r') end--;
+                if (parser.parse(chunk, start, end, tick) != TickLineParser.OK || parser.tradeTime > to) continue;
+                if (n == keys.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, n * 2);
+                    lineEnds = Arrays.copyOf(lineEnds, n * 2);
+                    keys = Arrays.copyOf(keys, n * 2);
+                }
+                lineStarts[n] = start;
+                lineEnds[n] = end;
+                keys[n] = ((long) parser.secondOfDay << 32) | n;
+                n++;
+            }
+            // 回放时这些行会重新解析一次，状态计数只记一次
+            parser.statusCounts[TickLineParser.OK] -= n;
+            Arrays.sort(keys, 0, n);
+            order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = (int) keys[i];
+        }
+
+        /**
+         * 读到下一笔可用的 tick；run 读完或超过 to 时返回 false
+         */
+        boolean advance(int to) {
+            if (order != null) {
+                if (next == order.length) return false;
+                int line = order[next++];
+                parser.parse(chunk, lineStarts[line], lineEnds[line], tick);
+                tradingDay = parser.tradingDay;
+                tradeTime = parser.tradeTime;
+                secondOfDay = parser.secondOfDay;
+                stockKey = parser.stockKey;
+                return true;
+            }
+            while (true) {
+                int start = pos;
+                int end = start;
+                while (end < limit && chunk[end] != '\n') end++;
+                if (end == limit && data.hasRemaining()) {
+                    // 行跨块：剩余部分挪到开头再从映射区间补满 (一行比块还长时扩容)
+                    int rest = limit - start;
+                    if (rest == chunk.length) chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                    System.arraycopy(chunk, start, chunk, 0, rest);
+                    int n = Math.min(chunk.length - rest, data.remaining());
+                    data.get(chunk, rest, n);
+                    pos = 0;
+                    limit = rest + n;
+                    continue;
+                }
+                if (start == limit) return false;
+                pos = end < limit ? end + 1 : limit;
+                if (end > start && chunk[end - 1] == '\r') end--;
+                if (parser.parse(chunk, start, end, tick) != TickLineParser.OK) continue;
+                if (parser.tradeTime > to) return false;
+                tradingDay = parser.tradingDay;
+                tradeTime = parser.tradeTime;
+                secondOfDay = parser.secondOfDay;
+                stockKey = parser.stockKey;
+                return true;
+            }
+        }
+
+        void release() {
+            data = null;
+            chunk = null;
+            order = null;
+        }
+    }
+
+    // ========== 内置策略 ==========
+
+    /**
+     * 只计数：每天输出笔数和股票数
+     */
+    public static class CountStrategy implements Strategy {
+        private final PrintStream out;
+        private final Set<String> codes = new HashSet<>();
+        private long dayTicks;
+
+        public CountStrategy() {
+            this(System.err);
+        }
+
+        public CountStrategy(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void onDayStart(int tradingDay) {
+            dayTicks = 0;
+            codes.clear();
+        }
+
+        @Override
+        public void onTick(Event event) {
+            dayTicks++;
+            codes.add(event.code);
+        }
+
+        @Override
+        public void onDayEnd(int tradingDay) {
+            out.printf(">>> %d: %d ticks, %d stocks%n", tradingDay, dayTicks, codes.size());
+        }
+    }
+
+    /**
+     * 逐笔输出 tradingDay,code,tradeTime,因子...
+     */
+    public static class CsvStrategy implements Strategy {
+        private final PrintStream out;
+        private byte[] buf = new byte[256];
+
+        public CsvStrategy() {
+            this(System.out);
+        }
+
+        public CsvStrategy(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void onTick(Event event) {
+            int need = 64 + event.code.length() + FastDecimal.MAX_FIXED6_LENGTH + event.width * 24;
+            if (buf.length < need) buf = new byte[need];
+            int n = FastDecimal.writeLong(event.tradingDay, buf, 0);
+            buf[n++] = ',';
+            for (int i = 0; i < event.code.length(); i++) buf[n++] = (byte) event.code.charAt(i);
+            buf[n++] = ',';
+            // HHMMSS 补足 6 位，与整批输出的 tradeTime 列一致
+            for (int i = 5, t = event.tradeTime; i >= 0; i--, t /= 10) buf[n + i] = (byte) ('0' + t % 10);
+            n += 6;
+            for (int i = 1; i <= event.width; i++) {
+                buf[n++] = ',';
+                n = FastDecimal.formatFixed6(event.factors[i], buf, n);
+            }
+            buf[n++] = '\n';
+            out.write(buf, 0, n);
+        }
+
+        @Override
+        public void close() {
+            out.flush();
+        }
+    }
+
+    static Strategy createStrategy(Configuration conf) throws IOException {
+        String name = conf.get(CONF_STRATEGY, "count");
+        if (name.equals("count")) return new CountStrategy();
+        if (name.equals("csv")) return new CsvStrategy();
+        try {
+            Class<? extends Strategy> cls = conf.getClassByName(name).asSubclass(Strategy.class);
+            return ReflectionUtils.newInstance(cls, conf);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unknown replay strategy: " + name, e);
+        }
+    }
+
+    // ========== 命令行 ==========
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        if (positional.size() != 1) {
+            System.err.println("Usage: ReplayEngine <input> [--strategy=count|csv|<class>] [--codes=a,b] [--from=HHMMSS] [--to=HHMMSS] [--cold]");
+            System.err.println("                    [--depth=N] [--rolling=spec] [--flow=list] [--turnover-scale=X] [--factors=1-3,20] [--sessions=file] [--accept-auction] [--sample=f]");
+            System.exit(2);
+        }
+
+        Configuration conf = new Configuration();
+        if (options.containsKey("strategy")) conf.set(CONF_STRATEGY, options.get("strategy"));
+        if (options.containsKey("depth")) conf.setInt(ColumnLayout.CONF_DEPTH, Integer.parseInt(options.get("depth")));
+        if (options.containsKey("rolling")) conf.set(RollingFactors.CONF_SPECS, options.get("rolling"));
+        if (options.containsKey("flow")) conf.set(FlowFactors.CONF_SPECS, options.get("flow"));
+        if (options.containsKey("turnover-scale")) conf.set(FlowFactors.CONF_TURNOVER_SCALE, options.get("turnover-scale"));
+        if (options.containsKey("factors")) conf.set(FactorSelection.CONF_SELECT, options.get("factors"));
+        if (options.containsKey("sessions")) conf.set(SessionCalendar.CONF_FILE, options.get("sessions"));
+        if (options.containsKey("accept-auction")) conf.setBoolean(SessionCalendar.CONF_ACCEPT_AUCTION, true);
+        if (options.containsKey("sample")) conf.set(StockSampler.CONF_FRACTION, options.get("sample"));
+        Set<String> codes = null;
+        if (options.containsKey("codes")) {
+            codes = new HashSet<>();
+            for (String code : options.get("codes").split(",")) {
+                if (!code.trim().isEmpty()) codes.add(code.trim());
+            }
+        }
+        int from = Integer.parseInt(options.getOrDefault("from", "0"));
+        int to = Integer.parseInt(options.getOrDefault("to", "999999"));
+
+        Path input = new Path(positional.get(0));
+        ReplayEngine replay = new ReplayEngine(conf, input.getFileSystem(conf));
+        Strategy strategy = createStrategy(conf);
+        if (strategy instanceof CsvStrategy) System.out.println("tradingDay,code," + FactorSchema.header(conf));
+
+        long t0 = System.nanoTime();
+        try {
+            replay.replay(input, codes, from, to, options.containsKey("cold"), strategy);
+        } finally {
+            strategy.close();
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        if (replay.unindexed > 0) {
+            System.err.printf(">>> %d data files have no (or a stale) index; built in memory ('TickFileIndex build' saves the scan)%n",
+                    replay.unindexed);
+        }
+        for (int i = 1; i < replay.statusCounts.length; i++) {
+            if (replay.statusCounts[i] > 0) System.err.printf(">>> %s: %d%n", TickLineParser.STATUS_NAMES[i], replay.statusCounts[i]);
+        }
+        System.err.printf(">>> Replayed %d ticks in %.2f s (%.2f M ticks/s)%n",
+                replay.ticks, seconds, replay.ticks / seconds / 1e6);
+    }
+}
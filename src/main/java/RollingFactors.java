@@ -0,0 +1,191 @@
+// [file name]: RollingFactors.java
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 滚动窗口时序因子：每只股票一段定长的原始类型环形缓冲，配合运行中的累加和，每 tick O(1) 更新。
+ *
+ * 配置 factor.rolling，逗号分隔的 "类型:窗口"：
+ * <pre>
+ *   chg:k    中间价 k 笔变动        mid(t) - mid(t-k)，不足 k 笔时为 0
+ *   ema:k    中间价指数均线         alpha = 2 / (k + 1)
+ *   std:k    中间价滚动标准差       最近 k 笔（总体标准差）
+ *   oisum:k  多档不平衡滚动和       最近 k 笔因子5之和
+ * </pre>
+ * 所有状态按 StockStateStore 的槽位号平铺在一维数组里，启动时一次分配，槽位用满时随 store 翻倍。
+ */
+public class RollingFactors {
+
+    public static final String CONF_SPECS = "factor.rolling";
+
+    private static final int CHG = 0, EMA = 1, STD = 2, OISUM = 3;
+    private static final String[] TYPE_NAMES = {"chg", "ema", "std", "oisum"};
+    private static final String[] COLUMN_PREFIX = {"mid_chg_", "mid_ema_", "mid_std_", "oi_sum_"};
+
+    private final int[] types;
+    private final int[] windows;
+    private final double[] emaAlpha;
+    private final int specCount;
+
+    private final int ringSize;      // 最大窗口 + 1
+    private double[] midRing;  // [slot * ringSize + i]
+    private double[] oiRing;
+    private int[] head;        // 每个槽位最新一笔在环中的位置
+    private int[] seen;        // 每个槽位已写入笔数 (封顶 ringSize)
+    private double[] midRef;   // 每只股票首笔中间价，std 用平移后的值累加以减小相消误差
+
+    private double[] sum;      // [slot * specCount + s]
+    private double[] sumSq;
+    private double[] ema;
+
+    private RollingFactors(List<int[]> specs, int slots) {
+        specCount = specs.size();
+        types = new int[specCount];
+        windows = new int[specCount];
+        emaAlpha = new double[specCount];
+        int maxWindow = 1;
+        for (int s = 0; s < specCount; s++) {
+            types[s] = specs.get(s)[0];
+            windows[s] = specs.get(s)[1];
+            emaAlpha[s] = 2.0 / (windows[s] + 1);
+            maxWindow = Math.max(maxWindow, windows[s]);
+        }
+        ringSize = maxWindow + 1;
+        midRing = new double[slots * ringSize];
+        oiRing = new double[slots * ringSize];
+        head = new int[slots];
+        seen = new int[slots];
+        midRef = new double[slots];
+        sum = new double[slots * specCount];
+        sumSq = new double[slots * specCount];
+        ema = new double[slots * specCount];
+    }
+
+    /**
+     * 按配置创建；未配置时返回 null
+     */
+    public static RollingFactors fromConf(Configuration conf, int slots) {
+        List<int[]> specs = parseSpecs(conf.get(CONF_SPECS, ""));
+        return specs.isEmpty() ? null : new RollingFactors(specs, slots);
+    }
+
+    public static List<String> columnNames(Configuration conf) {
+        List<String> names = new ArrayList<>();
+        for (int[] spec : parseSpecs(conf.get(CONF_SPECS, ""))) {
+            names.add(COLUMN_PREFIX[spec[0]] + spec[1]);
+        }
+        return names;
+    }
+
+    private static List<int[]> parseSpecs(String value) {
+        List<int[]> specs = new ArrayList<>();
+        for (String item : value.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) continue;
+            int colon = item.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid rolling factor spec (expected type:window): " + item);
+            }
+            String type = item.substring(0, colon);
+            int window = Integer.parseInt(item.substring(colon + 1));
+            int t = -1;
+            for (int i = 0; i < TYPE_NAMES.length; i++) {
+                if (TYPE_NAMES[i].equals(type)) t = i;
+            }
+            if (t < 0 || window < 1) {
+                throw new IllegalArgumentException("Invalid rolling factor spec: " + item);
+            }
+            specs.add(new int[]{t, window});
+        }
+        return specs;
+    }
+
+    public int count() {
+        return specCount;
+    }
+
+    /**
+     * 槽位被 (重新) 分配给一只新股票时调用
+     */
+    public void reset(int slot) {
+        head[slot] = 0;
+        seen[slot] = 0;
+        int base = slot * specCount;
+        for (int s = 0; s < specCount; s++) {
+            sum[base + s] = 0;
+            sumSq[base + s] = 0;
+            ema[base + s] = 0;
+        }
+    }
+
+    /**
+     * 槽位数扩到 slots (StockStateStore 扩容后调用)，已有槽位的状态不变
+     */
+    public void grow(int slots) {
+        midRing = Arrays.copyOf(midRing, slots * ringSize);
+        oiRing = Arrays.copyOf(oiRing, slots * ringSize);
+        head = Arrays.copyOf(head, slots);
+        seen = Arrays.copyOf(seen, slots);
+        midRef = Arrays.copyOf(midRef, slots);
+        sum = Arrays.copyOf(sum, slots * specCount);
+        sumSq = Arrays.copyOf(sumSq, slots * specCount);
+        ema = Arrays.copyOf(ema, slots * specCount);
+    }
+
+    /**
+     * 写入一笔新数据，并把各滚动因子写到 out[offset ...]
+     */
+    public void update(int slot, double mid, double oi, double[] out, int offset) {
+        int ringBase = slot * ringSize;
+        int n = seen[slot];
+        if (n == 0) midRef[slot] = mid;
+        int h = (n == 0) ? 0 : (head[slot] + 1) % ringSize;
+        midRing[ringBase + h] = mid;
+        oiRing[ringBase + h] = oi;
+        head[slot] = h;
+        if (n < ringSize) seen[slot] = ++n;
+
+        double x = mid - midRef[slot];
+        int base = slot * specCount;
+        for (int s = 0; s < specCount; s++) {
+            int k = windows[s];
+            // 窗口外那一笔 (k 笔之前) 在环中的位置；n > k 时才存在
+            int old = ringBase + (h - k + ringSize) % ringSize;
+            double value;
+            switch (types[s]) {
+                case CHG:
+                    value = (n > k) ? mid - midRing[old] : 0.0;
+                    break;
+                case EMA:
+                    double e = (n == 1) ? mid : ema[base + s] + emaAlpha[s] * (mid - ema[base + s]);
+                    ema[base + s] = e;
+                    value = e;
+                    break;
+                case STD:
+                    double sx = sum[base + s] + x;
+                    double sxx = sumSq[base + s] + x * x;
+                    if (n > k) {
+                        double ox = midRing[old] - midRef[slot];
+                        sx -= ox;
+                        sxx -= ox * ox;
+                    }
+                    sum[base + s] = sx;
+                    sumSq[base + s] = sxx;
+                    int w = Math.min(n, k);
+                    double var = (sxx - sx * sx / w) / w;
+                    value = var > 0 ? Math.sqrt(var) : 0.0;
+                    break;
+                default: // OISUM
+                    double so = sum[base + s] + oi;
+                    if (n > k) so -= oiRing[old];
+                    sum[base + s] = so;
+                    value = so;
+                    break;
+            }
+            out[offset + s] = value;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+// [file name]: SessionCalendar.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 交易时段日历：把配置中的时段规则编译成按"日内秒数"索引的查表数组，
+ * 热路径上只做一次数组访问，不再 String.format / substring / parseInt。
+ *
+ * 规则格式（每行一条，或用 ';' 分隔，'#' 开头为注释）：
+ * <pre>
+ *   &lt;market&gt; session &lt;HHMMSS&gt; &lt;HHMMSS&gt;            连续竞价时段（闭区间）
+ *   &lt;market&gt; auction &lt;HHMMSS&gt; &lt;HHMMSS&gt;            集合竞价时段（闭区间）
+ *   &lt;market&gt; halfday &lt;yyyyMMdd&gt; &lt;HHMMSS&gt; &lt;HHMMSS&gt; 半日市：当天连续竞价只保留该时段
+ *   &lt;market&gt; closed  &lt;yyyyMMdd&gt;                     休市日
+ * </pre>
+ * market 为 CSV 中 MIC 列的值（如 XSHG / XSHE），'*' 表示其它所有市场。
+ * 没有自己 session / auction 规则的市场 (如只写了 "XSHG closed 20240102") 沿用 '*' 的常规时段；
+ * '*' 的 halfday / closed 作用于所有市场 (包括单独配置了时段的市场)。
+ * 另可用 factor.time.range=HHMMSS-HHMMSS 只保留一个时间窗口 (与上述时段取交集，闭区间)。
+ */
+public class SessionCalendar {
+
+    public static final String CONF_SPEC = "factor.session.spec";
+    public static final String CONF_FILE = "factor.session.file";
+    public static final String CONF_ACCEPT_AUCTION = "factor.session.accept.auction";
+    public static final String CONF_TIME_RANGE = "factor.time.range";
+
+    public static final byte CONTINUOUS = 1;
+    public static final byte AUCTION = 2;
+    public static final int SECONDS_PER_DAY = 24 * 3600;
+
+    // 与原 Mapper 的过滤窗口保持一致：[09:30:00, 14:57:00]
+    public static final String DEFAULT_SPEC = "* session 093000 145700";
+
+    private static final String WILDCARD = "*";
+
+    private static final int MAX_CACHED = 64;
+    private static final Map<String, SessionCalendar> CACHE = new ConcurrentHashMap<>();
+
+    private final String[] markets;          // 下标 0 固定为 '*'
+    private final byte[][] tables;           // 每个市场的常规时段表
+    private final Map<Long, byte[]> dayTables = new HashMap<>(); // (market, day) -> 特殊交易日时段表
+    private final byte acceptMask;
+
+    private SessionCalendar(List<String> markets, List<byte[]> tables, byte acceptMask) {
+        this.markets = markets.toArray(new String[0]);
+        this.tables = tables.toArray(new byte[0][]);
+        this.acceptMask = acceptMask;
+    }
+
+    /**
+     * 从 Job 配置加载：优先读取 factor.session.file 指向的文件，其次 factor.session.spec，最后默认规则
+     */
+    public static SessionCalendar fromConf(Configuration conf) throws IOException {
+        String spec = conf.get(CONF_SPEC, DEFAULT_SPEC);
+        String file = conf.get(CONF_FILE);
+        if (file != null && !file.isEmpty()) {
+            spec = readSpecFile(conf, new Path(file));
+        }
+        boolean acceptAuction = conf.getBoolean(CONF_ACCEPT_AUCTION, false);
+        SessionCalendar calendar = parse(spec, acceptAuction);
+        int[] range = timeRange(conf);
+        return range == null ? calendar : calendar.restrict(range[0], range[1]);
+    }
+
+    /**
+     * factor.time.range 的 {起, 止} (HHMMSS，闭区间)；未配置返回 null
+     */
+    public static int[] timeRange(Configuration conf) {
+        String value = conf.getTrimmed(CONF_TIME_RANGE);
+        if (value == null || value.isEmpty()) return null;
+        int dash = value.indexOf('-');
+        int from = dash < 0 ? -1 : parseDigits(value, 0, dash);
+        int to = dash < 0 ? -1 : parseDigits(value, dash + 1, value.length());
+        if (secondsOfDay(from) < 0 || secondsOfDay(to) < 0 || from > to) {
+            throw new IllegalArgumentException("Time range must be HHMMSS-HHMMSS with start <= end: '" + value + "'");
+        }
+        return new int[]{from, to};
+    }
+
+    /**
+     * 只保留 [from, to] (HHMMSS) 内的时段，返回新的日历 (原日历被缓存共享，不修改)
+     */
+    public SessionCalendar restrict(int from, int to) {
+        int first = secondsOfDay(from);
+        int last = secondsOfDay(to);
+        List<byte[]> restricted = new ArrayList<>(tables.length);
+        for (byte[] table : tables) restricted.add(window(table, first, last));
+        SessionCalendar calendar = new SessionCalendar(Arrays.asList(markets), restricted, acceptMask);
+        for (Map.Entry<Long, byte[]> e : dayTables.entrySet()) {
+            calendar.dayTables.put(e.getKey(), window(e.getValue(), first, last));
+        }
+        return calendar;
+    }
+
+    private static byte[] window(byte[] table, int first, int last) {
+        byte[] copy = new byte[SECONDS_PER_DAY];
+        System.arraycopy(table, first, copy, first, last - first + 1);
+        return copy;
+    }
+
+    public static SessionCalendar defaultCalendar() {
+        return parse(DEFAULT_SPEC, false);
+    }
+
+    private static String readSpecFile(Configuration conf, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        StringBuilder sb = new StringBuilder();
+        try (FSDataInputStream in = fs.open(path);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析并编译规则；编译结果不可变，同一进程内按 (规则, 是否含集合竞价) 缓存复用
+     * (常驻的 FactorDaemon 里后续作业不再重新编译)
+     */
+    public static SessionCalendar parse(String spec, boolean acceptAuction) {
+        String key = (acceptAuction ? "A\n" : "C\n") + spec;
+        SessionCalendar cached = CACHE.get(key);
+        if (cached != null) return cached;
+        SessionCalendar calendar = compile(spec, acceptAuction);
+        if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+        CACHE.put(key, calendar);
+        return calendar;
+    }
+
+    private static SessionCalendar compile(String spec, boolean acceptAuction) {
+        List<String> marketNames = new ArrayList<>();
+        List<byte[]> marketTables = new ArrayList<>();
+        marketNames.add(WILDCARD);
+        marketTables.add(new byte[SECONDS_PER_DAY]);
+
+        // 半日市/休市规则要等常规时段全部编译完才能生成，先暂存
+        List<String[]> dayRules = new ArrayList<>();
+        // 有自己 session / auction 规则的市场
+        List<Boolean> ownSessions = new ArrayList<>();
+        ownSessions.add(true);
+
+        for (String raw : spec.split("[;\n]")) {
+            String rule = raw.trim();
+            if (rule.isEmpty() || rule.startsWith("#")) continue;
+            String[] t = rule.split("\\s+");
+            if (t.length < 3) {
+                throw new IllegalArgumentException("Invalid session rule: " + rule);
+            }
+            int m = marketNames.indexOf(t[0]);
+            if (m < 0) {
+                m = marketNames.size();
+                marketNames.add(t[0]);
+                marketTables.add(new byte[SECONDS_PER_DAY]);
+                ownSessions.add(false);
+            }
+            switch (t[1]) {
+                case "session":
+                    mark(marketTables.get(m), parseClock(t, 2), parseClock(t, 3), CONTINUOUS, rule);
+                    ownSessions.set(m, true);
+                    break;
+                case "auction":
+                    mark(marketTables.get(m), parseClock(t, 2), parseClock(t, 3), AUCTION, rule);
+                    ownSessions.set(m, true);
+                    break;
+                case "halfday":
+                case "closed":
+                    dayRules.add(t);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown session rule type: " + rule);
+            }
+        }
+
+        // 只出现在 halfday / closed 里的市场沿用 '*' 的常规时段
+        for (int m = 1; m < marketTables.size(); m++) {
+            if (!ownSessions.get(m)) marketTables.set(m, marketTables.get(0).clone());
+        }
+
+        byte acceptMask = acceptAuction ? CONTINUOUS | AUCTION : CONTINUOUS;
+        SessionCalendar calendar = new SessionCalendar(marketNames, marketTables, acceptMask);
+
+        for (String[] t : dayRules) {
+            int m = marketNames.indexOf(t[0]);
+            if (m == 0) {
+                // '*' 的特殊交易日作用于所有市场
+                for (int i = 0; i < marketNames.size(); i++) calendar.applyDayRule(i, t);
+            } else {
+                calendar.applyDayRule(m, t);
+            }
+        }
+        return calendar;
+    }
+
+    private void applyDayRule(int market, String[] t) {
+        if (t.length < 3) {
+            throw new IllegalArgumentException("Missing date in session rule: " + String.join(" ", t));
+        }
+        int day = parseDigits(t[2], 0, t[2].length());
+        if (day < 0) {
+            throw new IllegalArgumentException("Invalid date in session rule: " + String.join(" ", t));
+        }
+        long key = dayKey(market, day);
+        byte[] table = dayTables.get(key);
+        if (table == null) {
+            // 特殊交易日：清掉连续竞价标记，集合竞价保留
+            table = tables[market].clone();
+            for (int s = 0; s < SECONDS_PER_DAY; s++) table[s] &= ~CONTINUOUS;
+            dayTables.put(key, table);
+        }
+        if ("halfday".equals(t[1])) {
+            mark(table, parseClock(t, 3), parseClock(t, 4), CONTINUOUS, String.join(" ", t));
+        } else {
+            Arrays.fill(table, (byte) 0);
+        }
+    }
+
+    private static int parseClock(String[] tokens, int idx) {
+        if (idx >= tokens.length) {
+            throw new IllegalArgumentException("Missing time in session rule: " + String.join(" ", tokens));
+        }
+        int sec = secondsOfDay(parseDigits(tokens[idx], 0, tokens[idx].length()));
+        if (sec < 0) {
+            throw new IllegalArgumentException("Invalid time in session rule: " + tokens[idx]);
+        }
+        return sec;
+    }
+
+    private static void mark(byte[] table, int from, int to, byte flag, String rule) {
+        if (from > to) {
+            throw new IllegalArgumentException("Session start after end: " + rule);
+        }
+        for (int s = from; s <= to; s++) table[s] |= flag;
+    }
+
+    private static long dayKey(int market, int day) {
+        return ((long) market << 32) | (day & 0xFFFFFFFFL);
+    }
+
+    // ========== 热路径 API ==========
+
+    /**
+     * 根据 MIC 字段定位市场下标，逐字符比较，不产生临时对象；未配置的市场返回 0（'*'）
+     */
+    public int marketOf(CharSequence s, int start, int end) {
+        int len = end - start;
+        for (int m = 1; m < markets.length; m++) {
+            String name = markets[m];
+            if (name.length() != len) continue;
+            int i = 0;
+            while (i < len && name.charAt(i) == s.charAt(start + i)) i++;
+            if (i == len) return m;
+        }
+        return 0;
+    }
+
+    /**
+     * 同上，直接在原始字节 (ASCII) 上比较
+     */
+    public int marketOf(byte[] b, int start, int end) {
+        int len = end - start;
+        for (int m = 1; m < markets.length; m++) {
+            String name = markets[m];
+            if (name.length() != len) continue;
+            int i = 0;
+            while (i < len && name.charAt(i) == b[start + i]) i++;
+            if (i == len) return m;
+        }
+        return 0;
+    }
+
+    /**
+     * 取某市场某交易日的时段表；调用方应在 (market, day) 不变时缓存返回值
+     */
+    public byte[] tableFor(int market, int yyyymmdd) {
+        if (!dayTables.isEmpty()) {
+            byte[] special = dayTables.get(dayKey(market, yyyymmdd));
+            if (special != null) return special;
+        }
+        return tables[market];
+    }
+
+    public boolean accepts(byte[] table, int secondsOfDay) {
+        return secondsOfDay >= 0 && secondsOfDay < SECONDS_PER_DAY && (table[secondsOfDay] & acceptMask) != 0;
+    }
+
+    /**
+     * 该交易日任一市场在这一秒可交易 (含特殊交易日表)，非热路径
+     */
+    public boolean acceptsAny(int yyyymmdd, int secondsOfDay) {
+        for (int m = 0; m < markets.length; m++) {
+            if (accepts(tableFor(m, yyyymmdd), secondsOfDay)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 常规时段下任一市场可交易的最早/最晚秒数，用于按秒分配定长数组
+     */
+    public int firstAcceptedSecond() {
+        for (int s = 0; s < SECONDS_PER_DAY; s++) {
+            for (byte[] table : tables) if ((table[s] & acceptMask) != 0) return s;
+        }
+        return 0;
+    }
+
+    public int lastAcceptedSecond() {
+        for (int s = SECONDS_PER_DAY - 1; s >= 0; s--) {
+            for (byte[] table : tables) if ((table[s] & acceptMask) != 0) return s;
+        }
+        return SECONDS_PER_DAY - 1;
+    }
+
+    // ========== 时间工具（纯算术，无字符串分配） ==========
+
+    /**
+     * 解析 [start, end) 内的纯数字字段（如 "093000"、"20240102"），非数字或为空返回 -1
+     */
+    public static int parseDigits(CharSequence s, int start, int end) {
+        if (start >= end || end - start > 9) return -1;
+        int v = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    public static int parseDigits(byte[] b, int start, int end) {
+        if (start >= end || end - start > 9) return -1;
+        int v = 0;
+        for (int i = start; i < end; i++) {
+            int c = b[i];
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    /**
+     * HHMMSS 整数转日内秒数，非法时间返回 -1
+     */
+    public static int secondsOfDay(long hhmmss) {
+        if (hhmmss < 0) return -1;
+        int hour = (int) (hhmmss / 10000);
+        int minute = (int) (hhmmss / 100 % 100);
+        int second = (int) (hhmmss % 100);
+        if (hour > 23 || minute > 59 || second > 59) return -1;
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    public static int toHhmmss(int secondsOfDay) {
+        return secondsOfDay / 3600 * 10000 + secondsOfDay / 60 % 60 * 100 + secondsOfDay % 60;
+    }
+}
@@ -0,0 +1,167 @@
+// [file name]: SharedScanFactorMapper.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 多因子集共享扫描的 Mapper (见 FactorSets)：每行只切列 / 解析一次 (按最深的因子集)，
+ * 再交给每个因子集各自的 FactorEngine 和交易时段过滤，输出 key 带因子集标签 "&lt;id&gt;#day_time"。
+ *
+ * 共享解析器接受全天的行，时段过滤 (含集合竞价、半日市) 由各因子集自己的 SessionCalendar 完成。
+ */
+public class SharedScanFactorMapper extends Mapper<LongWritable, Text, Text, Writable> {
+
+    // 共享解析器的时段：全天，由各因子集自行过滤
+    private static final String ALL_DAY = "* session 000000 235959";
+
+    private FactorSets sets;
+    private TickLineParser parser;
+    private TickData currentTick;
+
+    // 每个因子集一份
+    private FactorEngine[] engines;
+    private SessionCalendar[] calendars;
+    private byte[][] sessionTables;
+    private int[] sessionMarkets;
+    private int[] sessionDays;
+    private double[][] factors;
+    private long[] accepted;
+    private long[] skippedSession;
+
+    private final Text outKey = new Text();
+    private final Text outValue = new Text();
+    private CompactFactorWritable compactValue;
+    private byte[] valueBuf;
+    private byte[] keyBuf = new byte[128];
+
+    private QuarantineWriter quarantine;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        sets = FactorSets.fromConf(conf);
+        if (sets == null) throw new IllegalStateException(FactorSets.CONF_SETS + " is not set");
+
+        String header = conf.get(ColumnLayout.CONF_HEADER);
+        int required = 0;
+        for (Configuration setConf : sets.confs) required |= ColumnLayout.requiredColumns(setConf);
+        ColumnLayout layout = header == null || header.isEmpty()
+                ? ColumnLayout.defaultLayout(sets.maxDepth(), required)
+                : ColumnLayout.fromHeader(header, sets.maxDepth(), required);
+        parser = new TickLineParser(layout, SessionCalendar.parse(ALL_DAY, true), StockSampler.fromConf(conf));
+        currentTick = new TickData(layout.depth);
+
+        int n = sets.size();
+        engines = new FactorEngine[n];
+        calendars = new SessionCalendar[n];
+        sessionTables = new byte[n][];
+        sessionMarkets = new int[n];
+        sessionDays = new int[n];
+        factors = new double[n][];
+        accepted = new long[n];
+        skippedSession = new long[n];
+        for (int s = 0; s < n; s++) {
+            engines[s] = new FactorEngine(sets.confs[s]);
+            calendars[s] = SessionCalendar.fromConf(sets.confs[s]);
+            sessionMarkets[s] = -1;
+            sessionDays[s] = -1;
+            factors[s] = new double[sets.widths[s] + 1];
+        }
+        if (CompactFactorWritable.enabled(conf)) compactValue = new CompactFactorWritable();
+        valueBuf = new byte[FastDecimal.MAX_FIXED6_LENGTH + sets.maxWidth() * 24];
+        quarantine = QuarantineWriter.create(context);
+    }
+
+    @Override
+    public void map(LongWritable key, Text value, Context context)
+            throws IOException, InterruptedException {
+
+        byte[] line = value.getBytes();
+        int status = parser.parse(line, 0, value.getLength(), currentTick);
+        if (status != TickLineParser.OK) {
+            if (quarantine != null && TickLineParser.isMalformed(status)) {
+                quarantine.write(status, line, 0, value.getLength());
+            }
+            return;
+        }
+
+        ColumnLayout layout = parser.layout;
+        int micStart = parser.fieldStart(layout.mic);
+        int micEnd = parser.fieldEnd(layout.mic);
+
+        for (int s = 0; s < engines.length; s++) {
+            // 各因子集自己的交易时段 (时段表按 市场 + 交易日 缓存)
+            SessionCalendar calendar = calendars[s];
+            int market = calendar.marketOf(line, micStart, micEnd);
+            if (market != sessionMarkets[s] || parser.tradingDay != sessionDays[s]) {
+                sessionTables[s] = calendar.tableFor(market, parser.tradingDay);
+                sessionMarkets[s] = market;
+                sessionDays[s] = parser.tradingDay;
+            }
+            if (!calendar.accepts(sessionTables[s], parser.secondOfDay)) {
+                skippedSession[s]++;
+                continue;
+            }
+            accepted[s]++;
+
+            double[] f = factors[s];
+            int width = sets.widths[s];
+            engines[s].compute(parser.stockKey, currentTick, f);
+
+            // Key: <id>#tradingDay_tradeTime
+            byte[] tag = sets.tag(s);
+            if (keyBuf.length < tag.length + 64) keyBuf = Arrays.copyOf(keyBuf, tag.length + 64);
+            System.arraycopy(tag, 0, keyBuf, 0, tag.length);
+            int n = copyField(line, layout.tradingDay, keyBuf, tag.length);
+            keyBuf[n++] = '_';
+            n = copyField(line, layout.tradeTime, keyBuf, n);
+            outKey.set(keyBuf, 0, n);
+
+            if (compactValue != null) {
+                compactValue.setValues(f, width);
+                context.write(outKey, compactValue);
+            } else {
+                int len = 0;
+                valueBuf[len++] = '1';
+                valueBuf[len++] = '|';
+                for (int i = 1; i <= width; i++) {
+                    len = FastDecimal.formatFixed6(f[i], valueBuf, len);
+                    if (i < width) valueBuf[len++] = ',';
+                }
+                outValue.set(valueBuf, 0, len);
+                context.write(outKey, outValue);
+            }
+        }
+    }
+
+    private int copyField(byte[] line, int col, byte[] dst, int pos) {
+        int start = parser.fieldStart(col);
+        int len = Math.min(parser.fieldEnd(col) - start, 31);
+        System.arraycopy(line, start, dst, pos, len);
+        return pos + len;
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        TickLineParser.reportCounters(parser.statusCounts, context);
+        long unchanged = 0;
+        for (FactorEngine engine : engines) unchanged += engine.unchangedTicks();
+        FactorEngine.reportUnchanged(unchanged, context);
+        for (int s = 0; s < sets.size(); s++) {
+            Counter c = context.getCounter(TickLineParser.COUNTER_GROUP, sets.ids[s] + ".PARSED");
+            c.increment(accepted[s]);
+            if (skippedSession[s] > 0) {
+                context.getCounter(TickLineParser.COUNTER_GROUP, sets.ids[s] + ".SKIP_SESSION").increment(skippedSession[s]);
+            }
+        }
+        if (quarantine != null) {
+            quarantine.close();
+        }
+    }
+}
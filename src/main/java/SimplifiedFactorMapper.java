@@ -1,29 +1,68 @@
 import org.apache.hadoop.io.*;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
 
-public class SimplifiedFactorMapper extends Mapper<LongWritable, Text, Text, Text> {
+public class SimplifiedFactorMapper extends Mapper<LongWritable, Text, Text, Writable> {
 
     // === 核心对象复用池 ===
-    private Map<String, PreviousTickData> prevDataCache;
+    // 每只股票的前一时刻 / 滚动窗口状态都在引擎内部的原始类型状态表里
+    private FactorEngine engine;
 
     private final Text outKey = new Text();
     private final Text outValue = new Text();
+    // factor.encoding=compact 时输出 float32 二进制值 (见 CompactFactorWritable)
+    private CompactFactorWritable compactValue;
 
     // 复用 TickData 对象 (注意：这里会使用外部的 TickData 类)
-    private final TickData currentTick = new TickData();
+    private TickData currentTick;
+    // 切列 + 交易时段过滤 + 填充 TickData，直接在 Text 的字节上完成
+    private TickLineParser parser;
 
-    private final double[] factors = new double[21];
-    private final StringBuilder sb = new StringBuilder(1024);
-    private final DecimalFormat df = new DecimalFormat("0.000000");
-    private final int[] commaIndices = new int[100];
+    private double[] factors;
+    private int width;
+    // 输出直接写进复用的字节缓冲 (格式与 DecimalFormat("0.000000") 一致，见 FastDecimal)
+    private byte[] valueBuf;
+    private final byte[] keyBuf = new byte[64];
+
+    // 坏行隔离输出 (null 表示关闭)
+    private QuarantineWriter quarantine;
+
+    // 可选：个股因子面板输出 (null 表示关闭)
+    private FactorPanelWriter panelWriter;
+
+    // 可选：分组截面聚合 (见 StockGroups，null 表示关闭)
+    private StockGroups groups;
+    private StockGroups.Aggregator groupAggregator;
+
+    // 可选：as-of 对齐模式 (见 AsOfAligner，null 表示关闭)，不再逐笔输出，cleanup 时输出每个网格点的局部和
+    private AsOfAligner aligner;
 
     @Override
-    protected void setup(Context context) {
-        prevDataCache = new HashMap<>(1024);
+    protected void setup(Context context) throws IOException, InterruptedException {
+        engine = new FactorEngine(context.getConfiguration());
+        width = engine.width();
+        factors = new double[width + 1];
+        if (CompactFactorWritable.enabled(context.getConfiguration())) compactValue = new CompactFactorWritable();
+        valueBuf = new byte[FastDecimal.MAX_FIXED6_LENGTH + width * 24];
+        parser = new TickLineParser(context.getConfiguration());
+        currentTick = new TickData(parser.layout.depth);
+        quarantine = QuarantineWriter.create(context);
+        if (context.getConfiguration().getBoolean(FactorPanelWriter.CONF_ENABLED, false)) {
+            // 写到任务工作目录，随任务提交一起落到 Job 输出目录下
+            Path panelRoot = new Path(FileOutputFormat.getWorkOutputPath(context), FactorPanelWriter.PANEL_DIR);
+            panelWriter = new FactorPanelWriter(context.getConfiguration(), panelRoot,
+                    context.getTaskAttemptID().getTaskID().toString(), width);
+        }
+        groups = StockGroups.fromContext(context);
+        if (groups != null) {
+            groupAggregator = groups.new Aggregator(width, SessionCalendar.fromConf(context.getConfiguration()), compactValue != null);
+        }
+        aligner = AsOfAligner.fromConf(context.getConfiguration(), width,
+                SessionCalendar.fromConf(context.getConfiguration()), StockSampler.enabled(context.getConfiguration()));
         System.out.println("=== 🚀 Zero-GC Mapper Initialized (Clean Split) ===");
     }
 
@@ -31,165 +70,97 @@ public class SimplifiedFactorMapper extends Mapper<LongWritable, Text, Text, Tex
     public void map(LongWritable key, Text value, Context context)
             throws IOException, InterruptedException {
 
-        String line = value.toString();
-
-        int commaCount = 0;
-        int len = line.length();
-        for (int i = 0; i < len; i++) {
-            if (line.charAt(i) == ',') {
-                commaIndices[commaCount++] = i;
-                if (commaCount >= 50) break;
+        byte[] line = value.getBytes();
+        int status = parser.parse(line, 0, value.getLength(), currentTick);
+        if (status != TickLineParser.OK) {
+            if (quarantine != null && TickLineParser.isMalformed(status)) {
+                quarantine.write(status, line, 0, value.getLength());
             }
+            return;
         }
 
-        if (commaCount < 36) return;
-
-        String tradingDay = line.substring(0, commaIndices[0]);
-        String timeStr = line.substring(commaIndices[0] + 1, commaIndices[1]);
-
-        if (Character.isLetter(tradingDay.charAt(0))) return;
+        engine.compute(parser.stockKey, currentTick, factors);
 
-        if (timeStr.compareTo("093000") < 0 || timeStr.compareTo("145700") > 0) return;
-
-        String stockCode = line.substring(commaIndices[3] + 1, commaIndices[4]);
-
-        long tradeTime;
-        try {
-            tradeTime = Long.parseLong(timeStr);
-        } catch (NumberFormatException e) {
-            return;
+        if (aligner != null) {
+            aligner.add(parser.stockKey, parser.tradingDay, parser.secondOfDay, factors);
+        } else {
+            writeTick(line, context);
         }
 
-        // 重置并填充 (调用外部 TickData 的 reset 方法)
-        currentTick.reset();
-        if (!fillTickDataFast(currentTick, line, commaIndices, tradeTime)) {
-            return;
+        ColumnLayout layout = parser.layout;
+        if (groupAggregator != null) {
+            int stock = groups.stockOf(line, parser.fieldStart(layout.code), parser.fieldEnd(layout.code));
+            groupAggregator.add(stock, parser.tradingDay, parser.secondOfDay, factors, context);
         }
 
-        String cacheKey = stockCode + "_" + tradingDay;
-        PreviousTickData prevData = prevDataCache.get(cacheKey);
-
-        calculateFactorsInPlace(factors, currentTick, prevData);
-
-        sb.setLength(0);
-        sb.append("1|");
-
-        for (int i = 1; i <= 20; i++) {
-            sb.append(df.format(factors[i]));
-            if (i < 20) sb.append(',');
+        if (panelWriter != null) {
+            panelWriter.append(fieldString(line, layout.tradingDay), fieldString(line, layout.code),
+                    parser.tradeTime, factors);
         }
-
-        outKey.set(tradingDay + "_" + timeStr);
-        outValue.set(sb.toString());
-        context.write(outKey, outValue);
-
-        updateCache(cacheKey, currentTick, tradeTime);
     }
 
-    private boolean fillTickDataFast(TickData data, String line, int[] cIdx, long tradeTimeVal) {
-        data.tradeTime = tradeTimeVal;
-        try {
-            data.last = parseLongFast(line, cIdx[7] + 1, cIdx[8]);
-            data.tBidVol = parseLongFast(line, cIdx[11] + 1, cIdx[12]);
-            data.tAskVol = parseLongFast(line, cIdx[12] + 1, cIdx[13]);
-
-            data.bp1 = parseLongFast(line, cIdx[16] + 1, cIdx[17]);
-            data.bv1 = parseLongFast(line, cIdx[17] + 1, cIdx[18]);
-            data.ap1 = parseLongFast(line, cIdx[18] + 1, cIdx[19]);
-            data.av1 = parseLongFast(line, cIdx[19] + 1, cIdx[20]);
-
-            for (int i = 1; i <= 5; i++) {
-                int baseCol = 17 + (i - 1) * 4;
-                data.bp[i] = parseLongFast(line, cIdx[baseCol-1] + 1, cIdx[baseCol]);
-                data.bv[i] = parseLongFast(line, cIdx[baseCol] + 1, cIdx[baseCol+1]);
-                data.ap[i] = parseLongFast(line, cIdx[baseCol+1] + 1, cIdx[baseCol+2]);
-                data.av[i] = parseLongFast(line, cIdx[baseCol+2] + 1, cIdx[baseCol+3]);
+    private void writeTick(byte[] line, Context context) throws IOException, InterruptedException {
+        // Key: tradingDay_tradeTime (原样取自行内字节)
+        ColumnLayout layout = parser.layout;
+        int n = copyField(line, layout.tradingDay, keyBuf, 0);
+        keyBuf[n++] = '_';
+        n = copyField(line, layout.tradeTime, keyBuf, n);
+        outKey.set(keyBuf, 0, n);
+
+        if (compactValue != null) {
+            compactValue.setValues(factors, width);
+            context.write(outKey, compactValue);
+        } else {
+            int len = 0;
+            valueBuf[len++] = '1';
+            valueBuf[len++] = '|';
+            for (int i = 1; i <= width; i++) {
+                if (len + FastDecimal.MAX_FIXED6_LENGTH > valueBuf.length) valueBuf = Arrays.copyOf(valueBuf, valueBuf.length * 2);
+                len = FastDecimal.formatFixed6(factors[i], valueBuf, len);
+                if (i < width) valueBuf[len++] = ',';
             }
-            return true;
-        } catch (Exception e) {
-            return false;
+            outValue.set(valueBuf, 0, len);
+            context.write(outKey, outValue);
         }
     }
 
-    private long parseLongFast(String line, int start, int end) {
-        if (start >= end) return 0L;
-        while (start < end && line.charAt(start) == ' ') start++;
-        if (start >= end) return 0L;
-        long result = 0;
-        for (int i = start; i < end; i++) {
-            char c = line.charAt(i);
-            if (c == '.') break;
-            if (c < '0' || c > '9') break;
-            result = result * 10 + (c - '0');
-        }
-        return result;
+    private int copyField(byte[] line, int col, byte[] dst, int pos) {
+        int start = parser.fieldStart(col);
+        int len = Math.min(parser.fieldEnd(col) - start, dst.length / 2 - 1);
+        System.arraycopy(line, start, dst, pos, len);
+        return pos + len;
     }
 
-    private void calculateFactorsInPlace(double[] f, TickData current, PreviousTickData prev) {
-        f[1] = calculateFactor1(current);
-        f[2] = calculateFactor2(current);
-        f[3] = calculateFactor3(current);
-        f[4] = calculateFactor4(current);
-        f[5] = calculateFactor5(current);
-        f[6] = calculateFactor6(current);
-        f[7] = calculateFactor7(current);
-        f[8] = calculateFactor8(f[6], f[7]);
-        f[9] = calculateFactor9(f[6], f[7]);
-        f[10] = calculateFactor10(current);
-
-        double vwapBid = calculateFactor11(current);
-        double vwapAsk = calculateFactor12(current);
-        f[11] = vwapBid;
-        f[12] = vwapAsk;
-        f[13] = calculateFactor13(current);
-        f[14] = vwapAsk - vwapBid;
-
-        f[15] = calculateFactor15(current);
-        f[16] = calculateFactor16(current);
-
-        f[17] = calculateFactor17(current, prev);
-        f[18] = calculateFactor18(current, prev);
-        f[19] = calculateFactor19(current, prev);
-        f[20] = calculateFactor20(current);
+    private String fieldString(byte[] line, int col) {
+        int start = parser.fieldStart(col);
+        return new String(line, start, parser.fieldEnd(col) - start, StandardCharsets.US_ASCII);
     }
 
-    // === 辅助计算逻辑 (保持不变) ===
-    private double calculateFactor1(TickData data) { return data.ap1 - data.bp1; }
-    private double calculateFactor2(TickData data) { double mid = (data.ap1 + data.bp1) / 2.0; return (data.ap1 - data.bp1) / (mid + 1e-7); }
-    private double calculateFactor3(TickData data) { return (data.ap1 + data.bp1) / 2.0; }
-    private double calculateFactor4(TickData data) { return (data.bv1 - data.av1) / (double)(data.bv1 + data.av1 + 1e-7); }
-    private double calculateFactor5(TickData data) { double b=0, a=0; for(int i=1;i<=5;i++){b+=data.bv[i]; a+=data.av[i];} return (b-a)/(b+a+1e-7); }
-    private double calculateFactor6(TickData data) { double s=0; for(int i=1;i<=5;i++) s+=data.bv[i]; return s; }
-    private double calculateFactor7(TickData data) { double s=0; for(int i=1;i<=5;i++) s+=data.av[i]; return s; }
-    private double calculateFactor8(double b, double a) { return b - a; }
-    private double calculateFactor9(double b, double a) { return b / (a + 1e-7); }
-    private double calculateFactor10(TickData data) { return (data.tBidVol - data.tAskVol)/(double)(data.tBidVol + data.tAskVol + 1e-7); }
-    private double calculateFactor11(TickData data) { double w=0, t=0; for(int i=1;i<=5;i++){w+=data.bp[i]*data.bv[i]; t+=data.bv[i];} return w/(t+1e-7); }
-    private double calculateFactor12(TickData data) { double w=0, t=0; for(int i=1;i<=5;i++){w+=data.ap[i]*data.av[i]; t+=data.av[i];} return w/(t+1e-7); }
-    private double calculateFactor13(TickData data) { double wb=0, wa=0, vb=0, va=0; for(int i=1;i<=5;i++){wb+=data.bp[i]*data.bv[i]; wa+=data.ap[i]*data.av[i]; vb+=data.bv[i]; va+=data.av[i];} return (wb+wa)/(vb+va+1e-7); }
-    private double calculateFactor15(TickData data) { double b=0, a=0; for(int i=1;i<=5;i++){b+=data.bv[i]; a+=data.av[i];} return (b-a)/5.0; }
-    private double calculateFactor16(TickData data) { double wb=0, wa=0; for(int i=1;i<=5;i++){double w=1.0/i; wb+=data.bv[i]*w; wa+=data.av[i]*w;} return (wb-wa)/(wb+wa+1e-7); }
-    private double calculateFactor17(TickData c, PreviousTickData p) { return (p==null)?0.0 : c.ap1 - p.getAp1(); }
-    private double calculateFactor18(TickData c, PreviousTickData p) { if(p==null)return 0.0; double cm=(c.ap1+c.bp1)/2.0; double pm=(p.getAp1()+p.getBp1())/2.0; return cm-pm; }
-    private double calculateFactor19(TickData c, PreviousTickData p) {
-        if(p==null)return 0.0;
-        double cr=calculateFactor9(calculateFactor6(c), calculateFactor7(c));
-        double pb=0, pa=0;
-        for(int i=0;i<5;i++){ pb+=p.getBv(i); pa+=p.getAv(i); }
-        double pr=pb/(pa+1e-7);
-        return cr-pr;
-    }
-    private double calculateFactor20(TickData d) { double s=d.ap1-d.bp1; double t=0; for(int i=1;i<=5;i++) t+=d.bv[i]+d.av[i]; return s/(t+1e-7); }
-
-    private void updateCache(String cacheKey, TickData current, long tradeTime) {
-        long[] bvArray = new long[5];
-        long[] avArray = new long[5];
-        for (int i = 0; i < 5; i++) {
-            bvArray[i] = current.bv[i + 1];
-            avArray[i] = current.av[i + 1];
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        TickLineParser.reportCounters(parser.statusCounts, context);
+        FactorEngine.reportUnchanged(engine.unchangedTicks(), context);
+        if (aligner != null) {
+            // 每个网格点的 (股票数, 和)，作为局部和交给 SingleDateReducer / CompactFactorReducer 合并
+            aligner.forEach((day, sec, count, sums, sqs, offset) -> {
+                outKey.set(SlotAggregator.slotKey(day, sec));
+                if (compactValue != null) {
+                    compactValue.setPartial(count, sums, sqs, offset, width);
+                    context.write(outKey, compactValue);
+                } else {
+                    outValue.set(SlotAggregator.formatPartial(count, sums, sqs, offset, width));
+                    context.write(outKey, outValue);
+                }
+            });
+        }
+        if (groupAggregator != null) {
+            groupAggregator.flush(context);
+        }
+        if (quarantine != null) {
+            quarantine.close();
+        }
+        if (panelWriter != null) {
+            panelWriter.close();
         }
-        PreviousTickData prevData = new PreviousTickData(tradeTime, current.ap1, current.bp1, bvArray, avArray);
-        prevDataCache.put(cacheKey, prevData);
-        if (prevDataCache.size() > 2000) prevDataCache.clear();
     }
 }
\ No newline at end of file
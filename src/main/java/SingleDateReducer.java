@@ -3,56 +3,140 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import java.io.IOException;
 import org.apache.hadoop.io.NullWritable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SingleDateReducer extends Reducer<Text, Text, Text, Text> {
 
+    private int width;
+    // 抽样模式：额外累加平方和，每个均值后输出一列标准误 (见 StockSampler)
+    private boolean stdErr;
+    private double[] sums;
+    private double[] sqs;
+    // 多因子集共享扫描 (见 FactorSets)：key 带因子集标签，列数按标签取，null 表示常规作业
+    private FactorSets sets;
+    // 分组聚合 (见 StockGroups)："<group>@" 开头的 key 多一列权重和，均值为 Σw·f / Σw
+    private boolean groups;
+    // 多分辨率 bar (见 FactorBars)，null 表示关闭
+    private FactorBars bars;
+
+    @Override
+    protected void setup(Context context) {
+        sets = FactorSets.fromConf(context.getConfiguration());
+        width = sets == null ? FactorSchema.width(context.getConfiguration()) : sets.maxWidth();
+        stdErr = StockSampler.enabled(context.getConfiguration());
+        groups = StockGroups.enabled(context.getConfiguration());
+        sums = new double[width + 2];
+        int[] barSizes = FactorBars.sizes(context.getConfiguration());
+        if (barSizes != null && sets == null) bars = new FactorBars(barSizes, width, stdErr);
+        sqs = stdErr ? new double[width + 1] : null;
+    }
+
+    private static int indexOf(byte[] buf, int from, int end, byte b) {
+        for (int i = from; i < end; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    // 逗号分隔的数值依次累加到 target[1..columns]；squares 非空时同时累加平方 (单笔记录的平方和)
+    private void addFields(byte[] buf, int start, int end, int columns, double[] target, double[] squares) {
+        int i = 1;
+        int fieldStart = start;
+        for (int p = start; p <= end && i <= columns; p++) {
+            if (p < end && buf[p] != ',') continue;
+            try {
+                double v = FastDecimal.parseDouble(buf, fieldStart, p);
+                target[i] += v;
+                if (squares != null) squares[i] += v * v;
+            } catch (NumberFormatException e) {
+                // 忽略格式错误
+            }
+            i++;
+            fieldStart = p + 1;
+        }
+    }
+
     @Override
     protected void reduce(Text key, Iterable<Text> values, Context context)
             throws IOException, InterruptedException {
 
         //String tradeTime = key.toString();
 
-        // 累加各因子值
-        double[] finalSums = new double[21];
+        // 累加各因子值 (数组按 key 复用)
+        double[] finalSums = sums;
+        double[] finalSqs = sqs;
+        Arrays.fill(finalSums, 0.0);
+        if (stdErr) Arrays.fill(finalSqs, 0.0);
         long finalCount = 0;
+        boolean groupKey = groups && StockGroups.isGroupKey(key.getBytes(), key.getLength());
+        int columns = groupKey ? width + 1 : width;
 
         for (Text value : values) {
-            String valStr = value.toString();
-            String[] parts = valStr.split("\\|");
-
-            if (parts.length == 2) {
-                // 1. 解析样本数量
-                long count = Long.parseLong(parts[0]);
-                finalCount += count;
-                // 2. 解析因子总和
-                String[] factorStrList = parts[1].split(",");
-                for (int i = 0; i < factorStrList.length && i < 20; i++) {
-                    try {
-                        // 直接累加传过来的“和”
-                        double sumVal = Double.parseDouble(factorStrList[i]);
-                        finalSums[i+1] += sumVal;
-                    } catch (NumberFormatException e) {
-                        // 忽略格式错误
-                    }
-                }
-            }
+            // 直接在 Text 的字节上切分 "count|sums[|sumSqs]"，逐条记录不创建 String
+            byte[] buf = value.getBytes();
+            int end = value.getLength();
+            int bar = indexOf(buf, 0, end, (byte) '|');
+            if (bar < 0) continue;
+
+            // 1. 解析样本数量
+            long count = FastDecimal.parseLong(buf, 0, bar);
+            finalCount += count;
+            // 2. 解析因子总和 (直接累加传过来的“和”)
+            int bar2 = indexOf(buf, bar + 1, end, (byte) '|');
+            boolean single = stdErr && bar2 < 0 && count == 1;
+            addFields(buf, bar + 1, bar2 < 0 ? end : bar2, columns, finalSums, single ? finalSqs : null);
+            // 3. Mapper 端已聚合的记录带平方和: "count|sums|sumSqs"
+            if (stdErr && bar2 >= 0) addFields(buf, bar2 + 1, end, columns, finalSqs, null);
         }
 
         // 如果没有有效数据，直接跳过
         if (finalCount == 0) return;
 
         // 3. 计算平均值并构建输出字符串
+        if (groupKey) {
+            context.write(new Text(formatWeightedLine(key.toString(), finalSums, width)), new Text(""));
+            return;
+        }
+        int keyWidth = FactorSets.widthOfKey(sets, key.getBytes(), key.getLength(), width);
+        String result = formatLine(key.toString(), finalCount, finalSums, finalSqs, keyWidth);
+        context.write(new Text(result), new Text(""));
+        if (bars != null) bars.add(key.getBytes(), key.getLength(), finalCount, finalSums, finalSqs, context);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (bars != null) bars.flush(context);
+    }
+
+    /**
+     * 输出格式: key,avg1,avg2... (sums / sqs 下标 1..width，sqs 非空时每个均值后跟标准误)
+     * Driver 读取后按 '_' 拆出日期，剩下的就是完整的 CSV 行
+     */
+    static String formatLine(String key, long count, double[] sums, double[] sqs, int width) {
         StringBuilder result = new StringBuilder();
-        result.append(key.toString());
-        // 输出格式: ,avg1,avg2... (注意最前面有个逗号)
-        // 这样 Driver 读取后，Key(Time) + Value(,avg...) 拼起来就是完整的 CSV 行
-        for (int i = 1; i <= 20; i++) {
-            double avg = finalSums[i] / finalCount;
+        result.append(key);
+        for (int i = 1; i <= width; i++) {
+            double avg = sums[i] / count;
             result.append(String.format(",%.6f", avg));
+            if (sqs != null) {
+                result.append(String.format(",%.6f", StockSampler.standardError(count, sums[i], sqs[i])));
+            }
         }
+        return result.toString();
+    }
 
-        context.write(new Text(result.toString()), new Text(""));
+    /**
+     * 加权均值行：sums[1..width] 为 Σw·f，sums[width + 1] 为 Σw
+     */
+    static String formatWeightedLine(String key, double[] sums, int width) {
+        StringBuilder result = new StringBuilder();
+        result.append(key);
+        double weight = sums[width + 1];
+        for (int i = 1; i <= width; i++) {
+            result.append(String.format(",%.6f", sums[i] / weight));
+        }
+        return result.toString();
     }
 }
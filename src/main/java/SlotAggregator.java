@@ -0,0 +1,152 @@
+// [file name]: SlotAggregator.java
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mapper 端的局部聚合：按 (交易日, 日内秒) 累加样本数和各因子之和。
+ * 每个交易日一块稠密数组，只覆盖交易时段 [firstSecond, lastSecond]，add 为 O(width) 且不分配对象。
+ * 输出格式与 LocalAggregator 一致 ("count|sum1,sum2,...")，SingleDateReducer 可直接合并。
+ */
+public class SlotAggregator {
+
+    private final int width;
+    private final int firstSecond;
+    private final int slots;
+    private final boolean squares;   // 是否同时累加平方和 (用于标准误)
+    private final Map<Integer, Day> days = new TreeMap<>();
+    private Day lastDay;
+
+    public SlotAggregator(int width, int firstSecond, int lastSecond) {
+        this(width, firstSecond, lastSecond, false);
+    }
+
+    public SlotAggregator(int width, int firstSecond, int lastSecond, boolean squares) {
+        this.width = width;
+        this.firstSecond = firstSecond;
+        this.slots = lastSecond - firstSecond + 1;
+        this.squares = squares;
+    }
+
+    private final class Day {
+        final int tradingDay;
+        final long[] counts = new long[slots];
+        final double[] sums = new double[slots * width];
+        final double[] sumSqs = squares ? new double[slots * width] : null;
+
+        Day(int tradingDay) {
+            this.tradingDay = tradingDay;
+        }
+    }
+
+    private Day day(int tradingDay) {
+        Day d = lastDay;
+        if (d == null || d.tradingDay != tradingDay) {
+            d = days.get(tradingDay);
+            if (d == null) {
+                d = new Day(tradingDay);
+                days.put(tradingDay, d);
+            }
+            lastDay = d;
+        }
+        return d;
+    }
+
+    /**
+     * 累加一笔：f[1..width]
+     */
+    public void add(int tradingDay, int secondOfDay, double[] f) {
+        int slot = secondOfDay - firstSecond;
+        if (slot < 0 || slot >= slots) return;
+        Day d = day(tradingDay);
+        d.counts[slot]++;
+        int base = slot * width;
+        for (int i = 0; i < width; i++) d.sums[base + i] += f[i + 1];
+        if (squares) {
+            for (int i = 0; i < width; i++) d.sumSqs[base + i] += f[i + 1] * f[i + 1];
+        }
+    }
+
+    /**
+     * 累加一个已聚合的 (count, sums, sumSqs) 到某个槽位：sums[offset .. offset+width)，
+     * sumSqs 可为 null
+     */
+    public void add(int tradingDay, int secondOfDay, long count, double[] sums, double[] sumSqs, int offset) {
+        int slot = secondOfDay - firstSecond;
+        if (slot < 0 || slot >= slots) return;
+        Day d = day(tradingDay);
+        d.counts[slot] += count;
+        int base = slot * width;
+        for (int i = 0; i < width; i++) d.sums[base + i] += sums[offset + i];
+        if (squares && sumSqs != null) {
+            for (int i = 0; i < width; i++) d.sumSqs[base + i] += sumSqs[offset + i];
+        }
+    }
+
+    /**
+     * 把另一个聚合器 (同样的 width / 时段) 合并进来
+     */
+    public void merge(SlotAggregator other) {
+        for (Day od : other.days.values()) {
+            for (int slot = 0; slot < slots; slot++) {
+                if (od.counts[slot] == 0) continue;
+                add(od.tradingDay, slot + firstSecond, od.counts[slot], od.sums, od.sumSqs, slot * width);
+            }
+        }
+    }
+
+    public interface Sink {
+        void accept(int tradingDay, int secondOfDay, long count, double[] sums, double[] sumSqs, int offset) throws IOException, InterruptedException;
+    }
+
+    /**
+     * 按 (交易日, 秒) 升序输出所有非空槽位
+     */
+    public void forEach(Sink sink) throws IOException, InterruptedException {
+        for (Day d : days.values()) {
+            for (int slot = 0; slot < slots; slot++) {
+                if (d.counts[slot] == 0) continue;
+                sink.accept(d.tradingDay, slot + firstSecond, d.counts[slot], d.sums, d.sumSqs, slot * width);
+            }
+        }
+    }
+
+    public void clear() {
+        days.clear();
+        lastDay = null;
+    }
+
+    public boolean isEmpty() {
+        return days.isEmpty();
+    }
+
+    /**
+     * Shuffle key：yyyyMMdd_HHMMSS (时间补齐 6 位)
+     */
+    public static String slotKey(int tradingDay, int secondOfDay) {
+        int hhmmss = SessionCalendar.toHhmmss(secondOfDay);
+        StringBuilder sb = new StringBuilder(16).append(tradingDay).append('_');
+        if (hhmmss < 100000) sb.append('0');
+        return sb.append(hhmmss).toString();
+    }
+
+    /**
+     * 局部和的文本格式 "count|sum1,sum2,..."，保留完整精度；
+     * sumSqs 非空时追加 "|sq1,sq2,..." (平方和，SingleDateReducer 用来算标准误)
+     */
+    public static String formatPartial(long count, double[] sums, double[] sumSqs, int offset, int width) {
+        StringBuilder sb = new StringBuilder(width * 20).append(count).append('|');
+        for (int i = 0; i < width; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(sums[offset + i]);
+        }
+        if (sumSqs != null) {
+            sb.append('|');
+            for (int i = 0; i < width; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(sumSqs[offset + i]);
+            }
+        }
+        return sb.toString();
+    }
+}
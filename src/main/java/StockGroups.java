@@ -0,0 +1,287 @@
+// [file name]: StockGroups.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分组截面聚合 (行业 / 指数成分 / 自定义篮子)：在全市场均值之外，同一次扫描里按组输出每秒均值。
+ *
+ * 分组文件每行 "code,group[,weight]"，一只股票可属于多个组 (写多行)，'#' 开头为注释；
+ * weight 缺省为 1 (等权)，填市值即为市值加权。组 ID 限 [A-Za-z0-9-]+。
+ * 文件经分布式缓存发给各 Mapper，载入为按股票的原始类型查找表：
+ * 代码 → 股票序号 (StockStateStore，交易日取 0)，再按序号取连续存放的 (组, 权重)。
+ *
+ * Mapper 端每笔 tick 按权重累加进所属各组的 SlotAggregator (width + 1 列，最后一列是权重和)，
+ * 换交易日和 cleanup 时输出局部和，key 形如 "&lt;group&gt;@tradingDay_tradeTime"；
+ * Reducer 对这类 key 用 Σw·f / Σw 求均值，Driver 落到 &lt;output&gt;/groups/&lt;group&gt;/MMDD.csv。
+ *
+ * 载入后的查找表只读，按 (路径, 修改时间, 长度) 缓存在进程内：本地作业的 Driver 校验和各 Mapper 共用一份，
+ * 常驻进程 (FactorDaemon) 里后续作业直接复用，文件改动后自动重新载入。
+ */
+public class StockGroups {
+
+    public static final String CONF_FILE = "factor.groups.file";
+    public static final String CACHE_NAME = "stock-groups";
+    public static final char TAG_SEPARATOR = '@';
+    public static final String DIR = "groups";
+
+    private static final int MAX_CACHED = 16;
+    private static final Map<String, StockGroups> CACHE = new ConcurrentHashMap<>();
+
+    public final String[] groups;
+    private final byte[][] tags;           // "<group>@" 的字节
+    private final StockStateStore stocks;  // 代码 → 股票序号
+    private final int[] memberStart;       // 股票 s 的成员关系为 [memberStart[s], memberStart[s + 1])
+    private final int[] memberGroup;
+    private final double[] memberWeight;
+
+    private StockGroups(String[] groups, StockStateStore stocks, int[] memberStart, int[] memberGroup, double[] memberWeight) {
+        this.groups = groups;
+        this.stocks = stocks;
+        this.memberStart = memberStart;
+        this.memberGroup = memberGroup;
+        this.memberWeight = memberWeight;
+        this.tags = new byte[groups.length][];
+        for (int g = 0; g < groups.length; g++) tags[g] = (groups[g] + TAG_SEPARATOR).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static boolean enabled(Configuration conf) {
+        String file = conf.get(CONF_FILE);
+        return file != null && !file.isEmpty();
+    }
+
+    /**
+     * 提交前：记录分组文件并加入分布式缓存 (任务工作目录里的链接名为 CACHE_NAME)
+     */
+    public static void configure(Job job, Path file) throws IOException {
+        Path qualified = file.getFileSystem(job.getConfiguration()).makeQualified(file);
+        job.getConfiguration().set(CONF_FILE, qualified.toString());
+        try {
+            job.addCacheFile(new URI(qualified.toUri().toString() + "#" + CACHE_NAME));
+        } catch (URISyntaxException e) {
+            throw new IOException("Bad groups file path: " + qualified, e);
+        }
+    }
+
+    /**
+     * 任务里载入：本地文件直接走进程内缓存 (本地作业 / 常驻进程)；
+     * 否则优先读分布式缓存在工作目录的本地副本，不存在时读原路径；未配置返回 null
+     */
+    public static StockGroups fromContext(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+        Configuration conf = context.getConfiguration();
+        if (!enabled(conf)) return null;
+        Path file = new Path(conf.get(CONF_FILE));
+        File local = new File(CACHE_NAME);
+        if (!"file".equals(file.toUri().getScheme()) && local.isFile()) {
+            try (InputStream in = new FileInputStream(local)) {
+                return parse(in, local.getPath());
+            }
+        }
+        return load(conf, file);
+    }
+
+    /**
+     * 读取并解析分组文件，按 (路径, 修改时间, 长度) 缓存在进程内
+     */
+    public static StockGroups load(Configuration conf, Path file) throws IOException {
+        FileSystem fs = file.getFileSystem(conf);
+        FileStatus status = fs.getFileStatus(file);
+        String key = status.getPath() + "@" + status.getModificationTime() + "/" + status.getLen();
+        StockGroups cached = CACHE.get(key);
+        if (cached != null) return cached;
+        StockGroups groups;
+        try (InputStream in = fs.open(file)) {
+            groups = parse(in, file.toString());
+        }
+        if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+        CACHE.put(key, groups);
+        return groups;
+    }
+
+    static StockGroups parse(InputStream in, String source) throws IOException {
+        Map<String, Integer> groupIds = new HashMap<>();
+        List<String> groupNames = new ArrayList<>();
+        List<String> codes = new ArrayList<>();
+        List<Integer> rowGroups = new ArrayList<>();
+        List<Double> rowWeights = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split(",");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IOException(source + ":" + lineNo + ": expected code,group[,weight]: " + line);
+            }
+            String code = parts[0].trim();
+            String group = parts[1].trim();
+            if (code.isEmpty() || !group.matches("[A-Za-z0-9-]+")) {
+                throw new IOException(source + ":" + lineNo + ": group id must be [A-Za-z0-9-]+: " + line);
+            }
+            double weight = 1.0;
+            if (parts.length == 3) {
+                try {
+                    weight = Double.parseDouble(parts[2].trim());
+                } catch (NumberFormatException e) {
+                    weight = Double.NaN;
+                }
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                    throw new IOException(source + ":" + lineNo + ": weight must be a positive number: " + line);
+                }
+            }
+            Integer id = groupIds.get(group);
+            if (id == null) {
+                id = groupNames.size();
+                groupIds.put(group, id);
+                groupNames.add(group);
+            }
+            codes.add(code);
+            rowGroups.add(id);
+            rowWeights.add(weight);
+        }
+
+        // 代码 → 序号，再按序号把成员关系排成连续区间
+        int rows = codes.size();
+        StockStateStore stocks = new StockStateStore(Math.max(rows, 1));
+        int[] stockOfRow = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            String code = codes.get(r);
+            stockOfRow[r] = stocks.slotOf(StockStateStore.stockKey(code, 0, code.length(), 0));
+        }
+        int[] start = new int[stocks.size() + 1];
+        for (int r = 0; r < rows; r++) start[stockOfRow[r] + 1]++;
+        for (int s = 0; s < stocks.size(); s++) start[s + 1] += start[s];
+        int[] fill = start.clone();
+        int[] group = new int[rows];
+        double[] weight = new double[rows];
+        for (int r = 0; r < rows; r++) {
+            int k = fill[stockOfRow[r]]++;
+            group[k] = rowGroups.get(r);
+            weight[k] = rowWeights.get(r);
+        }
+        return new StockGroups(groupNames.toArray(new String[0]), stocks, start, group, weight);
+    }
+
+    public int size() {
+        return groups.length;
+    }
+
+    /**
+     * 代码字节 b[start, end) 的股票序号，不在分组文件里返回 -1
+     */
+    public int stockOf(byte[] b, int start, int end) {
+        return stocks.find(StockStateStore.stockKey(b, start, end, 0));
+    }
+
+    public byte[] tag(int group) {
+        return tags[group];
+    }
+
+    /**
+     * shuffle key 是否是分组 key ("&lt;group&gt;@...")
+     */
+    public static boolean isGroupKey(byte[] key, int length) {
+        for (int i = 0; i < length; i++) {
+            if (key[i] == TAG_SEPARATOR) return true;
+        }
+        return false;
+    }
+
+    // ========== Mapper 端累加 ==========
+
+    /**
+     * 每组一个 SlotAggregator (按需创建)；只保留当前交易日，换日时先把上一天的局部和输出
+     */
+    public final class Aggregator {
+        private final int width;
+        private final int firstSecond;
+        private final int lastSecond;
+        private final SlotAggregator[] slots;
+        private final double[] weighted;
+        private int currentDay = -1;
+
+        private final Text outKey = new Text();
+        private final Text outValue = new Text();
+        private final CompactFactorWritable compactValue;
+        private byte[] keyBuf = new byte[64];
+
+        public Aggregator(int width, SessionCalendar calendar, boolean compact) {
+            this.width = width;
+            this.firstSecond = calendar.firstAcceptedSecond();
+            this.lastSecond = calendar.lastAcceptedSecond();
+            this.slots = new SlotAggregator[groups.length];
+            this.weighted = new double[width + 2];
+            this.compactValue = compact ? new CompactFactorWritable() : null;
+        }
+
+        /**
+         * 累加一笔：stock 为 stockOf 的结果 (-1 直接忽略)，f[1..width]
+         */
+        public void add(int stock, int tradingDay, int secondOfDay, double[] f,
+                        TaskInputOutputContext<?, ?, Text, Writable> context) throws IOException, InterruptedException {
+            if (stock < 0) return;
+            if (tradingDay != currentDay) {
+                flush(context);
+                currentDay = tradingDay;
+            }
+            for (int k = memberStart[stock]; k < memberStart[stock + 1]; k++) {
+                int g = memberGroup[k];
+                double w = memberWeight[k];
+                for (int i = 1; i <= width; i++) weighted[i] = w * f[i];
+                weighted[width + 1] = w;
+                SlotAggregator agg = slots[g];
+                if (agg == null) agg = slots[g] = new SlotAggregator(width + 1, firstSecond, lastSecond);
+                agg.add(tradingDay, secondOfDay, weighted);
+            }
+        }
+
+        /**
+         * 输出并清空所有组的局部和
+         */
+        public void flush(TaskInputOutputContext<?, ?, Text, Writable> context) throws IOException, InterruptedException {
+            for (int g = 0; g < slots.length; g++) {
+                SlotAggregator agg = slots[g];
+                if (agg == null || agg.isEmpty()) continue;
+                byte[] tag = tags[g];
+                agg.forEach((day, sec, count, sums, sumSqs, offset) -> {
+                    byte[] slot = SlotAggregator.slotKey(day, sec).getBytes(StandardCharsets.US_ASCII);
+                    if (keyBuf.length < tag.length + slot.length) keyBuf = new byte[tag.length + slot.length];
+                    System.arraycopy(tag, 0, keyBuf, 0, tag.length);
+                    System.arraycopy(slot, 0, keyBuf, tag.length, slot.length);
+                    outKey.set(keyBuf, 0, tag.length + slot.length);
+                    if (compactValue != null) {
+                        compactValue.setPartial(count, sums, null, offset, width + 1);
+                        context.write(outKey, compactValue);
+                    } else {
+                        outValue.set(SlotAggregator.formatPartial(count, sums, null, offset, width + 1));
+                        context.write(outKey, outValue);
+                    }
+                });
+                agg.clear();
+            }
+        }
+    }
+}
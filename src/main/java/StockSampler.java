@@ -0,0 +1,69 @@
+// [file name]: StockSampler.java
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * 按股票代码哈希的确定性抽样：同一代码在任何交易日、任何 Mapper 上的去留都一样，
+ * 抽中的股票保留完整的时间序列，前一档口 / 滚动窗口因子不受影响。
+ *
+ * 启用后 (fraction &lt; 1) 输出在每个 alpha 后追加一列 "_se"，即该秒截面均值的标准误。
+ */
+public class StockSampler {
+
+    public static final String CONF_FRACTION = "factor.sample.fraction";
+
+    private final double fraction;
+    private final long threshold;   // 哈希高 53 位小于该值则抽中
+
+    public StockSampler(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("Sample fraction must be in (0, 1]: " + fraction);
+        }
+        this.fraction = fraction;
+        this.threshold = (long) Math.ceil(fraction * (1L << 53));
+    }
+
+    /**
+     * 未配置或 fraction = 1 时返回 null (不抽样)
+     */
+    public static StockSampler fromConf(Configuration conf) {
+        return enabled(conf) ? new StockSampler(fraction(conf)) : null;
+    }
+
+    public static boolean enabled(Configuration conf) {
+        return fraction(conf) < 1.0;
+    }
+
+    private static double fraction(Configuration conf) {
+        return conf.getDouble(CONF_FRACTION, 1.0);
+    }
+
+    public double fraction() {
+        return fraction;
+    }
+
+    /**
+     * 代码字节 b[start, end) 是否在样本内
+     */
+    public boolean accepts(byte[] b, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= (b[i] & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        // FNV 低位分布差，再做一次 64 位混合
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (h >>> 11) < threshold;
+    }
+
+    /**
+     * 截面均值的标准误：sqrt(样本方差 / n)，n &lt; 2 时为 0
+     */
+    public static double standardError(long n, double sum, double sumSq) {
+        if (n < 2) return 0.0;
+        double mean = sum / n;
+        double var = (sumSq - mean * sum) / (n - 1);
+        return var > 0 ? Math.sqrt(var / n) : 0.0;
+    }
+}
@@ -0,0 +1,155 @@
+// [file name]: StockStateStore.java
+import java.util.Arrays;
+
+/**
+ * 按股票的原始类型状态存储：把 (股票, 交易日) 编码成 long，开放寻址映射到固定的槽位号，
+ * 各类状态（前一档口、滚动窗口等）用槽位号去索引自己的数组，热路径上不分配对象。
+ *
+ * 槽位号从 0 起连续分配；用满时容量翻倍 (已有槽位号不变，不丢状态)，
+ * 调用方通过 {@link #created()} 得知槽位是新分配的，需要重置对应状态，
+ * 槽位号超出自己数组长度时按 {@link #capacity()} 扩容。
+ */
+public class StockStateStore {
+
+    private int capacity;
+    private long[] keys;
+    private int[] slots;         // -1 表示空位
+    private int mask;
+    private int size = 0;
+    private boolean created;
+
+    public StockStateStore(int capacity) {
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        this.keys = new long[tableSize];
+        this.slots = new int[tableSize];
+        this.mask = tableSize - 1;
+        Arrays.fill(slots, -1);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查找或分配 key 对应的槽位
+     */
+    public int slotOf(long key) {
+        int pos = mix(key) & mask;
+        while (slots[pos] >= 0) {
+            if (keys[pos] == key) {
+                created = false;
+                return slots[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        if (size == capacity) {
+            grow();
+            pos = mix(key) & mask;
+            while (slots[pos] >= 0) pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        slots[pos] = size;
+        created = true;
+        return size++;
+    }
+
+    /**
+     * 只查不插，不存在返回 -1
+     */
+    public int find(long key) {
+        int pos = mix(key) & mask;
+        while (slots[pos] >= 0) {
+            if (keys[pos] == key) return slots[pos];
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 上一次 slotOf 是否新分配了槽位
+     */
+    public boolean created() {
+        return created;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        capacity = Math.max(1, capacity * 2);
+        int tableSize = oldSlots.length * 2;
+        keys = new long[tableSize];
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] < 0) continue;
+            int pos = mix(oldKeys[i]) & mask;
+            while (slots[pos] >= 0) pos = (pos + 1) & mask;
+            keys[pos] = oldKeys[i];
+            slots[pos] = oldSlots[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(slots, -1);
+        size = 0;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 股票代码 + 交易日 编码为 long：
+     * 纯数字代码 (≤9 位) 直接拼接，其它代码走 64 位 FNV-1a 哈希并置最高位区分。
+     */
+    public static long stockKey(CharSequence s, int start, int end, int tradingDay) {
+        int len = end - start;
+        if (len > 0 && len <= 9) {
+            long code = 0;
+            int i = start;
+            while (i < end) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') break;
+                code = code * 10 + (c - '0');
+                i++;
+            }
+            if (i == end) return ((long) tradingDay << 32) | code;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= tradingDay * 0x9E3779B97F4A7C15L;
+        return h | Long.MIN_VALUE;
+    }
+
+    public static long stockKey(byte[] b, int start, int end, int tradingDay) {
+        int len = end - start;
+        if (len > 0 && len <= 9) {
+            long code = 0;
+            int i = start;
+            while (i < end) {
+                int c = b[i];
+                if (c < '0' || c > '9') break;
+                code = code * 10 + (c - '0');
+                i++;
+            }
+            if (i == end) return ((long) tradingDay << 32) | code;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= (b[i] & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        h ^= tradingDay * 0x9E3779B97F4A7C15L;
+        return h | Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,67 @@
+// [file name]: TickBlock.java
+/**
+ * 一批 tick 的盘口，按列 (struct-of-arrays) 存放：bv[level][tick]，供 BatchDepthKernel 跨 tick 批量聚合。
+ * 聚合结果同样按 tick 存放在 bidDepth[tick] 等数组里。块和数组按线程复用。
+ */
+public final class TickBlock {
+
+    public final int depth;
+    public final int capacity;
+    public final long[][] bp, bv, ap, av;   // [档位 1..depth][tick]
+
+    // BatchDepthKernel 的输出，语义同 DepthKernels.Aggregates
+    public final double[] bidDepth, askDepth;
+    public final double[] bidNotional, askNotional;
+    public final double[] bidWeighted, askWeighted;
+
+    public int size;
+
+    public TickBlock(int depth, int capacity) {
+        this.depth = depth;
+        this.capacity = capacity;
+        bp = new long[depth + 1][capacity];
+        bv = new long[depth + 1][capacity];
+        ap = new long[depth + 1][capacity];
+        av = new long[depth + 1][capacity];
+        bidDepth = new double[capacity];
+        askDepth = new double[capacity];
+        bidNotional = new double[capacity];
+        askNotional = new double[capacity];
+        bidWeighted = new double[capacity];
+        askWeighted = new double[capacity];
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * 追加一笔的前 depth 档，返回其在块内的下标
+     */
+    public int add(TickData d) {
+        int t = size++;
+        for (int l = 1; l <= depth; l++) {
+            bp[l][t] = d.bp[l];
+            bv[l][t] = d.bv[l];
+            ap[l][t] = d.ap[l];
+            av[l][t] = d.av[l];
+        }
+        return t;
+    }
+
+    /**
+     * 第 t 笔的聚合结果
+     */
+    public void aggregatesOf(int t, DepthKernels.Aggregates agg) {
+        agg.bidDepth = bidDepth[t];
+        agg.askDepth = askDepth[t];
+        agg.bidNotional = bidNotional[t];
+        agg.askNotional = askNotional[t];
+        agg.bidWeighted = bidWeighted[t];
+        agg.askWeighted = askWeighted[t];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
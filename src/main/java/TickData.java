@@ -6,11 +6,22 @@ public class TickData {
     public long ap1, av1;  // 卖一价量
     public long bp1, bv1;  // 买一价量
 
-    // 前5档数据（索引1-5）
-    public long[] bp = new long[6];  // 买1-5价（索引1-5使用）
-    public long[] bv = new long[6];  // 买1-5量
-    public long[] ap = new long[6];  // 卖1-5价
-    public long[] av = new long[6];  // 卖1-5量
+    // 前N档数据（索引1-N，默认N=5）
+    public long[] bp;  // 买1-N价（索引1-N使用）
+    public long[] bv;  // 买1-N量
+    public long[] ap;  // 卖1-N价
+    public long[] av;  // 卖1-N量
+
+    public TickData() {
+        this(ColumnLayout.DEFAULT_DEPTH);
+    }
+
+    public TickData(int depth) {
+        bp = new long[depth + 1];
+        bv = new long[depth + 1];
+        ap = new long[depth + 1];
+        av = new long[depth + 1];
+    }
 
     // 全市场总量
     public long tBidVol;  // 全市场买单总量
@@ -18,10 +29,18 @@ public class TickData {
 
     // 最新成交价（用于因子计算）
     public long last;
+
+    // 当日累计成交笔数 / 成交量 / 成交额 (只在启用成交流因子时解析，见 FlowFactors)
+    public long cumCnt;
+    public long cumVol;
+    public double turnover;   // 保留原始小数部分，单位见 FlowFactors
     // [关键] 重置方法：为了对象复用，避免 new
     public void reset() {
         tradeTime = 0;
         last = 0;
+        cumCnt = 0;
+        cumVol = 0;
+        turnover = 0;
         tBidVol = 0;
         tAskVol = 0;
         bp1 = 0;
@@ -0,0 +1,96 @@
+// [file name]: TickFactorMapper.java
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 配合 TickRecordInputFormat 的 Mapper：输入已是 (stockKey, 解析好的 tick)，只剩因子计算和输出。
+ * 输出 key / value 与 SimplifiedFactorMapper 完全相同。
+ */
+public class TickFactorMapper extends Mapper<LongWritable, TickWritable, Text, Writable> {
+
+    private FactorEngine engine;
+    private double[] factors;
+    private int width;
+
+    private final Text outKey = new Text();
+    private final Text outValue = new Text();
+    private CompactFactorWritable compactValue;
+    private byte[] valueBuf;
+
+    private QuarantineWriter quarantine;
+    private FactorPanelWriter panelWriter;
+    private StockGroups groups;
+    private StockGroups.Aggregator groupAggregator;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        engine = new FactorEngine(context.getConfiguration());
+        width = engine.width();
+        factors = new double[width + 1];
+        if (CompactFactorWritable.enabled(context.getConfiguration())) compactValue = new CompactFactorWritable();
+        valueBuf = new byte[FastDecimal.MAX_FIXED6_LENGTH + width * 24];
+        quarantine = QuarantineWriter.create(context);
+        if (context.getConfiguration().getBoolean(FactorPanelWriter.CONF_ENABLED, false)) {
+            Path panelRoot = new Path(FileOutputFormat.getWorkOutputPath(context), FactorPanelWriter.PANEL_DIR);
+            panelWriter = new FactorPanelWriter(context.getConfiguration(), panelRoot,
+                    context.getTaskAttemptID().getTaskID().toString(), width);
+        }
+        groups = StockGroups.fromContext(context);
+        if (groups != null) {
+            groupAggregator = groups.new Aggregator(width, SessionCalendar.fromConf(context.getConfiguration()), compactValue != null);
+        }
+    }
+
+    @Override
+    public void map(LongWritable key, TickWritable value, Context context)
+            throws IOException, InterruptedException {
+        if (value.status != TickLineParser.OK) {
+            // 读取器只交出格式错误的行，其余过滤已在读取器里完成
+            if (quarantine != null) quarantine.write(value.status, value.line, value.lineStart, value.lineEnd);
+            return;
+        }
+
+        engine.compute(key.get(), value.tick, factors);
+        outKey.set(value.key, 0, value.keyLength);
+
+        if (compactValue != null) {
+            compactValue.setValues(factors, width);
+            context.write(outKey, compactValue);
+        } else {
+            int len = 0;
+            valueBuf[len++] = '1';
+            valueBuf[len++] = '|';
+            for (int i = 1; i <= width; i++) {
+                len = FastDecimal.formatFixed6(factors[i], valueBuf, len);
+                if (i < width) valueBuf[len++] = ',';
+            }
+            outValue.set(valueBuf, 0, len);
+            context.write(outKey, outValue);
+        }
+
+        if (groupAggregator != null) {
+            groupAggregator.add(groups.stockOf(value.code, 0, value.codeLength), value.tradingDay, value.secondOfDay, factors, context);
+        }
+
+        if (panelWriter != null) {
+            panelWriter.append(Integer.toString(value.tradingDay),
+                    new String(value.code, 0, value.codeLength, StandardCharsets.US_ASCII), value.tradeTime, factors);
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        // 解析计数由读取器在 close 时汇报
+        FactorEngine.reportUnchanged(engine.unchangedTicks(), context);
+        if (groupAggregator != null) groupAggregator.flush(context);
+        if (quarantine != null) quarantine.close();
+        if (panelWriter != null) panelWriter.close();
+    }
+}
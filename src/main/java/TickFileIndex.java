@@ -0,0 +1,543 @@
+// [file name]: TickFileIndex.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 原始 CSV 的随机访问索引：记录每个 (交易日, 股票) 连续行段 (run) 的字节区间，
+ * 段内每 N 行以及每分钟第一行各一个时间检查点 (tradeTime → 字节偏移)。查单只股票时只读对应字节段，不用扫全天文件；
+ * 段内按时间有序时，按时间窗口读取 (见 TimeRangeInputFormat) 也只读窗口覆盖的字节。
+ *
+ * 侧车文件与数据文件同目录，名为 "_&lt;文件名&gt;.tidx"（'_' 开头，Hadoop 输入会自动忽略）：
+ * <pre>
+ *   int magic 'TIDX', int version, vlong 数据文件长度, vlong 修改时间, vint 检查点间隔, vint runs
+ *   每个 run：vint tradingDay, 代码 (vint 长度 + ASCII), vlong 起始偏移 (相对上一 run 起点),
+ *            vlong 字节数, vint 行数, boolean 段内 tradeTime 是否非递减,
+ *            vint 检查点数, 检查点 [vint tradeTime, vlong 相对 run 起点的偏移]
+ * </pre>
+ * 只接受当前版本 (VERSION)，旧版本索引读取时报错，需用 build 重建。
+ * 同一只股票在文件里可以有多个 run (如按时间交错的行情)，按文件顺序保存。
+ *
+ * 命令行：
+ *   TickFileIndex build &lt;input&gt; [--every=N]
+ *   TickFileIndex query &lt;input&gt; &lt;tradingDay&gt; &lt;code&gt; [--from=HHMMSS] [--to=HHMMSS] [--cold]
+ *                [--depth=N] [--rolling=spec] [--flow=list] [--turnover-scale=X] [--factors=1-3,20] [--sessions=file] [--accept-auction]
+ * query 把该股票当天的 tick 送进 FactorEngine，逐笔输出 tradeTime + 全部因子列。
+ * 默认从 run 开头预热状态 (与整批作业逐笔一致)；--cold 直接从检查点开始 (段内无序的 run 仍从开头读)，前一时刻 / 滚动因子从零起算。
+ */
+public class TickFileIndex {
+
+    public static final int MAGIC = 0x54494458; // "TIDX"
+    public static final int VERSION = 2;
+    public static final int DEFAULT_CHECKPOINT_EVERY = 256;
+    public static final String SUFFIX = ".tidx";
+
+    /**
+     * 一个 (交易日, 股票) 的连续行段
+     */
+    public static final class Run {
+        public final int tradingDay;
+        public final String code;
+        public final long start;      // 首行偏移
+        public final long end;        // 末行换行符之后
+        public final int lines;
+        public final boolean ordered; // 段内 tradeTime 非递减
+        final int[] checkpointTimes;
+        final long[] checkpointOffsets;
+
+        Run(int tradingDay, String code, long start, long end, int lines, boolean ordered, int[] times, long[] offsets) {
+            this.tradingDay = tradingDay;
+            this.code = code;
+            this.start = start;
+            this.end = end;
+            this.lines = lines;
+            this.ordered = ordered;
+            this.checkpointTimes = times;
+            this.checkpointOffsets = offsets;
+        }
+
+        /**
+         * 不晚于 fromTime 的最后一个检查点的偏移。仅当段内有序 (ordered) 时，从这里读才保证不漏掉
+         * tradeTime &gt;= fromTime 的行；无序 run 应从 start 读
+         */
+        public long seek(int fromTime) {
+            long offset = start;
+            for (int i = 0; i < checkpointTimes.length && checkpointTimes[i] < fromTime; i++) {
+                offset = checkpointOffsets[i];
+            }
+            return offset;
+        }
+
+        /**
+         * 第一个晚于 toTime 的检查点的偏移 (段内有序时，从这里起的行都晚于 toTime)，没有则为 end
+         */
+        public long until(int toTime) {
+            for (int i = 0; i < checkpointTimes.length; i++) {
+                if (checkpointTimes[i] > toTime) return checkpointOffsets[i];
+            }
+            return end;
+        }
+    }
+
+    public final Path file;
+    public final long fileLength;
+    public final long modificationTime;
+    public final int checkpointEvery;
+    private final List<Run> runs;
+    private final Map<String, List<Run>> byStock = new HashMap<>();
+
+    private TickFileIndex(Path file, long fileLength, long modificationTime, int checkpointEvery, List<Run> runs) {
+        this.file = file;
+        this.fileLength = fileLength;
+        this.modificationTime = modificationTime;
+        this.checkpointEvery = checkpointEvery;
+        this.runs = runs;
+        for (Run run : runs) {
+            byStock.computeIfAbsent(stockKey(run.tradingDay, run.code), k -> new ArrayList<>()).add(run);
+        }
+    }
+
+    private static String stockKey(int tradingDay, String code) {
+        return tradingDay + "|" + code;
+    }
+
+    public List<Run> runs() {
+        return Collections.unmodifiableList(runs);
+    }
+
+    public List<Run> runsFor(int tradingDay, String code) {
+        List<Run> list = byStock.get(stockKey(tradingDay, code));
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    public static Path sidecarOf(Path file) {
+        return new Path(file.getParent(), "_" + file.getName() + SUFFIX);
+    }
+
+    public static boolean isDataFile(Path p) {
+        String name = p.getName();
+        return !name.startsWith("_") && !name.startsWith(".");
+    }
+
+    // ========== 建索引 ==========
+
+    /**
+     * 顺序扫描一个数据文件建立索引；列位置取自文件自己的表头 (没有表头时用 conf / 默认列顺序)
+     */
+    public static TickFileIndex build(FileSystem fs, Path file, Configuration conf, int every) throws IOException {
+        FileStatus status = fs.getFileStatus(file);
+        ColumnLayout layout = null;
+        List<Run> runs = new ArrayList<>();
+
+        int runDay = -1;
+        byte[] runCode = new byte[0];
+        int runCodeLen = -1;
+        long runStart = 0;
+        int runLines = 0;
+        boolean runOrdered = true;
+        int runLastTime = -1;
+        IntList times = new IntList();
+        LongList offsets = new LongList();
+
+        try (ByteLineScanner scanner = new ByteLineScanner(fs.open(file), 1 << 20)) {
+            while (scanner.next()) {
+                byte[] buf = scanner.buf;
+                int s = scanner.lineStart;
+                int e = scanner.lineEnd;
+                if (s == e) continue;
+                if (isLetter(buf[s])) {
+                    // 表头
+                    if (layout == null) layout = ColumnLayout.fromHeader(new String(buf, s, e - s, StandardCharsets.US_ASCII), 1);
+                    continue;
+                }
+                if (layout == null) layout = defaultLayout(conf);
+
+                int dayStart = fieldStart(buf, s, e, layout.tradingDay);
+                int day = dayStart < 0 ? -1 : SessionCalendar.parseDigits(buf, dayStart, fieldEnd(buf, s, e, layout.tradingDay));
+                int codeStart = fieldStart(buf, s, e, layout.code);
+                int codeEnd = fieldEnd(buf, s, e, layout.code);
+                if (day < 0 || codeStart < 0) continue;
+                int timeStart = fieldStart(buf, s, e, layout.tradeTime);
+                int time = timeStart < 0 ? -1 : SessionCalendar.parseDigits(buf, timeStart, fieldEnd(buf, s, e, layout.tradeTime));
+
+                boolean same = day == runDay && codeEnd - codeStart == runCodeLen
+                        && regionEquals(buf, codeStart, runCode, runCodeLen);
+                if (!same) {
+                    if (runLines > 0) {
+                        runs.add(new Run(runDay, new String(runCode, 0, runCodeLen, StandardCharsets.US_ASCII),
+                                runStart, scanner.lineOffset, runLines, runOrdered, times.toArray(), offsets.toArray()));
+                    }
+                    runDay = day;
+                    runCodeLen = codeEnd - codeStart;
+                    if (runCode.length < runCodeLen) runCode = new byte[runCodeLen * 2];
+                    System.arraycopy(buf, codeStart, runCode, 0, runCodeLen);
+                    runStart = scanner.lineOffset;
+                    runLines = 0;
+                    runOrdered = true;
+                    runLastTime = -1;
+                    times.clear();
+                    offsets.clear();
+                }
+                // 每 N 行一个检查点，另外每分钟的第一行也记一个 (时间窗口读取按分钟粒度定位)
+                boolean newMinute = time >= 0 && (runLastTime < 0 || time / 100 != runLastTime / 100);
+                if (runLines % every == 0 || newMinute) {
+                    times.add(time);
+                    offsets.add(scanner.lineOffset);
+                }
+                if (time >= 0) {
+                    if (time < runLastTime) runOrdered = false;
+                    runLastTime = time;
+                }
+                runLines++;
+            }
+            if (runLines > 0) {
+                runs.add(new Run(runDay, new String(runCode, 0, runCodeLen, StandardCharsets.US_ASCII),
+                        runStart, scanner.offset(), runLines, runOrdered, times.toArray(), offsets.toArray()));
+            }
+        }
+        return new TickFileIndex(file, status.getLen(), status.getModificationTime(), every, runs);
+    }
+
+    private static ColumnLayout defaultLayout(Configuration conf) {
+        String header = conf.get(ColumnLayout.CONF_HEADER);
+        return header == null || header.isEmpty() ? ColumnLayout.defaultLayout(1) : ColumnLayout.fromHeader(header, 1);
+    }
+
+    // 第 col 列的起止位置 (不存在返回 -1)
+    private static int fieldStart(byte[] buf, int s, int e, int col) {
+        int p = s;
+        for (int c = 0; c < col; c++) {
+            while (p < e && buf[p] != ',') p++;
+            if (p >= e) return -1;
+            p++;
+        }
+        return p;
+    }
+
+    private static int fieldEnd(byte[] buf, int s, int e, int col) {
+        int p = fieldStart(buf, s, e, col);
+        if (p < 0) return -1;
+        while (p < e && buf[p] != ',') p++;
+        return p;
+    }
+
+    private static boolean regionEquals(byte[] a, int aStart, byte[] b, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aStart + i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    // ========== 读写侧车文件 ==========
+
+    public void write(FileSystem fs) throws IOException {
+        try (FSDataOutputStream raw = fs.create(sidecarOf(file), true);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            WritableUtils.writeVLong(out, fileLength);
+            WritableUtils.writeVLong(out, modificationTime);
+            WritableUtils.writeVInt(out, checkpointEvery);
+            WritableUtils.writeVInt(out, runs.size());
+            long prevStart = 0;
+            for (Run run : runs) {
+                WritableUtils.writeVInt(out, run.tradingDay);
+                byte[] code = run.code.getBytes(StandardCharsets.US_ASCII);
+                WritableUtils.writeVInt(out, code.length);
+                out.write(code);
+                WritableUtils.writeVLong(out, run.start - prevStart);
+                WritableUtils.writeVLong(out, run.end - run.start);
+                WritableUtils.writeVInt(out, run.lines);
+                out.writeBoolean(run.ordered);
+                WritableUtils.writeVInt(out, run.checkpointTimes.length);
+                for (int i = 0; i < run.checkpointTimes.length; i++) {
+                    WritableUtils.writeVInt(out, run.checkpointTimes[i]);
+                    WritableUtils.writeVLong(out, run.checkpointOffsets[i] - run.start);
+                }
+                prevStart = run.start;
+            }
+        }
+    }
+
+    /**
+     * 读取 file 的侧车索引；不存在或数据文件已变化 (长度 / 修改时间不符) 时返回 null
+     */
+    public static TickFileIndex read(FileSystem fs, Path file) throws IOException {
+        Path sidecar = sidecarOf(file);
+        if (!fs.exists(sidecar)) return null;
+        FileStatus status = fs.getFileStatus(file);
+        try (DataInputStream in = new DataInputStream(fs.open(sidecar))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a tick index: " + sidecar);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported tick index version " + version + " (expected " + VERSION + "), rebuild with TickFileIndex build: " + sidecar);
+            long length = WritableUtils.readVLong(in);
+            long mtime = WritableUtils.readVLong(in);
+            if (length != status.getLen() || mtime != status.getModificationTime()) return null;
+            int every = WritableUtils.readVInt(in);
+            int count = WritableUtils.readVInt(in);
+            List<Run> runs = new ArrayList<>(count);
+            long prevStart = 0;
+            for (int r = 0; r < count; r++) {
+                int day = WritableUtils.readVInt(in);
+                byte[] code = new byte[WritableUtils.readVInt(in)];
+                in.readFully(code);
+                long start = prevStart + WritableUtils.readVLong(in);
+                long end = start + WritableUtils.readVLong(in);
+                int lines = WritableUtils.readVInt(in);
+                boolean ordered = in.readBoolean();
+                int n = WritableUtils.readVInt(in);
+                int[] times = new int[n];
+                long[] offsets = new long[n];
+                for (int i = 0; i < n; i++) {
+                    times[i] = WritableUtils.readVInt(in);
+                    offsets[i] = start + WritableUtils.readVLong(in);
+                }
+                runs.add(new Run(day, new String(code, StandardCharsets.US_ASCII), start, end, lines, ordered, times, offsets));
+                prevStart = start;
+            }
+            return new TickFileIndex(file, length, mtime, every, runs);
+        }
+    }
+
+    // ========== 按索引读取 ==========
+
+    public interface LineConsumer {
+        void accept(byte[] buf, int start, int end) throws IOException;
+    }
+
+    /**
+     * 把 run 中 [offset, run.end) 的行逐行交给 consumer (offset 取 run.start 或 run.seek(...))
+     */
+    public void scan(FileSystem fs, Run run, long offset, LineConsumer consumer) throws IOException {
+        try (FSDataInputStream in = fs.open(file)) {
+            in.seek(offset);
+            ByteLineScanner scanner = new ByteLineScanner(new BoundedInput(in, run.end - offset), 1 << 20);
+            while (scanner.next()) {
+                if (scanner.lineEnd > scanner.lineStart) consumer.accept(scanner.buf, scanner.lineStart, scanner.lineEnd);
+            }
+        }
+    }
+
+    /**
+     * 输入目录 (递归) 下的所有数据文件
+     */
+    public static List<Path> dataFiles(FileSystem fs, Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (fs.getFileStatus(root).isFile()) {
+            files.add(root);
+            return files;
+        }
+        RemoteIterator<LocatedFileStatus> it = fs.listFiles(root, true);
+        while (it.hasNext()) {
+            Path p = it.next().getPath();
+            if (isDataFile(p) && isDataFile(p.getParent())) files.add(p);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    // ========== 命令行 ==========
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positional.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        if (positional.size() >= 2 && positional.get(0).equals("build")) {
+            build(positional.get(1), Integer.parseInt(options.getOrDefault("every", String.valueOf(DEFAULT_CHECKPOINT_EVERY))));
+        } else if (positional.size() >= 4 && positional.get(0).equals("query")) {
+            query(positional.get(1), Integer.parseInt(positional.get(2)), positional.get(3), options, System.out);
+        } else {
+            System.err.println("Usage: TickFileIndex build <input> [--every=N]");
+            System.err.println("       TickFileIndex query <input> <tradingDay> <code> [--from=HHMMSS] [--to=HHMMSS] [--cold]");
+            System.err.println("                    [--depth=N] [--rolling=spec] [--flow=list] [--turnover-scale=X] [--factors=1-3,20] [--sessions=file] [--accept-auction]");
+            System.exit(2);
+        }
+    }
+
+    private static void build(String input, int every) throws IOException {
+        Configuration conf = new Configuration();
+        FileSystem fs = new Path(input).getFileSystem(conf);
+        long t0 = System.currentTimeMillis();
+        int files = 0;
+        long runs = 0;
+        for (Path file : dataFiles(fs, new Path(input))) {
+            TickFileIndex index = build(fs, file, conf, every);
+            index.write(fs);
+            files++;
+            runs += index.runs.size();
+        }
+        System.out.printf(">>> Indexed %d files, %d runs in %d ms%n", files, runs, System.currentTimeMillis() - t0);
+    }
+
+    private static void query(String input, int tradingDay, String code, Map<String, String> options, PrintStream out)
+            throws IOException {
+        Configuration conf = new Configuration();
+        if (options.containsKey("depth")) conf.setInt(ColumnLayout.CONF_DEPTH, Integer.parseInt(options.get("depth")));
+        if (options.containsKey("rolling")) conf.set(RollingFactors.CONF_SPECS, options.get("rolling"));
+        if (options.containsKey("flow")) conf.set(FlowFactors.CONF_SPECS, options.get("flow"));
+        if (options.containsKey("turnover-scale")) conf.set(FlowFactors.CONF_TURNOVER_SCALE, options.get("turnover-scale"));
+        if (options.containsKey("factors")) conf.set(FactorSelection.CONF_SELECT, options.get("factors"));
+        if (options.containsKey("sessions")) conf.set(SessionCalendar.CONF_FILE, options.get("sessions"));
+        if (options.containsKey("accept-auction")) conf.setBoolean(SessionCalendar.CONF_ACCEPT_AUCTION, true);
+        int from = Integer.parseInt(options.getOrDefault("from", "0"));
+        int to = Integer.parseInt(options.getOrDefault("to", "999999"));
+        boolean cold = options.containsKey("cold");
+
+        FileSystem fs = new Path(input).getFileSystem(conf);
+        long t0 = System.nanoTime();
+        out.println(FactorSchema.header(conf));
+        int width = FactorSchema.width(conf);
+        double[] f = new double[width + 1];
+        byte[] lineBuf = new byte[FastDecimal.MAX_FIXED6_LENGTH + width * 24];
+        long ticks = 0;
+        int missing = 0;
+
+        for (Path file : dataFiles(fs, new Path(input))) {
+            TickFileIndex index = read(fs, file);
+            if (index == null) {
+                missing++;
+                continue;
+            }
+            List<Run> runs = index.runsFor(tradingDay, code);
+            if (runs.isEmpty()) continue;
+
+            // 每个文件按自己的表头解析
+            conf.set(ColumnLayout.CONF_HEADER, readHeader(fs, file));
+            TickLineParser parser = new TickLineParser(conf);
+            FactorEngine engine = new FactorEngine(conf);
+            TickData tick = new TickData(parser.layout.depth);
+            long[] count = new long[1];
+            for (Run run : runs) {
+                long offset = cold && run.ordered ? run.seek(from) : run.start;
+                index.scan(fs, run, offset, (buf, s, e) -> {
+                    if (parser.parse(buf, s, e, tick) != TickLineParser.OK) return;
+                    if (parser.tradeTime > to) return;
+                    engine.compute(parser.stockKey, tick, f);
+                    if (parser.tradeTime < from) return;
+                    int n = FastDecimal.writeLong(parser.tradeTime, lineBuf, 0);
+                    for (int i = 1; i <= width; i++) {
+                        lineBuf[n++] = ',';
+                        n = FastDecimal.formatFixed6(f[i], lineBuf, n);
+                    }
+                    lineBuf[n++] = '\n';
+                    out.write(lineBuf, 0, n);
+                    count[0]++;
+                });
+            }
+            ticks += count[0];
+        }
+        out.flush();
+        if (missing > 0) System.err.printf(">>> %d data files have no (or a stale) index; run 'TickFileIndex build' first%n", missing);
+        System.err.printf(">>> %d ticks for %s on %d in %.1f ms%n", ticks, code, tradingDay, (System.nanoTime() - t0) / 1e6);
+    }
+
+    static String readHeader(FileSystem fs, Path file) throws IOException {
+        try (ByteLineScanner scanner = new ByteLineScanner(fs.open(file), 64 * 1024)) {
+            if (scanner.next() && scanner.lineEnd > scanner.lineStart && isLetter(scanner.buf[scanner.lineStart])) {
+                return new String(scanner.buf, scanner.lineStart, scanner.lineEnd - scanner.lineStart, StandardCharsets.US_ASCII);
+            }
+        }
+        return "";
+    }
+
+    // ========== 工具类 ==========
+
+    // 只读 remaining 个字节
+    static final class BoundedInput extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInput(InputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = java.util.Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return java.util.Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class LongList {
+        long[] data = new long[16];
+        int size;
+
+        void add(long v) {
+            if (size == data.length) data = java.util.Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long[] toArray() {
+            return java.util.Arrays.copyOf(data, size);
+        }
+    }
+}
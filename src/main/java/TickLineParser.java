@@ -0,0 +1,240 @@
+// [file name]: TickLineParser.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.io.IOException;
+
+/**
+ * 逐行解析器：直接在一行 CSV 的原始字节上切列、做交易时段过滤并填充 TickData，不创建 String。
+ * 每个线程 / Mapper 各持有一个实例（内部有复用的列位置数组和时段表缓存）。
+ */
+public class TickLineParser {
+
+    // parse 返回的状态码
+    public static final int OK = 0;
+    public static final int SKIP_HEADER = 1;    // 表头或空行
+    public static final int SKIP_SHORT = 2;     // 列数不足
+    public static final int SKIP_SESSION = 3;   // 非交易时段
+    public static final int BAD_RECORD = 4;     // 字段无法解析
+    public static final int SKIP_SAMPLE = 5;    // 不在抽样股票内 (见 StockSampler)
+    public static final int BAD_NUMBER = 6;     // 价格 / 数量字段含非法字符
+
+    // 状态码对应的计数器名 (计数器组 COUNTER_GROUP)
+    public static final String COUNTER_GROUP = "TickParser";
+    public static final String[] STATUS_NAMES = {
+            "PARSED", "SKIP_HEADER", "SKIP_SHORT", "SKIP_SESSION", "BAD_RECORD", "SKIP_SAMPLE", "BAD_NUMBER"};
+
+    /**
+     * 把各状态的次数累加到 Hadoop 计数器 (任务结束时调用一次)
+     */
+    public static void reportCounters(long[] counts, TaskInputOutputContext<?, ?, ?, ?> context) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) context.getCounter(COUNTER_GROUP, STATUS_NAMES[i]).increment(counts[i]);
+        }
+    }
+
+    /**
+     * 是否属于格式错误 (需要隔离输出以便排查)，其余非 OK 状态是正常的过滤
+     */
+    public static boolean isMalformed(int status) {
+        return status == SKIP_SHORT || status == BAD_RECORD || status == BAD_NUMBER;
+    }
+
+    public final ColumnLayout layout;
+    private final SessionCalendar calendar;
+    private final StockSampler sampler;  // null 表示不抽样
+    private final int[] fieldEnds;   // fieldEnds[k] 为第 k 列的结束位置 (逗号或行尾)
+    private byte[] buf;
+    private int lineStart;
+
+    // 时段表缓存 (市场 + 交易日 不变时只做数组访问)
+    private byte[] sessionTable;
+    private int sessionMarket = -1;
+    private int sessionDay = -1;
+
+    // 各状态的累计次数 (下标为状态码)，任务结束时汇总到计数器
+    public final long[] statusCounts = new long[STATUS_NAMES.length];
+
+    // 上一次 parse 的结果
+    public int tradingDay;      // yyyyMMdd
+    public int tradeTime;       // HHMMSS
+    public int secondOfDay;
+    public long stockKey;       // StockStateStore.stockKey 编码的 (股票, 交易日)
+
+    public TickLineParser(Configuration conf) throws IOException {
+        this(ColumnLayout.fromConf(conf), SessionCalendar.fromConf(conf), StockSampler.fromConf(conf));
+    }
+
+    public TickLineParser(ColumnLayout layout, SessionCalendar calendar) {
+        this(layout, calendar, null);
+    }
+
+    public TickLineParser(ColumnLayout layout, SessionCalendar calendar, StockSampler sampler) {
+        this.layout = layout;
+        this.calendar = calendar;
+        this.sampler = sampler;
+        this.fieldEnds = new int[layout.maxColumn + 2];
+    }
+
+    /**
+     * 解析 buf[start, end) 这一行 (不含换行符) 到 tick，返回状态码；坏行不抛异常
+     */
+    public int parse(byte[] buf, int start, int end, TickData tick) {
+        int status = parseLine(buf, start, end, tick);
+        statusCounts[status]++;
+        return status;
+    }
+
+    private int parseLine(byte[] buf, int start, int end, TickData tick) {
+        this.buf = buf;
+        this.lineStart = start;
+
+        // 扫到需要的最后一列为止
+        int count = 0;
+        int needed = layout.maxColumn + 1;
+        for (int i = start; i < end && count < needed; i++) {
+            if (buf[i] == ',') fieldEnds[count++] = i;
+        }
+        if (count < needed) fieldEnds[count++] = end; // 最后一列没有逗号结尾
+        // 连交易日列都没有：fieldEnds 里该列还是上一行的值，不能读
+        if (count <= layout.tradingDay) return SKIP_SHORT;
+
+        int dayStart = fieldStart(layout.tradingDay);
+        if (dayStart >= fieldEnds[layout.tradingDay] || isLetter(buf[dayStart])) return SKIP_HEADER;
+        if (count < needed) return SKIP_SHORT;
+
+        tradingDay = SessionCalendar.parseDigits(buf, dayStart, fieldEnds[layout.tradingDay]);
+        tradeTime = SessionCalendar.parseDigits(buf, fieldStart(layout.tradeTime), fieldEnds[layout.tradeTime]);
+        secondOfDay = SessionCalendar.secondsOfDay(tradeTime);
+        if (tradingDay < 0 || secondOfDay < 0) return BAD_RECORD;
+
+        int market = calendar.marketOf(buf, fieldStart(layout.mic), fieldEnds[layout.mic]);
+        if (market != sessionMarket || tradingDay != sessionDay) {
+            sessionTable = calendar.tableFor(market, tradingDay);
+            sessionMarket = market;
+            sessionDay = tradingDay;
+        }
+        if (!calendar.accepts(sessionTable, secondOfDay)) return SKIP_SESSION;
+
+        int codeStart = fieldStart(layout.code);
+        int codeEnd = fieldEnds[layout.code];
+        if (sampler != null && !sampler.accepts(buf, codeStart, codeEnd)) return SKIP_SAMPLE;
+        stockKey = StockStateStore.stockKey(buf, codeStart, codeEnd, tradingDay);
+
+        return fillTickDataFast(tick) ? OK : BAD_NUMBER;
+    }
+
+    private boolean fillTickDataFast(TickData data) {
+        data.reset();
+        data.tradeTime = tradeTime;
+        long bad = 0;   // 任一字段非法则为负
+        // 只选了部分因子时 (见 FactorSelection) 用不到的列不读，保持为 0
+        if (layout.parseLast) bad |= data.last = parseLongStrict(layout.last);
+        if (layout.parseTradeVolume) {
+            bad |= data.tBidVol = parseLongStrict(layout.tBidVol);
+            bad |= data.tAskVol = parseLongStrict(layout.tAskVol);
+        }
+        // 成交流因子的累计列：未启用时不读
+        if (layout.cumCnt >= 0) bad |= data.cumCnt = parseLongStrict(layout.cumCnt);
+        if (layout.cumVol >= 0) bad |= data.cumVol = parseLongStrict(layout.cumVol);
+        if (layout.turnover >= 0) {
+            data.turnover = parseDecimalStrict(layout.turnover);
+            if (data.turnover < 0) bad = -1;
+        }
+
+        if (layout.priceLevels == layout.depth && layout.volumeLevels == layout.depth) {
+            for (int i = 1; i <= layout.depth; i++) {
+                bad |= data.bp[i] = parseLongStrict(layout.bp[i]);
+                bad |= data.bv[i] = parseLongStrict(layout.bv[i]);
+                bad |= data.ap[i] = parseLongStrict(layout.ap[i]);
+                bad |= data.av[i] = parseLongStrict(layout.av[i]);
+            }
+        } else {
+            for (int i = 1; i <= layout.priceLevels; i++) {
+                bad |= data.bp[i] = parseLongStrict(layout.bp[i]);
+                bad |= data.ap[i] = parseLongStrict(layout.ap[i]);
+            }
+            for (int i = 1; i <= layout.volumeLevels; i++) {
+                bad |= data.bv[i] = parseLongStrict(layout.bv[i]);
+                bad |= data.av[i] = parseLongStrict(layout.av[i]);
+            }
+        }
+        data.bp1 = data.bp[1];
+        data.bv1 = data.bv[1];
+        data.ap1 = data.ap[1];
+        data.av1 = data.av[1];
+        return bad >= 0;
+    }
+
+    /**
+     * 非负整数字段：允许前后空白 (含 '\r')，小数部分截断；空字段视为 0 (缺档)。
+     * 出现其它字符 (负号、字母、多个小数点等) 返回 -1。
+     */
+    private long parseLongStrict(int col) {
+        int start = fieldStart(col);
+        int end = fieldEnds[col];
+        while (start < end && buf[start] == ' ') start++;
+        while (end > start && (buf[end - 1] == ' ' || buf[end - 1] == '\r')) end--;
+        long result = 0;
+        int i = start;
+        for (; i < end; i++) {
+            int c = buf[i];
+            if (c < '0' || c > '9') break;
+            result = result * 10 + (c - '0');
+        }
+        if (i - start > 18) return -1;  // 溢出
+        if (i < end) {
+            if (buf[i] != '.') return -1;
+            for (i++; i < end; i++) {
+                int c = buf[i];
+                if (c < '0' || c > '9') return -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 非负小数字段 (成交额)：与 parseLongStrict 相同的格式，但保留小数部分；非法返回 -1
+     */
+    private double parseDecimalStrict(int col) {
+        int start = fieldStart(col);
+        int end = fieldEnds[col];
+        while (start < end && buf[start] == ' ') start++;
+        while (end > start && (buf[end - 1] == ' ' || buf[end - 1] == '\r')) end--;
+        long integer = 0;
+        int i = start;
+        for (; i < end; i++) {
+            int c = buf[i];
+            if (c < '0' || c > '9') break;
+            integer = integer * 10 + (c - '0');
+        }
+        if (i - start > 18) return -1;  // 溢出
+        if (i == end) return integer;
+        if (buf[i] != '.') return -1;
+        long fraction = 0;
+        double scale = 1;
+        for (i++; i < end; i++) {
+            int c = buf[i];
+            if (c < '0' || c > '9') return -1;
+            if (scale < 1e17) {
+                fraction = fraction * 10 + (c - '0');
+                scale *= 10;
+            }
+        }
+        return integer + fraction / scale;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    // ========== 上一次 parse 的列位置 ==========
+
+    public int fieldStart(int col) {
+        return col == 0 ? lineStart : fieldEnds[col - 1] + 1;
+    }
+
+    public int fieldEnd(int col) {
+        return fieldEnds[col];
+    }
+}
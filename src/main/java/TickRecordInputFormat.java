@@ -0,0 +1,173 @@
+// [file name]: TickRecordInputFormat.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import java.io.IOException;
+
+/**
+ * 直接产出解析好的 tick 的输入格式：与 CombineTextInputFormat 一样把小文件合并成大分片，
+ * 但每个文件的读取器用大缓冲区自己找行边界，在缓冲区字节上直接解析进复用的 TickWritable，
+ * 不再经过 Text 拷贝和 Mapper 里的二次扫描。
+ *
+ * 表头、非交易时段、未抽中的行在读取器里丢弃 (计入 TickParser 计数器)，交给 Mapper 的是
+ * (StockStateStore.stockKey, tick)；格式错误的行带着错误码交出，供 Mapper 隔离输出。
+ * 只支持未压缩文件的切分，压缩文件整个读取。
+ */
+public class TickRecordInputFormat extends CombineFileInputFormat<LongWritable, TickWritable> {
+
+    public static final String CONF_BUFFER_BYTES = "factor.input.buffer.bytes";
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return new CompressionCodecFactory(context.getConfiguration()).getCodec(file) == null;
+    }
+
+    @Override
+    public RecordReader<LongWritable, TickWritable> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context, FileReader.class);
+    }
+
+    /**
+     * 合并分片中单个文件 (片段) 的读取器，由 CombineFileRecordReader 反射构造
+     */
+    public static class FileReader extends RecordReader<LongWritable, TickWritable> {
+
+        private final Path path;
+        private final long start;
+        private final long end;
+
+        private ByteLineScanner scanner;
+        private TickLineParser parser;
+        private TaskAttemptContext context;
+        private final LongWritable key = new LongWritable();
+        private TickWritable value;
+        private long consumed;
+        private boolean bounded = true;   // 压缩文件整个读取，不按片段边界截止
+        private boolean done;
+
+        public FileReader(CombineFileSplit split, TaskAttemptContext context, Integer index) {
+            this.path = split.getPath(index);
+            this.start = split.getOffset(index);
+            this.end = start + split.getLength(index);
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            this.context = context;
+            Configuration conf = context.getConfiguration();
+            parser = new TickLineParser(conf);
+            value = new TickWritable(parser.layout.depth);
+
+            FileSystem fs = path.getFileSystem(conf);
+            FSDataInputStream in = fs.open(path);
+            CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+            int bufferSize = conf.getInt(CONF_BUFFER_BYTES, 4 * 1024 * 1024);
+            if (codecs.getCodec(path) != null) {
+                scanner = new ByteLineScanner(codecs.getCodec(path).createInputStream(in), bufferSize);
+                bounded = false;
+                return;
+            }
+            in.seek(start);
+            scanner = new ByteLineScanner(in, bufferSize);
+            // 与 LineRecordReader 相同的约定：不从文件头开始的片段跳过第一行 (半行归上一个片段)
+            if (start != 0 && !scanner.next()) done = true;
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            while (!done) {
+                // 起点在片段末尾之后的行归下一个片段 (起点正好在末尾的那一行由本片段读)
+                if (!scanner.next() || (bounded && start + scanner.lineOffset > end)) {
+                    done = true;
+                    break;
+                }
+                consumed = scanner.offset();
+                int s = scanner.lineStart;
+                int e = scanner.lineEnd;
+                int status = parser.parse(scanner.buf, s, e, value.tick);
+                if (status == TickLineParser.OK) {
+                    fill(s, e);
+                    key.set(parser.stockKey);
+                    return true;
+                }
+                if (TickLineParser.isMalformed(status)) {
+                    value.status = status;
+                    value.line = scanner.buf;
+                    value.lineStart = s;
+                    value.lineEnd = e;
+                    key.set(0);
+                    return true;
+                }
+                // 表头 / 非交易时段 / 未抽中：读取器内直接丢弃
+            }
+            return false;
+        }
+
+        private void fill(int lineStart, int lineEnd) {
+            ColumnLayout layout = parser.layout;
+            byte[] buf = scanner.buf;
+            value.status = TickLineParser.OK;
+            value.tradingDay = parser.tradingDay;
+            value.tradeTime = parser.tradeTime;
+            value.secondOfDay = parser.secondOfDay;
+            value.line = buf;
+            value.lineStart = lineStart;
+            value.lineEnd = lineEnd;
+
+            int n = copy(buf, parser.fieldStart(layout.tradingDay), parser.fieldEnd(layout.tradingDay), value.key, 0, 31);
+            value.key[n++] = '_';
+            value.keyLength = copy(buf, parser.fieldStart(layout.tradeTime), parser.fieldEnd(layout.tradeTime), value.key, n, 31);
+            value.codeLength = copy(buf, parser.fieldStart(layout.code), parser.fieldEnd(layout.code), value.code, 0, value.code.length);
+        }
+
+        private static int copy(byte[] src, int s, int e, byte[] dst, int pos, int max) {
+            int len = Math.min(e - s, max);
+            System.arraycopy(src, s, dst, pos, len);
+            return pos + len;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public TickWritable getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            long length = end - start;
+            return length <= 0 ? 1.0f : Math.min(1.0f, consumed / (float) length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (parser != null && context != null) {
+                // 读取器里丢弃的行也要出现在计数器里 (Mapper 不再看到它们)
+                long[] counts = parser.statusCounts;
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) context.getCounter(TickLineParser.COUNTER_GROUP, TickLineParser.STATUS_NAMES[i]).increment(counts[i]);
+                }
+                parser = null;
+            }
+            if (scanner != null) {
+                scanner.close();
+                scanner = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// [file name]: TickWritable.java
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * TickRecordInputFormat 交给 Mapper 的值：复用的 TickData 加上解析出的时间字段和原始 key 字节。
+ *
+ * 正常记录 status 为 TickLineParser.OK；格式错误的行也会交出来 (status 为对应错误码，
+ * line / lineStart / lineEnd 指向读取器缓冲区里的原始行，只在下一次 nextKeyValue 之前有效)，
+ * 由 Mapper 决定是否隔离输出。表头、非交易时段、未抽中的行在读取器里就已丢弃。
+ */
+public class TickWritable implements Writable {
+
+    public final TickData tick;
+    public int status;
+    public int tradingDay;
+    public int tradeTime;
+    public int secondOfDay;
+
+    // 原样的 "tradingDay_tradeTime" 与股票代码字节
+    public final byte[] key = new byte[64];
+    public int keyLength;
+    public final byte[] code = new byte[32];
+    public int codeLength;
+
+    // 原始行 (仅坏行时有意义)
+    public byte[] line;
+    public int lineStart;
+    public int lineEnd;
+
+    public TickWritable(int depth) {
+        this.tick = new TickData(depth);
+    }
+
+    public TickWritable() {
+        this(ColumnLayout.DEFAULT_DEPTH);
+    }
+
+    public int depth() {
+        return tick.bp.length - 1;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, status);
+        WritableUtils.writeVInt(out, tradingDay);
+        WritableUtils.writeVInt(out, tradeTime);
+        WritableUtils.writeVInt(out, keyLength);
+        out.write(key, 0, keyLength);
+        WritableUtils.writeVInt(out, codeLength);
+        out.write(code, 0, codeLength);
+        WritableUtils.writeVLong(out, tick.last);
+        WritableUtils.writeVLong(out, tick.tBidVol);
+        WritableUtils.writeVLong(out, tick.tAskVol);
+        WritableUtils.writeVLong(out, tick.cumCnt);
+        WritableUtils.writeVLong(out, tick.cumVol);
+        out.writeDouble(tick.turnover);
+        int depth = depth();
+        WritableUtils.writeVInt(out, depth);
+        for (int i = 1; i <= depth; i++) {
+            WritableUtils.writeVLong(out, tick.bp[i]);
+            WritableUtils.writeVLong(out, tick.bv[i]);
+            WritableUtils.writeVLong(out, tick.ap[i]);
+            WritableUtils.writeVLong(out, tick.av[i]);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        status = WritableUtils.readVInt(in);
+        tradingDay = WritableUtils.readVInt(in);
+        tradeTime = WritableUtils.readVInt(in);
+        secondOfDay = SessionCalendar.secondsOfDay(tradeTime);
+        keyLength = WritableUtils.readVInt(in);
+        in.readFully(key, 0, keyLength);
+        codeLength = WritableUtils.readVInt(in);
+        in.readFully(code, 0, codeLength);
+        tick.reset();
+        tick.tradeTime = tradeTime;
+        tick.last = WritableUtils.readVLong(in);
+        tick.tBidVol = WritableUtils.readVLong(in);
+        tick.tAskVol = WritableUtils.readVLong(in);
+        tick.cumCnt = WritableUtils.readVLong(in);
+        tick.cumVol = WritableUtils.readVLong(in);
+        tick.turnover = in.readDouble();
+        int depth = WritableUtils.readVInt(in);
+        if (depth != depth()) throw new IOException("Tick depth " + depth + " does not match " + depth());
+        for (int i = 1; i <= depth; i++) {
+            tick.bp[i] = WritableUtils.readVLong(in);
+            tick.bv[i] = WritableUtils.readVLong(in);
+            tick.ap[i] = WritableUtils.readVLong(in);
+            tick.av[i] = WritableUtils.readVLong(in);
+        }
+        tick.bp1 = tick.bp[1];
+        tick.bv1 = tick.bv[1];
+        tick.ap1 = tick.ap[1];
+        tick.av1 = tick.av[1];
+        line = null;
+    }
+}
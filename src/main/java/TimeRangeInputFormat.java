@@ -0,0 +1,162 @@
+// [file name]: TimeRangeInputFormat.java
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 时间窗口下推的文本输入格式：配置了 factor.time.range 时，有 TickFileIndex 侧车的文件
+ * 按 run 只读窗口覆盖的字节段 —— 段内有序的 run 从不晚于窗口起点的最后一个检查点读到第一个晚于窗口终点的检查点，
+ * 无序的 run 整段读取；窗口外多读的少量行由交易时段表 (已与窗口取交集，见 SessionCalendar) 过滤。
+ *
+ * 没有侧车 (或已过期) 的文件与 CombineTextInputFormat 完全相同：按片段交给 LineRecordReader。
+ * 有侧车的文件不切分 (一个文件的所有段在同一个读取器里按偏移顺序读)；小文件照常合并成大分片。
+ * 跳过的字节数和未建索引的文件数记在 TickParser 计数器组。
+ */
+public class TimeRangeInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+
+    public static final String COUNTER_SKIPPED_BYTES = "TIME_RANGE_SKIPPED_BYTES";
+    public static final String COUNTER_UNINDEXED = "TIME_RANGE_UNINDEXED_FILES";
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        Configuration conf = context.getConfiguration();
+        if (new CompressionCodecFactory(conf).getCodec(file) != null) return false;
+        try {
+            return SessionCalendar.timeRange(conf) == null || TickFileIndex.read(file.getFileSystem(conf), file) == null;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context, FileReader.class);
+    }
+
+    /**
+     * 合并分片中单个文件 (片段) 的读取器，由 CombineFileRecordReader 反射构造
+     */
+    public static class FileReader extends RecordReader<LongWritable, Text> {
+
+        private final Path path;
+        private final long start;
+        private final long length;
+        private final String[] hosts;
+
+        // 没有索引时委托给 LineRecordReader
+        private LineRecordReader lines;
+
+        // 按索引读取的字节段 [rangeStarts[r], rangeEnds[r])
+        private long[] rangeStarts;
+        private long[] rangeEnds;
+        private int range = -1;
+        private long total;
+        private long consumed;
+        private FSDataInputStream in;
+        private ByteLineScanner scanner;
+        private final LongWritable key = new LongWritable();
+        private final Text value = new Text();
+
+        public FileReader(CombineFileSplit split, TaskAttemptContext context, Integer index) throws IOException {
+            this.path = split.getPath(index);
+            this.start = split.getOffset(index);
+            this.length = split.getLength(index);
+            this.hosts = split.getLocations();
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            FileSystem fs = path.getFileSystem(conf);
+            int[] window = SessionCalendar.timeRange(conf);
+            TickFileIndex index = window == null ? null : TickFileIndex.read(fs, path);
+            if (index == null || start != 0 || length != index.fileLength) {
+                if (window != null) context.getCounter(TickLineParser.COUNTER_GROUP, COUNTER_UNINDEXED).increment(1);
+                lines = new LineRecordReader();
+                lines.initialize(new FileSplit(path, start, length, hosts), context);
+                return;
+            }
+
+            // 各 run 的窗口字节段，首尾相接的合并成一段
+            rangeStarts = new long[index.runs().size()];
+            rangeEnds = new long[rangeStarts.length];
+            int n = 0;
+            for (TickFileIndex.Run run : index.runs()) {
+                long from = run.ordered ? run.seek(window[0]) : run.start;
+                long to = run.ordered ? run.until(window[1]) : run.end;
+                if (from >= to) continue;
+                if (n > 0 && rangeEnds[n - 1] == from) {
+                    rangeEnds[n - 1] = to;
+                } else {
+                    rangeStarts[n] = from;
+                    rangeEnds[n] = to;
+                    n++;
+                }
+                total += to - from;
+            }
+            rangeStarts = Arrays.copyOf(rangeStarts, n);
+            rangeEnds = Arrays.copyOf(rangeEnds, n);
+            context.getCounter(TickLineParser.COUNTER_GROUP, COUNTER_SKIPPED_BYTES).increment(index.fileLength - total);
+            in = fs.open(path);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (lines != null) return lines.nextKeyValue();
+            while (range < rangeStarts.length) {
+                if (scanner != null && scanner.next()) {
+                    key.set(rangeStarts[range] + scanner.lineOffset);
+                    value.set(scanner.buf, scanner.lineStart, scanner.lineEnd - scanner.lineStart);
+                    return true;
+                }
+                if (range >= 0) consumed += rangeEnds[range] - rangeStarts[range];
+                if (++range >= rangeStarts.length) return false;
+                in.seek(rangeStarts[range]);
+                TickFileIndex.BoundedInput bounded = new TickFileIndex.BoundedInput(in, rangeEnds[range] - rangeStarts[range]);
+                if (scanner == null) scanner = new ByteLineScanner(bounded, BUFFER_BYTES);
+                else scanner.reset(bounded);
+            }
+            return false;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return lines != null ? lines.getCurrentKey() : key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return lines != null ? lines.getCurrentValue() : value;
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            if (lines != null) return lines.getProgress();
+            return total == 0 ? 1.0f : Math.min(1.0f, consumed / (float) total);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (lines != null) lines.close();
+            if (in != null) in.close();
+        }
+    }
+}
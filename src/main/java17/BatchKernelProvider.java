@@ -0,0 +1,21 @@
+// [file name]: BatchKernelProvider.java (Java 17+, META-INF/versions/17)
+/**
+ * 批量聚合核的选择 (Java 17+)：启动参数带了 --add-modules jdk.incubator.vector 时用向量实现，
+ * 否则 (或向量实现加载失败) 回退到标量实现。向量类通过反射加载，模块缺失时不会触发链接错误。
+ */
+final class BatchKernelProvider {
+
+    private BatchKernelProvider() {}
+
+    static BatchDepthKernel create(int depth) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (BatchDepthKernel) Class.forName("VectorBatchDepthKernel")
+                        .getConstructor(int.class).newInstance(depth);
+            } catch (Throwable t) {
+                System.err.println("Vector kernel unavailable, using scalar: " + t);
+            }
+        }
+        return new BatchDepthKernel(depth);
+    }
+}
@@ -0,0 +1,60 @@
+// [file name]: VectorBatchDepthKernel.java (Java 17+, META-INF/versions/17)
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * jdk.incubator.vector 实现的批量盘口聚合：向量的每个 lane 是一笔 tick，按档位顺序逐档累加，
+ * 每个 lane 上的运算序列 (long 乘法、long→double 转换、double 加法) 与标量路径完全相同，结果逐位一致。
+ * 不足一个向量宽度的尾部交给标量实现。
+ */
+public class VectorBatchDepthKernel extends BatchDepthKernel {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    public VectorBatchDepthKernel(int depth) {
+        super(depth);
+        if (LONGS.length() != DOUBLES.length()) {
+            throw new IllegalStateException("Mismatched vector species: " + LONGS + " / " + DOUBLES);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + DOUBLES.length() + "x64";
+    }
+
+    @Override
+    public void aggregate(TickBlock block) {
+        int bound = LONGS.loopBound(block.size);
+        for (int t = 0; t < bound; t += LONGS.length()) {
+            DoubleVector b = DoubleVector.zero(DOUBLES), a = DoubleVector.zero(DOUBLES);
+            DoubleVector wb = DoubleVector.zero(DOUBLES), wa = DoubleVector.zero(DOUBLES);
+            DoubleVector xb = DoubleVector.zero(DOUBLES), xa = DoubleVector.zero(DOUBLES);
+            for (int l = 1; l <= depth; l++) {
+                LongVector bv = LongVector.fromArray(LONGS, block.bv[l], t);
+                LongVector av = LongVector.fromArray(LONGS, block.av[l], t);
+                LongVector bp = LongVector.fromArray(LONGS, block.bp[l], t);
+                LongVector ap = LongVector.fromArray(LONGS, block.ap[l], t);
+                DoubleVector bvd = (DoubleVector) bv.convert(VectorOperators.L2D, 0);
+                DoubleVector avd = (DoubleVector) av.convert(VectorOperators.L2D, 0);
+                double w = 1.0 / l;
+                b = b.add(bvd);
+                a = a.add(avd);
+                wb = wb.add((DoubleVector) bp.mul(bv).convert(VectorOperators.L2D, 0));
+                wa = wa.add((DoubleVector) ap.mul(av).convert(VectorOperators.L2D, 0));
+                xb = xb.add(bvd.mul(w));
+                xa = xa.add(avd.mul(w));
+            }
+            b.intoArray(block.bidDepth, t);
+            a.intoArray(block.askDepth, t);
+            wb.intoArray(block.bidNotional, t);
+            wa.intoArray(block.askNotional, t);
+            xb.intoArray(block.bidWeighted, t);
+            xa.intoArray(block.askWeighted, t);
+        }
+        aggregateRange(block, bound, block.size);
+    }
+}